@@ -0,0 +1,183 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.opennms.maven.plugins.tgz.AssemblyEntryPlan;
+import org.opennms.maven.plugins.tgz.DirectoryTreeCache;
+import org.opennms.maven.plugins.tgz.RecordingArchiver;
+import org.opennms.maven.plugins.tgz.StagingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Plans an assembly of a deep file tree, a set of jars named by the default file name mapping, filtered
+ * properties files and the unpacked members of the jars, and writes it in each format with the archiver the
+ * tgz goal creates for it.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ArchiveBenchmark
+{
+    /**
+     * The default output file name mapping of dependency sets.
+     */
+    private static final String FILE_NAME_MAPPING = "${artifactId}-${version}.${extension}";
+
+    @Param( { "tgz", "tar", "tar.bz2", "tar.xz", "tar.zst", "zip", "jar", "war" } )
+    public String format;
+
+    /**
+     * Compression threads of the gzip, xz and zstd formats, ignored for the others; 0 uses one per available
+     * processor.
+     */
+    @Param( { "1", "0" } )
+    public int threads;
+
+    @Param( { "20" } )
+    public int jars;
+
+    @Param( { "20" } )
+    public int filteredFiles;
+
+    private SyntheticInputs inputs;
+
+    private BenchmarkMojo mojo;
+
+    private File tree;
+
+    private File[] jarFiles;
+
+    private Artifact[] jarArtifacts;
+
+    private File[] filtered;
+
+    private AssemblyEntryPlan plan;
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws IOException, ArchiverException, MojoExecutionException
+    {
+        inputs = new SyntheticInputs( "archive-benchmark", 1 );
+
+        mojo = new BenchmarkMojo( inputs.directory( "project" ) );
+        mojo.setParameter( "compressionThreads", new Integer( threads ) );
+        mojo.setParameter( "xzThreads", new Integer( threads ) );
+        mojo.setParameter( "zstdThreads", new Integer( threads ) );
+        mojo.getProject().getProperties().putAll( SyntheticInputs.createFilterProperties( 50 ) );
+
+        tree = inputs.directory( "tree" );
+        inputs.createTree( tree, 4, 3, 6, 4096 );
+        jarFiles = inputs.createJars( inputs.directory( "lib" ), jars, 200, 2048 );
+        filtered = inputs.createFilteredFiles( inputs.directory( "filtered" ), filteredFiles, 200, 50 );
+
+        jarArtifacts = new Artifact[jarFiles.length];
+        for ( int i = 0; i < jarFiles.length; i++ )
+        {
+            jarArtifacts[i] =
+                new DefaultArtifact( "org.opennms.synthetic", "synthetic-" + i, VersionRange.createFromVersion( "1.0" ),
+                                     Artifact.SCOPE_RUNTIME, "jar", null, new DefaultArtifactHandler( "jar" ) );
+            jarArtifacts[i].setFile( jarFiles[i] );
+        }
+
+        plan = plan();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+        throws IOException
+    {
+        mojo.releaseStaging();
+        inputs.delete();
+    }
+
+    /**
+     * Records the entries of the assembly, as the tgz goal does once per assembly.
+     */
+    @Benchmark
+    public AssemblyEntryPlan plan()
+        throws IOException, ArchiverException, MojoExecutionException
+    {
+        RecordingArchiver recorder = new RecordingArchiver();
+        recorder.setDirectoryTreeCache( new DirectoryTreeCache() );
+
+        recorder.addDirectory( tree, "tree/" );
+
+        for ( int i = 0; i < filtered.length; i++ )
+        {
+            StagingStore.Content content = mojo.filterFile( filtered[i], null );
+            recorder.addStagedFile( content, filtered[i], "etc/" + filtered[i].getName(), 0644 );
+        }
+
+        for ( int i = 0; i < jarFiles.length; i++ )
+        {
+            String fileName = BenchmarkMojo.evaluateFileNameMapping( jarArtifacts[i], FILE_NAME_MAPPING );
+            recorder.addFile( jarFiles[i], "lib/" + fileName );
+
+            ZipFile zip = new ZipFile( jarFiles[i] );
+            try
+            {
+                for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+                {
+                    ZipEntry entry = (ZipEntry) e.nextElement();
+                    recorder.addArchiveMember( jarFiles[i], entry.getName(), "classes/" + entry.getName(),
+                                               entry.isDirectory() );
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+        }
+
+        return recorder.toEntryPlan();
+    }
+
+    /**
+     * Replays the plan into the archiver the tgz goal creates for the format and writes the archive.
+     *
+     * @return the size of the archive
+     */
+    @Benchmark
+    public long createArchive()
+        throws IOException, ArchiverException, NoSuchArchiverException, MojoExecutionException,
+        MojoFailureException
+    {
+        Archiver archiver = mojo.createArchiver( format );
+
+        File destFile = mojo.populateArchive( archiver, plan, "benchmark." + format );
+        archiver.createArchive();
+
+        return destFile.length();
+    }
+}
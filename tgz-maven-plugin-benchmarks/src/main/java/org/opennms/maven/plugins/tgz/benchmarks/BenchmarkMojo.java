@@ -0,0 +1,291 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.UnArchiver;
+import org.codehaus.plexus.archiver.manager.ArchiverManager;
+import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.tar.TarArchiver;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.opennms.maven.plugins.tgz.AssemblyEntryPlan;
+import org.opennms.maven.plugins.tgz.StagingStore;
+import org.opennms.maven.plugins.tgz.TgzMojo;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The tgz goal configured as for a build that sets none of its parameters: every parameter gets the default
+ * value of the plugin descriptor, and the ones that default to locations of the project point below a
+ * directory of the benchmark. The benchmarks call the steps of the goal through it, so they measure the
+ * same archivers, mappings and filtering the goal uses; the steps are made public here only.
+ *
+ * @version $Id$
+ */
+public class BenchmarkMojo
+    extends TgzMojo
+{
+    private static final String PLUGIN_DESCRIPTOR = "META-INF/maven/plugin.xml";
+
+    /**
+     * @param directory where the goal writes its archives and temporary files
+     */
+    public BenchmarkMojo( File directory )
+        throws IOException
+    {
+        applyDefaults();
+
+        Model model = new Model();
+        model.setGroupId( "org.opennms.synthetic" );
+        model.setArtifactId( "synthetic-assembly" );
+        model.setVersion( "1.0-SNAPSHOT" );
+        project = new MavenProject( model );
+
+        outputDirectory = new File( directory, "target" );
+        outputDirectory.mkdirs();
+        workDirectory = new File( directory, "target/assembly/work" );
+        unpackCacheDirectory = new File( directory, "unpack-cache" );
+        finalName = "synthetic-assembly-1.0-SNAPSHOT";
+        archiverManager = new TarArchiverManager();
+        setParameter( "basedir", directory );
+        setParameter( "tempRoot", new File( directory, "target/archive-tmp" ) );
+        setParameter( "encoding", "UTF-8" );
+    }
+
+    /**
+     * @return the project the goal builds the assemblies of
+     */
+    public MavenProject getProject()
+    {
+        return project;
+    }
+
+    /**
+     * @param name the name of a parameter
+     * @param value the value to configure it with
+     */
+    public void setParameter( String name, Object value )
+    {
+        for ( Class type = getClass(); type != null; type = type.getSuperclass() )
+        {
+            try
+            {
+                Field field = type.getDeclaredField( name );
+                field.setAccessible( true );
+                field.set( this, value );
+                return;
+            }
+            catch ( NoSuchFieldException e )
+            {
+                // declared by a superclass
+            }
+            catch ( IllegalAccessException e )
+            {
+                throw new IllegalStateException( "Cannot set " + name + ": " + e.getMessage() );
+            }
+        }
+        throw new IllegalArgumentException( "No parameter " + name );
+    }
+
+    public Archiver createArchiver( String format )
+        throws ArchiverException, NoSuchArchiverException
+    {
+        return super.createArchiver( format );
+    }
+
+    public File populateArchive( Archiver archiver, AssemblyEntryPlan plan, String filename )
+        throws MojoExecutionException, MojoFailureException, ArchiverException
+    {
+        return super.populateArchive( archiver, plan, filename );
+    }
+
+    public static String evaluateFileNameMapping( Artifact artifact, String mapping )
+        throws MojoExecutionException
+    {
+        return TgzMojo.evaluateFileNameMapping( artifact, mapping );
+    }
+
+    public StagingStore.Content filterFile( File file, String lineEnding )
+        throws MojoExecutionException
+    {
+        return super.filterFile( file, lineEnding );
+    }
+
+    public void releaseStaging()
+    {
+        super.releaseStaging();
+    }
+
+    /**
+     * Sets every parameter of the tgz goal whose default value in the plugin descriptor is not an expression.
+     */
+    private void applyDefaults()
+        throws IOException
+    {
+        URL descriptor = TgzMojo.class.getClassLoader().getResource( PLUGIN_DESCRIPTOR );
+        if ( descriptor == null )
+        {
+            throw new IOException( "No " + PLUGIN_DESCRIPTOR + " found next to " + TgzMojo.class );
+        }
+
+        Element root;
+        InputStream in = descriptor.openStream();
+        try
+        {
+            root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( in ).getDocumentElement();
+        }
+        catch ( Exception e )
+        {
+            throw new IOException( "Cannot read " + descriptor + ": " + e.getMessage() );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        NodeList mojos = root.getElementsByTagName( "mojo" );
+        for ( int i = 0; i < mojos.getLength(); i++ )
+        {
+            Element mojo = (Element) mojos.item( i );
+            if ( "tgz".equals( getChildText( mojo, "goal" ) ) )
+            {
+                NodeList configurations = mojo.getElementsByTagName( "configuration" );
+                if ( configurations.getLength() > 0 )
+                {
+                    applyDefaults( (Element) configurations.item( 0 ) );
+                }
+                return;
+            }
+        }
+        throw new IOException( "No tgz goal in " + descriptor );
+    }
+
+    private void applyDefaults( Element configuration )
+    {
+        NodeList parameters = configuration.getChildNodes();
+        for ( int i = 0; i < parameters.getLength(); i++ )
+        {
+            if ( parameters.item( i ).getNodeType() != Node.ELEMENT_NODE )
+            {
+                continue;
+            }
+
+            Element parameter = (Element) parameters.item( i );
+            String value = parameter.getAttribute( "default-value" );
+            if ( value.length() == 0 || value.indexOf( "${" ) >= 0 )
+            {
+                continue;
+            }
+
+            Field field = getField( parameter.getTagName() );
+            if ( field != null )
+            {
+                setParameter( field.getName(), convert( value, field.getType() ) );
+            }
+        }
+    }
+
+    private Field getField( String name )
+    {
+        for ( Class type = getClass(); type != null; type = type.getSuperclass() )
+        {
+            try
+            {
+                return type.getDeclaredField( name );
+            }
+            catch ( NoSuchFieldException e )
+            {
+                // declared by a superclass
+            }
+        }
+        return null;
+    }
+
+    private static Object convert( String value, Class type )
+    {
+        if ( type == Integer.TYPE )
+        {
+            return Integer.valueOf( value );
+        }
+        else if ( type == Long.TYPE )
+        {
+            return Long.valueOf( value );
+        }
+        else if ( type == Boolean.TYPE )
+        {
+            return Boolean.valueOf( value );
+        }
+        else if ( type == File.class )
+        {
+            return new File( value );
+        }
+        return value;
+    }
+
+    private static String getChildText( Element element, String name )
+    {
+        NodeList children = element.getChildNodes();
+        for ( int i = 0; i < children.getLength(); i++ )
+        {
+            Node child = children.item( i );
+            if ( child.getNodeType() == Node.ELEMENT_NODE && name.equals( child.getNodeName() ) )
+            {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Provides the plexus tar archiver the goal uses for the formats it does not write itself.
+     */
+    private static class TarArchiverManager
+        implements ArchiverManager
+    {
+        public Archiver getArchiver( String name )
+            throws NoSuchArchiverException
+        {
+            if ( !"tar".equals( name ) )
+            {
+                throw new NoSuchArchiverException( name );
+            }
+            TarArchiver archiver = new TarArchiver();
+            archiver.enableLogging( new ConsoleLogger( Logger.LEVEL_WARN, "archiver" ) );
+            return archiver;
+        }
+
+        public Archiver getArchiver( File file )
+            throws NoSuchArchiverException
+        {
+            return getArchiver( FileUtils.getExtension( file.getName() ) );
+        }
+
+        public UnArchiver getUnArchiver( String name )
+            throws NoSuchArchiverException
+        {
+            throw new NoSuchArchiverException( name );
+        }
+
+        public UnArchiver getUnArchiver( File file )
+            throws NoSuchArchiverException
+        {
+            throw new NoSuchArchiverException( file.getName() );
+        }
+    }
+}
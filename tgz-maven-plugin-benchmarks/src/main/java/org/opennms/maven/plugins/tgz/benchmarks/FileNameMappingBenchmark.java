@@ -0,0 +1,69 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.opennms.maven.plugins.tgz.FileNameMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluates output file name mappings for a set of artifacts, including the classifier insertion, as
+ * dependency sets do for every artifact they add.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class FileNameMappingBenchmark
+{
+    /**
+     * The default mapping, one with a classifier, and one that falls back to reflection.
+     */
+    @Param( { "${artifactId}-${version}.${extension}", "${groupId}/${artifactId}-${baseVersion}-${classifier}.${type}",
+        "${artifactId}.${artifactHandler.extension}" } )
+    public String mapping;
+
+    private Artifact[] artifacts;
+
+    @Setup
+    public void setUp()
+    {
+        artifacts = new Artifact[100];
+        for ( int i = 0; i < artifacts.length; i++ )
+        {
+            String type = i % 10 == 0 ? "war" : "jar";
+            artifacts[i] =
+                new DefaultArtifact( "org.opennms.synthetic" + ( i % 7 ), "artifact-" + i,
+                                     VersionRange.createFromVersion( "1." + i + "-SNAPSHOT" ), Artifact.SCOPE_RUNTIME,
+                                     type, i % 3 == 0 ? "sources" : null, new DefaultArtifactHandler( type ) );
+        }
+    }
+
+    @Benchmark
+    public void evaluate( Blackhole blackhole )
+        throws Exception
+    {
+        for ( int i = 0; i < artifacts.length; i++ )
+        {
+            blackhole.consume( FileNameMapping.getFileName( artifacts[i], mapping ) );
+        }
+    }
+}
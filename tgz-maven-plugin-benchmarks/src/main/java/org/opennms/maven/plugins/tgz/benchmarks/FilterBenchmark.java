@@ -0,0 +1,109 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.opennms.maven.plugins.tgz.FilterInterpolator;
+import org.opennms.maven.plugins.tgz.StagingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filters a set of property files that refer to filter properties, the project model and unknown tokens
+ * into a staging store, through the same call the mojo makes for file sets and files with
+ * <code>filtered</code> set.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class FilterBenchmark
+{
+    @Param( { "50" } )
+    public int files;
+
+    @Param( { "500" } )
+    public int lines;
+
+    @Param( { "100" } )
+    public int tokens;
+
+    private SyntheticInputs inputs;
+
+    private File[] sources;
+
+    private File output;
+
+    private FilterInterpolator interpolator;
+
+    private StagingStore store;
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws IOException
+    {
+        inputs = new SyntheticInputs( "filter-benchmark", 1 );
+
+        sources = inputs.createFilteredFiles( inputs.directory( "sources" ), files, lines, tokens );
+        output = inputs.directory( "output" );
+
+        Model model = new Model();
+        model.setGroupId( "org.opennms.synthetic" );
+        model.setArtifactId( "synthetic-assembly" );
+        model.setVersion( "1.0-SNAPSHOT" );
+
+        interpolator =
+            new FilterInterpolator( SyntheticInputs.createFilterProperties( tokens ), new MavenProject( model ), "\n",
+                                    "UTF-8" );
+    }
+
+    @Setup( Level.Invocation )
+    public void createStore()
+    {
+        // the defaults of stagingEntrySize and stagingMemorySize
+        store = new StagingStore( new File( output, "staged" ), 1024 * 1024, 64 * 1024 * 1024 );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+        throws IOException
+    {
+        inputs.delete();
+    }
+
+    @TearDown( Level.Invocation )
+    public void deleteStore()
+    {
+        store.delete();
+    }
+
+    @Benchmark
+    public long filterFile()
+        throws IOException
+    {
+        long length = 0;
+        for ( int i = 0; i < sources.length; i++ )
+        {
+            length += interpolator.filter( sources[i], null, store ).getLength();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,107 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.opennms.maven.plugins.tgz.LineEndingInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converts the line endings of a text file, both by copying it as the tgz goal does for archivers that
+ * need plain files, and by only computing the converted size as the streaming tar archiver does.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class LineEndingBenchmark
+{
+    @Param( { "lf", "crlf" } )
+    public String source;
+
+    @Param( { "lf", "crlf" } )
+    public String target;
+
+    @Param( { "4194304" } )
+    public int size;
+
+    private SyntheticInputs inputs;
+
+    private File sourceFile;
+
+    private File destFile;
+
+    private String lineEnding;
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws IOException
+    {
+        inputs = new SyntheticInputs( "line-ending-benchmark", 1 );
+
+        sourceFile = inputs.createTextFile( new File( inputs.getRoot(), "source.txt" ), size, toLineEnding( source ) );
+        destFile = new File( inputs.getRoot(), "dest.txt" );
+        lineEnding = toLineEnding( target );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+        throws IOException
+    {
+        inputs.delete();
+    }
+
+    @Benchmark
+    public long copyReplacingLineEndings()
+        throws IOException
+    {
+        InputStream in = new LineEndingInputStream( new FileInputStream( sourceFile ), lineEnding );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( destFile );
+
+            IOUtil.copy( in, out );
+        }
+        finally
+        {
+            IOUtil.close( out );
+            IOUtil.close( in );
+        }
+        return destFile.length();
+    }
+
+    @Benchmark
+    public long convertedLength()
+        throws IOException
+    {
+        return LineEndingInputStream.getConvertedLength( sourceFile, lineEnding );
+    }
+
+    private static String toLineEnding( String name )
+    {
+        return "crlf".equals( name ) ? "\r\n" : "\n";
+    }
+}
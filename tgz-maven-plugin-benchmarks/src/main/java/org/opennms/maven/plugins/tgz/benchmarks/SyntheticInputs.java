@@ -0,0 +1,252 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Generates the inputs of the benchmarks below a temporary directory. Every generator takes a seed, so
+ * runs before and after a change see the same bytes.
+ *
+ * @version $Id$
+ */
+public class SyntheticInputs
+{
+    private static final String[] WORDS = { "assembly", "archive", "artifact", "module", "dependency", "opennms",
+        "poller", "collector", "threshold", "event", "alarm", "notification", "=", "/", ".", "\t" };
+
+    private final File root;
+
+    private final Random random;
+
+    /**
+     * @param prefix prefix of the name of the temporary directory
+     * @param seed
+     * @throws IOException
+     */
+    public SyntheticInputs( String prefix, long seed )
+        throws IOException
+    {
+        File file = File.createTempFile( prefix, "" );
+        file.delete();
+        file.mkdirs();
+
+        this.root = file;
+        this.random = new Random( seed );
+    }
+
+    public File getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * @param name
+     * @return a directory below the root, created if needed
+     */
+    public File directory( String name )
+    {
+        File directory = new File( root, name );
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Writes jars that hold a mix of text resources and incompressible class-sized blobs.
+     *
+     * @param directory
+     * @param count number of jars
+     * @param entries number of entries per jar
+     * @param entrySize average size of an entry in bytes
+     * @return the jars
+     * @throws IOException
+     */
+    public File[] createJars( File directory, int count, int entries, int entrySize )
+        throws IOException
+    {
+        File[] jars = new File[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            jars[i] = new File( directory, "artifact-" + i + "-1.0.jar" );
+
+            JarOutputStream out = new JarOutputStream( new FileOutputStream( jars[i] ) );
+            try
+            {
+                for ( int j = 0; j < entries; j++ )
+                {
+                    boolean text = j % 2 == 0;
+                    out.putNextEntry( new JarEntry( "org/opennms/synthetic" + i + "/Entry" + j +
+                        ( text ? ".properties" : ".class" ) ) );
+                    out.write( text ? text( entrySize, "\n" ).getBytes( "UTF-8" ) : bytes( entrySize ) );
+                    out.closeEntry();
+                }
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+        }
+        return jars;
+    }
+
+    /**
+     * Writes a tree of text files.
+     *
+     * @param directory
+     * @param depth number of directory levels below the directory
+     * @param fanout number of subdirectories of each directory
+     * @param files number of files in each directory
+     * @param fileSize average size of a file in bytes
+     * @return the number of files written
+     * @throws IOException
+     */
+    public int createTree( File directory, int depth, int fanout, int files, int fileSize )
+        throws IOException
+    {
+        directory.mkdirs();
+
+        int written = 0;
+        for ( int i = 0; i < files; i++ )
+        {
+            writeText( new File( directory, "file-" + i + ".txt" ), text( fileSize, "\n" ) );
+            written++;
+        }
+
+        if ( depth > 0 )
+        {
+            for ( int i = 0; i < fanout; i++ )
+            {
+                written += createTree( new File( directory, "dir-" + i ), depth - 1, fanout, files, fileSize );
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes a text file with the given line ending.
+     *
+     * @param file
+     * @param size approximate size in bytes
+     * @param lineEnding
+     * @return the file
+     * @throws IOException
+     */
+    public File createTextFile( File file, int size, String lineEnding )
+        throws IOException
+    {
+        writeText( file, text( size, lineEnding ) );
+        return file;
+    }
+
+    /**
+     * Writes properties files in which every line refers to a filter token, a project token or an unknown
+     * token.
+     *
+     * @param directory
+     * @param count number of files
+     * @param lines number of lines per file
+     * @param tokens number of distinct filter tokens
+     * @return the files
+     * @throws IOException
+     */
+    public File[] createFilteredFiles( File directory, int count, int lines, int tokens )
+        throws IOException
+    {
+        File[] files = new File[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            StringBuffer text = new StringBuffer();
+            for ( int j = 0; j < lines; j++ )
+            {
+                text.append( "key." ).append( j ).append( '=' );
+                switch ( j % 3 )
+                {
+                    case 0:
+                        text.append( "${filter.token" ).append( random.nextInt( tokens ) ).append( '}' );
+                        break;
+                    case 1:
+                        text.append( "${project.artifactId}-${project.version}" );
+                        break;
+                    default:
+                        text.append( "${unknown.token} " ).append( WORDS[random.nextInt( WORDS.length )] );
+                }
+                text.append( '\n' );
+            }
+
+            files[i] = new File( directory, "filtered-" + i + ".properties" );
+            writeText( files[i], text.toString() );
+        }
+        return files;
+    }
+
+    /**
+     * @param tokens
+     * @return the filter properties referred to by {@link #createFilteredFiles}
+     */
+    public static Map createFilterProperties( int tokens )
+    {
+        Map properties = new HashMap();
+        for ( int i = 0; i < tokens; i++ )
+        {
+            properties.put( "filter.token" + i, "value-" + i + "-${project.artifactId}" );
+        }
+        return properties;
+    }
+
+    /**
+     * Removes the generated inputs.
+     */
+    public void delete()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( root );
+    }
+
+    private String text( int size, String lineEnding )
+    {
+        StringBuffer text = new StringBuffer( size + 64 );
+        while ( text.length() < size )
+        {
+            int words = 1 + random.nextInt( 12 );
+            for ( int i = 0; i < words; i++ )
+            {
+                text.append( WORDS[random.nextInt( WORDS.length )] ).append( ' ' );
+            }
+            text.append( lineEnding );
+        }
+        return text.toString();
+    }
+
+    private byte[] bytes( int size )
+    {
+        byte[] bytes = new byte[size];
+        random.nextBytes( bytes );
+        return bytes;
+    }
+
+    private static void writeText( File file, String text )
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream( file );
+        Writer writer = new OutputStreamWriter( out, "UTF-8" );
+        try
+        {
+            writer.write( text );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+}
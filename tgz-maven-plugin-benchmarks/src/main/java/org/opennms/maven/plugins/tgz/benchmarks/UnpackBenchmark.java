@@ -0,0 +1,127 @@
+package org.opennms.maven.plugins.tgz.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.opennms.maven.plugins.tgz.UnpackCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unpacks jars through the unpack cache, both into an empty cache and into one that already holds them,
+ * as dependency sets with <code>unpack</code> set do.
+ *
+ * @version $Id$
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class UnpackBenchmark
+{
+    private static final long CACHE_SIZE = 1024L * 1024L * 1024L;
+
+    @Param( { "20" } )
+    public int jars;
+
+    private SyntheticInputs inputs;
+
+    private File[] jarFiles;
+
+    private File warmCache;
+
+    private File coldCache;
+
+    @Setup( Level.Trial )
+    public void setUp()
+        throws IOException, ArchiverException
+    {
+        inputs = new SyntheticInputs( "unpack-benchmark", 1 );
+
+        jarFiles = inputs.createJars( inputs.directory( "lib" ), jars, 200, 2048 );
+
+        warmCache = inputs.directory( "warm-cache" );
+        unpackAll( warmCache );
+
+        coldCache = new File( inputs.getRoot(), "cold-cache" );
+    }
+
+    /**
+     * Empties the cold cache again, so every invocation of {@link #unpackMiss()} unpacks every jar.
+     */
+    @TearDown( Level.Invocation )
+    public void deleteColdCache()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( coldCache );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+        throws IOException
+    {
+        inputs.delete();
+    }
+
+    @Benchmark
+    public int unpackMiss()
+        throws IOException, ArchiverException
+    {
+        return unpackAll( coldCache );
+    }
+
+    @Benchmark
+    public int unpackHit()
+        throws IOException, ArchiverException
+    {
+        return unpackAll( warmCache );
+    }
+
+    private int unpackAll( File cacheDirectory )
+        throws IOException, ArchiverException
+    {
+        UnpackCache cache = new UnpackCache( cacheDirectory, CACHE_SIZE );
+
+        int unpacked = 0;
+        for ( int i = 0; i < jarFiles.length; i++ )
+        {
+            String key = cache.getKey( jarFiles[i] );
+
+            File location = cache.get( key );
+            if ( location == null )
+            {
+                File staging = cache.createStagingDirectory();
+
+                ZipUnArchiver unArchiver = new ZipUnArchiver();
+                unArchiver.enableLogging( new ConsoleLogger( Logger.LEVEL_WARN, "unarchiver" ) );
+                unArchiver.setSourceFile( jarFiles[i] );
+                unArchiver.setDestDirectory( staging );
+                unArchiver.extract();
+
+                cache.put( key, staging );
+                unpacked++;
+            }
+        }
+        cache.release();
+        return unpacked;
+    }
+}
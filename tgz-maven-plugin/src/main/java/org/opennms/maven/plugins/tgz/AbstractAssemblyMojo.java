@@ -16,18 +16,18 @@ package org.opennms.maven.plugins.tgz;
  * limitations under the License.
  */
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -35,14 +35,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.maven.archiver.MavenArchiveConfiguration;
 import org.apache.maven.archiver.MavenArchiver;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
-import org.apache.maven.artifact.handler.ArtifactHandler;
 import org.apache.maven.artifact.resolver.filter.AndArtifactFilter;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -52,8 +56,6 @@ import org.apache.maven.plugin.assembly.filter.AssemblyExcludesArtifactFilter;
 import org.apache.maven.plugin.assembly.filter.AssemblyIncludesArtifactFilter;
 import org.apache.maven.plugin.assembly.filter.AssemblyScopeArtifactFilter;
 import org.apache.maven.plugin.assembly.interpolation.AssemblyInterpolationException;
-import org.apache.maven.plugin.assembly.interpolation.AssemblyInterpolator;
-import org.apache.maven.plugin.assembly.interpolation.ReflectionProperties;
 import org.apache.maven.plugin.assembly.repository.RepositoryAssembler;
 import org.apache.maven.plugin.assembly.repository.RepositoryAssemblyException;
 import org.apache.maven.plugin.assembly.utils.PropertyUtils;
@@ -66,11 +68,8 @@ import org.apache.maven.plugins.assembly.model.ModuleBinaries;
 import org.apache.maven.plugins.assembly.model.ModuleSet;
 import org.apache.maven.plugins.assembly.model.ModuleSources;
 import org.apache.maven.plugins.assembly.model.Repository;
-import org.apache.maven.plugins.assembly.model.io.xpp3.AssemblyXpp3Reader;
-import org.apache.maven.plugins.assembly.model.io.xpp3.ComponentXpp3Reader;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
-import org.apache.maven.shared.model.fileset.util.FileSetManager;
 import org.apache.maven.wagon.PathUtils;
 import org.codehaus.plexus.archiver.Archiver;
 import org.codehaus.plexus.archiver.ArchiverException;
@@ -80,13 +79,12 @@ import org.codehaus.plexus.archiver.jar.ManifestException;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
 import org.codehaus.plexus.archiver.tar.TarArchiver;
 import org.codehaus.plexus.archiver.tar.TarLongFileMode;
-import org.codehaus.plexus.archiver.war.WarArchiver;
-import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.InterpolationFilterReader;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.codehaus.plexus.util.StringUtils;
-import org.codehaus.plexus.util.introspection.ReflectionValueExtractor;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 
 /**
@@ -153,6 +151,262 @@ public abstract class AbstractAssemblyMojo
      */
     private String tarLongFileMode;
 
+    /**
+     * Set to true to write the archives for all formats of an assembly concurrently. The entries of the
+     * assembly are resolved once and shared by all formats; only the writing and compression of the
+     * archives runs in parallel.
+     *
+     * @parameter expression="${parallelFormats}" default-value="false"
+     */
+    private boolean parallelFormats;
+
+    /**
+     * The maximum number of archives written at the same time when <code>parallelFormats</code> is enabled.
+     * A value of 0 or less uses one thread per available processor.
+     *
+     * @parameter expression="${formatThreads}" default-value="0"
+     */
+    private int formatThreads;
+
+    /**
+     * Set to true to build the assemblies of this execution concurrently. Each assembly is staged in its
+     * own subdirectory of the temporary and work directories, and the archives are attached in the order
+     * of the descriptors once all assemblies are built.
+     *
+     * @parameter expression="${parallelAssemblies}" default-value="false"
+     */
+    private boolean parallelAssemblies;
+
+    /**
+     * The maximum number of assemblies built at the same time when <code>parallelAssemblies</code> is
+     * enabled. A value of 0 or less uses one thread per available processor.
+     *
+     * @parameter expression="${assemblyThreads}" default-value="0"
+     */
+    private int assemblyThreads;
+
+    /**
+     * The maximum number of threads compressing blocks of tgz, tar.gz and tar.xz archives. The threads are
+     * shared by all archives, volumes and assemblies of the execution, and each tgz or tar.gz archive keeps
+     * up to this many blocks in flight. A value of 0 or less uses one thread per available processor.
+     *
+     * @parameter expression="${compressionThreads}" default-value="0"
+     */
+    private int compressionThreads;
+
+    /**
+     * The size in bytes of the blocks that are compressed independently for tgz and tar.gz archives.
+     * Larger blocks compress slightly better, smaller blocks spread better over the threads.
+     *
+     * @parameter expression="${gzipBlockSize}" default-value="131072"
+     */
+    private int gzipBlockSize;
+
+    /**
+     * Set to true to write tgz and tar.gz archives as a series of gzip members that restart at entry
+     * boundaries, and an <code>.tarindex</code> file next to each archive with the member each entry starts
+     * in. Single entries can then be extracted with {@link IndexedTarGzReader} without inflating the
+     * archive up to them. The archives remain standard gzip files. Members are at most
+     * <code>gzipBlockSize</code> bytes.
+     *
+     * @parameter expression="${tgzIndex}" default-value="false"
+     */
+    private boolean tgzIndex;
+
+    /**
+     * The size in bytes a gzip member of an indexed archive must reach before it is restarted at the next
+     * entry. Smaller members make single entries faster to extract and the archive slightly larger.
+     *
+     * @parameter expression="${tgzIndexMemberSize}" default-value="65536"
+     */
+    private int tgzIndexMemberSize;
+
+    /**
+     * The xz preset used for tar.xz archives, from 0 (fastest) to 9 (smallest).
+     *
+     * @parameter expression="${xzLevel}" default-value="6"
+     */
+    private int xzLevel;
+
+    /**
+     * The number of blocks of a tar.xz archive compressed at the same time. With more than one, blocks of
+     * <code>xzBlockSize</code> bytes are compressed independently, which costs a little compression. A value
+     * of 0 or less uses one per available processor.
+     *
+     * @parameter expression="${xzThreads}" default-value="0"
+     */
+    private int xzThreads;
+
+    /**
+     * The size in bytes of the blocks that are compressed independently for tar.xz archives.
+     *
+     * @parameter expression="${xzBlockSize}" default-value="8388608"
+     */
+    private int xzBlockSize;
+
+    /**
+     * The Zstandard level used for tar.zst archives, from 1 (fastest) to 19 (smallest).
+     *
+     * @parameter expression="${zstdLevel}" default-value="3"
+     */
+    private int zstdLevel;
+
+    /**
+     * The number of threads used to compress tar.zst archives. A value of 0 or less uses one thread per
+     * available processor.
+     *
+     * @parameter expression="${zstdThreads}" default-value="0"
+     */
+    private int zstdThreads;
+
+    /**
+     * Set to true to write files that appear more than once in a compressed tar archive, with the same
+     * contents and mode, as hard links to the first copy. Archives extracted by tar then share a single copy
+     * of each file.
+     *
+     * @parameter expression="${tarHardlinkDuplicates}" default-value="false"
+     */
+    private boolean tarHardlinkDuplicates;
+
+    /**
+     * Set to a size in megabytes to split each compressed tar archive into volumes of about that uncompressed
+     * size, which are written in parallel. Every volume is a complete archive named after the archive with a
+     * <code>-volNNN</code> suffix, and an <code>.index</code> file lists the entries of each volume. All
+     * volumes and the index are attached to the project. The default of 0 writes a single archive.
+     *
+     * @parameter expression="${tarVolumeSize}" default-value="0"
+     */
+    private int tarVolumeSize;
+
+    /**
+     * Number of volumes of a split tar archive written at the same time. The default of 0 uses one thread per
+     * available processor.
+     *
+     * @parameter expression="${tarVolumeThreads}" default-value="0"
+     */
+    private int tarVolumeThreads;
+
+    /**
+     * Set to true to write <code>.md5</code>, <code>.sha1</code> and <code>.sha256</code> checksum files next
+     * to each archive. The tgz, tar.gz, tar.xz and tar.zst formats compute them from the bytes as they are
+     * written. The plain tar, tar.bz2, zip, jar and war formats are written by the plexus archivers, which
+     * open the file themselves, so their finished archives are read once more.
+     *
+     * @parameter expression="${writeChecksums}" default-value="false"
+     */
+    private boolean writeChecksums;
+
+    /**
+     * The deflate level used for zip, jar and war archives, from 0 (store) to 9 (smallest). The default of
+     * -1 is the standard deflate level.
+     *
+     * @parameter expression="${zipCompressionLevel}" default-value="-1"
+     */
+    private int zipCompressionLevel;
+
+    /**
+     * Set to true to store files of zip, jar and war archives that are already compressed, such as jars,
+     * images and gzipped files, or whose contents look random, as they are instead of deflating them. By
+     * default every file is deflated, as the plexus archivers do.
+     *
+     * @parameter expression="${storeIncompressible}" default-value="false"
+     */
+    private boolean storeIncompressible;
+
+    /**
+     * Set to true to read the contents of dependencies and module binaries that are unpacked straight from
+     * the artifact while the archive is written, instead of extracting them into the unpack cache first.
+     * Signature files and <code>components.xml</code> are filtered while reading. Formats that can only add
+     * files from disk, such as zip and jar, still extract the entries they need.
+     *
+     * @parameter expression="${streamUnpack}" default-value="false"
+     */
+    private boolean streamUnpack;
+
+    /**
+     * The number of threads used to unpack the artifacts of dependency sets with <code>unpack</code> set.
+     * A value of 0 or less uses one thread per available processor, 1 unpacks each artifact when it is
+     * added.
+     *
+     * @parameter expression="${unpackThreads}" default-value="0"
+     */
+    private int unpackThreads;
+
+    /**
+     * The total size in bytes of the filtered and converted files of an assembly that are kept in memory
+     * until the archives are written. Files beyond it are written below the temporary directory.
+     *
+     * @parameter expression="${stagingMemorySize}" default-value="67108864"
+     */
+    private long stagingMemorySize;
+
+    /**
+     * The size in bytes up to which a filtered or converted file may be kept in memory.
+     *
+     * @parameter expression="${stagingEntrySize}" default-value="1048576"
+     */
+    private long stagingEntrySize;
+
+    /**
+     * Set to true to skip writing archives that are up to date. A fingerprint of the contents of each
+     * archive is then kept next to it, and an archive whose contents, modes and settings have not changed
+     * is only attached again. The fingerprint is taken from the entry plan of the assembly, so an up to date
+     * build still unpacks dependencies (through the unpack cache), filters files and reads every file of the
+     * assembly; only writing and compressing the archive is saved. Jar formats, whose manifests are
+     * generated, are always written.
+     *
+     * @parameter expression="${skipUpToDate}" default-value="false"
+     */
+    private boolean skipUpToDate;
+
+    /**
+     * A previous archive, or the <code>.entries</code> manifest written next to one, to build delta archives
+     * against. When set, each archive only holds the entries whose contents or modes differ from the
+     * baseline or that the baseline does not have, plus a list of the baseline entries that were removed.
+     * The baseline applies to every assembly of the execution.
+     *
+     * @parameter expression="${deltaBaseline}"
+     */
+    private File deltaBaseline;
+
+    /**
+     * The path inside a delta archive of the list of removed entries, one path per line with directories
+     * ending in '/'. The list is also written next to the delta archives, named after them with the suffix
+     * <code>-delta-removed.txt</code>.
+     *
+     * @parameter expression="${deltaRemovalList}" default-value="delta-removed.txt"
+     */
+    private String deltaRemovalList;
+
+    /**
+     * Set to true to write an <code>.entries</code> manifest with the content hash of every entry next to
+     * each archive, which later builds can use as their <code>deltaBaseline</code>. It is always written
+     * for delta archives, and then describes the complete assembly rather than the delta.
+     *
+     * @parameter expression="${writeEntryManifest}" default-value="false"
+     */
+    private boolean writeEntryManifest;
+
+    /**
+     * The manifest of the delta baseline, read once per execution.
+     */
+    private EntryManifest baselineManifest;
+
+    /**
+     * Set to true to write the timing and I/O of each phase of the execution to
+     * <code>${finalName}-assembly-metrics.json</code> in the output directory.
+     *
+     * @parameter expression="${writeMetrics}" default-value="false"
+     */
+    private boolean writeMetrics;
+
+    /**
+     * Set to true to log a table with the timing and I/O of each phase of the execution.
+     *
+     * @parameter expression="${printMetrics}" default-value="false"
+     */
+    private boolean printMetrics;
+
     /**
      * Base directory of the project.
      *
@@ -163,122 +417,687 @@ public abstract class AbstractAssemblyMojo
     private File basedir;
 
     /**
-     * Maven ProjectHelper
+     * Maven ProjectHelper
+     *
+     * @component
+     */
+    private MavenProjectHelper projectHelper;
+
+    /**
+     * Temporary directory that contain the files to be assembled.
+     *
+     * @parameter expression="${project.build.directory}/archive-tmp"
+     * @required
+     * @readonly
+     */
+    private File tempRoot;
+
+    /**
+     * Directory for site generated.
+     *
+     * @parameter expression="${project.build.directory}/site"
+     * @readonly
+     */
+    private File siteDirectory;
+
+    /**
+     * Set to true to include the site generated by site:site goal.
+     *
+     * @parameter expression="${includeSite}" default-value="false"
+     * @deprecated Please set this variable in the assembly descriptor instead
+     */
+    private boolean includeSite;
+
+    /**
+     * Set to false to exclude the assembly id from the assembly final name.
+     *
+     * @parameter expression="${appendAssemblyId}" default-value="true"
+     */
+    protected boolean appendAssemblyId;
+
+    /**
+     * The {@link AssemblyStaging} of the assembly being built on the current thread.
+     */
+    private final ThreadLocal currentStaging = new ThreadLocal();
+
+    /**
+     * @parameter
+     */
+    private MavenArchiveConfiguration archive;
+
+    /**
+     * @parameter expression="${project.build.filters}"
+     */
+    protected List filters;
+
+    /**
+     * The encoding of filtered files. The platform encoding is used when it is not set.
+     *
+     * @parameter expression="${encoding}" default-value="${project.build.sourceEncoding}"
+     */
+    private String encoding;
+
+    private FilterInterpolator filterInterpolator;
+
+    private ArtifactIndex artifactIndex;
+
+    private ReactorModuleIndex reactorModuleIndex;
+
+    /**
+     * @component
+     */
+    private RepositoryAssembler repositoryAssembler;
+
+    private static final String LS = System.getProperty( "line.separator" );
+
+    /**
+     * The threads compressing the blocks of all archives of this execution, created when first needed.
+     */
+    private ExecutorService compressionExecutor;
+
+    /**
+     * Create the binary distribution.
+     *
+     * @throws org.apache.maven.plugin.MojoExecutionException
+     *
+     */
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        PhaseMetrics.Timer timer = metrics.start( null, null, "readAssemblies" );
+        List assemblies = readAssemblies();
+        timer.stop( 0, 0, assemblies.size() );
+
+        // TODO: include dependencies marked for distribution under certain formats
+        // TODO: how, might we plug this into an installer, such as NSIS?
+
+        try
+        {
+            if ( parallelAssemblies && assemblies.size() > 1 )
+            {
+                createAssembliesInParallel( assemblies );
+            }
+            else
+            {
+                for ( Iterator i = assemblies.iterator(); i.hasNext(); )
+                {
+                    Assembly assembly = (Assembly) i.next();
+                    List destFiles = createAssembly( assembly, new AssemblyStaging( tempRoot ) );
+                    attachArtifacts( assembly, destFiles );
+                }
+            }
+        }
+        finally
+        {
+            shutdownCompressionExecutor();
+            releaseUnpackCache();
+            releaseContentDigests();
+        }
+
+        reportMetrics();
+    }
+
+    /**
+     * @return the executor compressing the blocks of all archives of this execution
+     */
+    private synchronized ExecutorService getCompressionExecutor()
+    {
+        if ( compressionExecutor == null )
+        {
+            compressionExecutor = ParallelBlockOutputStream.newExecutor( compressionThreads, "tgz-compress" );
+        }
+        return compressionExecutor;
+    }
+
+    private synchronized void shutdownCompressionExecutor()
+    {
+        if ( compressionExecutor != null )
+        {
+            compressionExecutor.shutdownNow();
+            compressionExecutor = null;
+        }
+    }
+
+    /**
+     * Builds the assemblies concurrently on a bounded pool, each staged in directories of its own, and
+     * attaches their archives in descriptor order once all of them are built.
+     *
+     * @param assemblies
+     */
+    private void createAssembliesInParallel( List assemblies )
+        throws MojoExecutionException, MojoFailureException
+    {
+        int threads = assemblyThreads > 0 ? assemblyThreads : Runtime.getRuntime().availableProcessors();
+        threads = Math.max( 1, Math.min( threads, assemblies.size() ) );
+
+        getLog().debug( "Building " + assemblies.size() + " assemblies using " + threads + " threads" );
+
+        List destFiles = new ArrayList();
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List futures = new ArrayList();
+
+            for ( int i = 0; i < assemblies.size(); i++ )
+            {
+                final Assembly assembly = (Assembly) assemblies.get( i );
+
+                String stagingName = StringUtils.isEmpty( assembly.getId() ) ? "assembly-" + i : assembly.getId();
+                final AssemblyStaging staging = new AssemblyStaging( new File( tempRoot, stagingName ) );
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        return createAssembly( assembly, staging );
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                destFiles.add( waitForAssembly( (Future) futures.get( i ), (Assembly) assemblies.get( i ) ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < assemblies.size(); i++ )
+        {
+            attachArtifacts( (Assembly) assemblies.get( i ), (List) destFiles.get( i ) );
+        }
+    }
+
+    private static List waitForAssembly( Future future, Assembly assembly )
+        throws MojoExecutionException, MojoFailureException
+    {
+        try
+        {
+            return (List) future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while creating assembly '" + assembly.getId() + "'", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if ( cause instanceof MojoFailureException )
+            {
+                throw (MojoFailureException) cause;
+            }
+            if ( cause instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) cause;
+            }
+            throw new MojoExecutionException( "Error creating assembly: " + cause.getMessage(), cause );
+        }
+    }
+
+    private void attachArtifacts( Assembly assembly, List destFiles )
+        throws MojoExecutionException
+    {
+        List formats = assembly.getFormats();
+        for ( int i = 0; i < formats.size(); i++ )
+        {
+            String format = (String) formats.get( i );
+            File destFile = (File) destFiles.get( i );
+
+            if ( TarVolumeIndex.isIndex( destFile ) )
+            {
+                try
+                {
+                    attachVolumes( assembly, format, destFile, TarVolumeIndex.readVolumes( destFile ) );
+                }
+                catch ( IOException e )
+                {
+                    throw new MojoExecutionException( "Error reading volume index '" + destFile + "'", e );
+                }
+            }
+            else
+            {
+                attachArtifact( assembly, format, destFile );
+            }
+        }
+    }
+
+    private void reportMetrics()
+    {
+        if ( printMetrics )
+        {
+            for ( Iterator i = metrics.getSummary().iterator(); i.hasNext(); )
+            {
+                getLog().info( (String) i.next() );
+            }
+        }
+
+        if ( writeMetrics )
+        {
+            File metricsFile = new File( outputDirectory, finalName + "-assembly-metrics.json" );
+            try
+            {
+                metrics.writeJson( metricsFile, project.getId() );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Unable to write the assembly metrics to " + metricsFile + ": " + e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Builds the archives of an assembly without attaching them.
+     *
+     * @param assembly
+     * @param staging the directories the assembly is staged in
+     * @return the archive of each format of the assembly
+     */
+    private List createAssembly( Assembly assembly, AssemblyStaging staging )
+        throws MojoExecutionException, MojoFailureException
+    {
+        staging.assemblyId = assembly.getId();
+        currentStaging.set( staging );
+        try
+        {
+            return createArchives( assembly );
+        }
+        finally
+        {
+            releaseStaging();
+        }
+    }
+
+    /**
+     * Deletes the staged contents of the assembly built on the current thread and forgets its staging.
+     */
+    protected void releaseStaging()
+    {
+        AssemblyStaging staging = (AssemblyStaging) currentStaging.get();
+        if ( staging != null && staging.store != null )
+        {
+            staging.store.delete();
+        }
+        currentStaging.remove();
+    }
+
+    private List createArchives( Assembly assembly )
+        throws MojoExecutionException, MojoFailureException
+    {
+        String fullName = getDistributionName( assembly );
+
+        List formats = assembly.getFormats();
+        List archivers = new ArrayList();
+        boolean jarFormat = false;
+
+        for ( Iterator i = formats.iterator(); i.hasNext(); )
+        {
+            String format = (String) i.next();
+
+            try
+            {
+                Archiver archiver = createArchiver( format );
+                jarFormat |= archiver instanceof JarArchiver;
+                archivers.add( archiver );
+            }
+            catch ( NoSuchArchiverException e )
+            {
+                throw new MojoFailureException( "Unable to obtain archiver for extension '" + format + "'" );
+            }
+            catch ( ArchiverException e )
+            {
+                throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+            }
+        }
+
+        List destFiles = new ArrayList();
+        try
+        {
+            PhaseMetrics.Timer timer = metrics.start( assembly.getId(), null, "plan" );
+            AssemblyEntryPlan plan = createEntryPlan( assembly, jarFormat );
+            timer.stop( 0, 0, plan.size() );
+
+            EntryManifest entryManifest = null;
+            if ( writeEntryManifest || deltaBaseline != null )
+            {
+                timer = metrics.start( assembly.getId(), null, "entryManifest" );
+                entryManifest = EntryManifest.create( plan, getContentDigests() );
+                timer.stop( plan.getSourceLength(), 0, plan.size() );
+            }
+
+            if ( deltaBaseline != null )
+            {
+                timer = metrics.start( assembly.getId(), null, "delta" );
+                plan = createDeltaPlan( assembly, fullName, plan, entryManifest );
+                timer.stop( 0, 0, plan.size() );
+            }
+
+            long sourceLength = plan.getSourceLength();
+            AssemblyFingerprint fingerprint = null;
+
+            List pendingArchivers = new ArrayList();
+            List pendingFormats = new ArrayList();
+            List pendingFiles = new ArrayList();
+            List pendingFingerprints = new ArrayList();
+
+            for ( int i = 0; i < formats.size(); i++ )
+            {
+                String format = (String) formats.get( i );
+                String filename = fullName + "." + format;
+                Archiver archiver = (Archiver) archivers.get( i );
+
+                AssemblyFingerprint formatFingerprint = null;
+                if ( skipUpToDate && !( archiver instanceof JarArchiver ) )
+                {
+                    timer = metrics.start( assembly.getId(), format, "fingerprint" );
+                    long bytesRead = 0;
+                    if ( fingerprint == null )
+                    {
+                        fingerprint = AssemblyFingerprint.create( plan, getContentDigests() );
+                        bytesRead = sourceLength;
+                    }
+                    formatFingerprint = fingerprint.withSetting( "format", format );
+                    formatFingerprint = formatFingerprint.withSetting( "tarLongFileMode", tarLongFileMode );
+                    formatFingerprint =
+                        formatFingerprint.withSetting( "tarHardlinkDuplicates", String.valueOf( tarHardlinkDuplicates ) );
+                    formatFingerprint =
+                        formatFingerprint.withSetting( "tarVolumeSize", Integer.toString( tarVolumeSize ) );
+                    formatFingerprint =
+                        formatFingerprint.withSetting( "writeChecksums", String.valueOf( writeChecksums ) );
+                    if ( format.endsWith( ".xz" ) )
+                    {
+                        formatFingerprint = formatFingerprint.withSetting( "xzLevel", Integer.toString( xzLevel ) );
+                    }
+                    else if ( format.endsWith( ".zst" ) )
+                    {
+                        formatFingerprint = formatFingerprint.withSetting( "zstdLevel", Integer.toString( zstdLevel ) );
+                    }
+                    else if ( "tgz".equals( format ) || format.endsWith( ".gz" ) )
+                    {
+                        String index = tgzIndex ? Integer.toString( tgzIndexMemberSize ) : "false";
+                        formatFingerprint = formatFingerprint.withSetting( "tgzIndex", index );
+                    }
+                    else if ( "zip".equals( format ) )
+                    {
+                        formatFingerprint = formatFingerprint.withSetting( "zipCompressionLevel",
+                                                                           Integer.toString( zipCompressionLevel ) );
+                        formatFingerprint = formatFingerprint.withSetting( "storeIncompressible",
+                                                                           String.valueOf( storeIncompressible ) );
+                    }
+
+                    File destFile = getResultFile( archiver, new File( outputDirectory, filename ) );
+                    boolean upToDate = formatFingerprint.isUpToDate( destFile );
+                    if ( upToDate && TarVolumeIndex.isIndex( destFile ) )
+                    {
+                        upToDate = TarVolumeIndex.isComplete( destFile );
+                    }
+                    timer.stop( bytesRead, 0, plan.size() );
+
+                    if ( upToDate )
+                    {
+                        getLog().info( "Assembly " + destFile + " is up to date" );
+                        destFiles.add( destFile );
+                        continue;
+                    }
+                }
+
+                timer = metrics.start( assembly.getId(), format, "populate" );
+                File destFile = getResultFile( archiver, populateArchive( archiver, plan, filename ) );
+                timer.stop( 0, 0, plan.size() );
+                destFiles.add( destFile );
+
+                pendingArchivers.add( archiver );
+                pendingFormats.add( format );
+                pendingFiles.add( destFile );
+                pendingFingerprints.add( formatFingerprint );
+            }
+
+            if ( parallelFormats && pendingArchivers.size() > 1 )
+            {
+                writeArchivesInParallel( assembly.getId(), plan, pendingArchivers, pendingFormats, pendingFiles );
+            }
+            else
+            {
+                for ( int i = 0; i < pendingArchivers.size(); i++ )
+                {
+                    writeArchive( assembly.getId(), plan, (Archiver) pendingArchivers.get( i ),
+                                  (String) pendingFormats.get( i ) );
+                }
+            }
+
+            for ( int i = 0; i < pendingFiles.size(); i++ )
+            {
+                File destFile = (File) pendingFiles.get( i );
+                AssemblyFingerprint formatFingerprint = (AssemblyFingerprint) pendingFingerprints.get( i );
+
+                if ( formatFingerprint != null )
+                {
+                    formatFingerprint.write( destFile );
+                }
+                else
+                {
+                    AssemblyFingerprint.getManifestFile( destFile ).delete();
+                }
+            }
+
+            for ( Iterator i = destFiles.iterator(); i.hasNext(); )
+            {
+                File destFile = (File) i.next();
+                if ( entryManifest != null )
+                {
+                    entryManifest.write( destFile );
+                }
+                else
+                {
+                    EntryManifest.getManifestFile( destFile ).delete();
+                }
+            }
+        }
+        catch ( ArchiverException e )
+        {
+            throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+        }
+        catch ( RepositoryAssemblyException e )
+        {
+            throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+        }
+
+        return destFiles;
+    }
+
+    /**
+     * Reduces the plan of an assembly to the entries that differ from the delta baseline, and adds the list
+     * of baseline entries that are gone.
      *
-     * @component
+     * @param assembly
+     * @param fullName the name of the archives of the assembly, without extension
+     * @param plan the plan of the complete assembly
+     * @param entryManifest the manifest of the plan
+     * @return the plan of the delta archive
+     * @throws IOException
      */
-    private MavenProjectHelper projectHelper;
+    private AssemblyEntryPlan createDeltaPlan( Assembly assembly, String fullName, AssemblyEntryPlan plan,
+                                               EntryManifest entryManifest )
+        throws IOException
+    {
+        EntryManifest baseline = getBaselineManifest();
 
-    /**
-     * Temporary directory that contain the files to be assembled.
-     *
-     * @parameter expression="${project.build.directory}/archive-tmp"
-     * @required
-     * @readonly
-     */
-    private File tempRoot;
+        List entries = new ArrayList();
+        for ( Iterator i = plan.getEntries().iterator(); i.hasNext(); )
+        {
+            AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+            if ( entry.getPath().equals( deltaRemovalList ) )
+            {
+                throw new IOException( "The assembly already has an entry '" + deltaRemovalList
+                    + "'; choose another deltaRemovalList" );
+            }
+            if ( entryManifest.isChanged( entry, baseline ) )
+            {
+                entries.add( entry );
+            }
+        }
 
-    /**
-     * Directory for site generated.
-     *
-     * @parameter expression="${project.build.directory}/site"
-     * @readonly
-     */
-    private File siteDirectory;
+        // kept beside the delta archives, so what they remove can be read without opening them
+        outputDirectory.mkdirs();
+        File removalList = new File( outputDirectory, fullName + "-delta-removed.txt" );
+        List removed = entryManifest.writeRemoved( baseline, removalList );
 
-    /**
-     * Set to true to include the site generated by site:site goal.
-     *
-     * @parameter expression="${includeSite}" default-value="false"
-     * @deprecated Please set this variable in the assembly descriptor instead
-     */
-    private boolean includeSite;
+        getLog().info( "Delta of assembly '" + assembly.getId() + "' against " + deltaBaseline + ": "
+            + entries.size() + " of " + plan.size() + " entries changed or added, " + removed.size() + " removed" );
 
-    /**
-     * Set to false to exclude the assembly id from the assembly final name.
-     *
-     * @parameter expression="${appendAssemblyId}" default-value="true"
-     */
-    protected boolean appendAssemblyId;
+        entries.add( new AssemblyEntryPlan.Entry( removalList, deltaRemovalList, 0644, false ) );
 
-    private ComponentsXmlArchiverFileFilter componentsXmlFilter = new ComponentsXmlArchiverFileFilter();
+        return new AssemblyEntryPlan( entries );
+    }
 
-    /**
-     * @parameter
-     */
-    private MavenArchiveConfiguration archive;
+    private synchronized EntryManifest getBaselineManifest()
+        throws IOException
+    {
+        if ( baselineManifest == null )
+        {
+            PhaseMetrics.Timer timer = metrics.start( null, null, "readBaseline" );
+            baselineManifest = EntryManifest.read( deltaBaseline );
+            timer.stop( deltaBaseline.length(), 0, 0 );
+        }
+        return baselineManifest;
+    }
 
     /**
-     * @parameter expression="${project.build.filters}"
+     * Writes a populated archiver, recording the time it took and the size of the archive.
+     *
+     * @param assemblyId
+     * @param plan the plan the archiver was populated from
+     * @param archiver
+     * @param format
      */
-    protected List filters;
+    private void writeArchive( String assemblyId, AssemblyEntryPlan plan, Archiver archiver, String format )
+        throws ArchiverException, IOException
+    {
+        PhaseMetrics.Timer timer = metrics.start( assemblyId, format, "write" );
 
-    private Properties filterProperties;
+        archiver.createArchive();
 
-    /**
-     * @component
-     */
-    private RepositoryAssembler repositoryAssembler;
+        if ( !( archiver instanceof StreamingTarArchiver ) )
+        {
+            // the plexus archivers open their files themselves, so the checksums are computed afterwards
+            File destFile = archiver.getDestFile();
+            if ( writeChecksums )
+            {
+                PhaseMetrics.Timer checksumTimer = metrics.start( assemblyId, format, "checksums" );
+                ChecksumOutputStream.computeChecksumFiles( destFile );
+                checksumTimer.stop( destFile.length(), 0, 1 );
+            }
+            else
+            {
+                ChecksumOutputStream.deleteChecksumFiles( destFile );
+            }
+        }
 
-    private static final String LS = System.getProperty( "line.separator" );
+        long bytesWritten = 0;
+        if ( archiver instanceof StreamingTarArchiver && ( (StreamingTarArchiver) archiver ).isSplit() )
+        {
+            for ( Iterator i = ( (StreamingTarArchiver) archiver ).getVolumes().iterator(); i.hasNext(); )
+            {
+                bytesWritten += ( (File) i.next() ).length();
+            }
+        }
+        else
+        {
+            bytesWritten = archiver.getDestFile().length();
+        }
+
+        timer.stop( plan.getSourceLength(), bytesWritten, plan.size() );
+    }
 
     /**
-     * Create the binary distribution.
-     *
-     * @throws org.apache.maven.plugin.MojoExecutionException
-     *
+     * @param archiver
+     * @param destFile the destination file of the archiver
+     * @return the file that stands for the written archive: the destination file, or the volume index if the
+     *         archiver splits the archive into volumes
      */
-    public void execute()
-        throws MojoExecutionException, MojoFailureException
+    private static File getResultFile( Archiver archiver, File destFile )
     {
-        List assemblies = readAssemblies();
-
-        // TODO: include dependencies marked for distribution under certain formats
-        // TODO: how, might we plug this into an installer, such as NSIS?
-
-        for ( Iterator i = assemblies.iterator(); i.hasNext(); )
+        if ( archiver instanceof StreamingTarArchiver && ( (StreamingTarArchiver) archiver ).isSplit() )
         {
-            Assembly assembly = (Assembly) i.next();
-            createAssembly( assembly );
+            return TarVolumeIndex.getIndexFile( destFile );
         }
+        return destFile;
     }
 
-    private void createAssembly( Assembly assembly )
-        throws MojoExecutionException, MojoFailureException
+    /**
+     * Writes the populated archivers concurrently on a bounded pool and waits for all of them.
+     *
+     * @param assemblyId
+     * @param plan the plan the archivers were populated from
+     * @param archivers
+     * @param formats the format of each archiver
+     * @param destFiles the destination of each archiver, used for error reporting
+     */
+    private void writeArchivesInParallel( final String assemblyId, final AssemblyEntryPlan plan, List archivers,
+                                          List formats, List destFiles )
+        throws MojoExecutionException
     {
-        String fullName = getDistributionName( assembly );
+        int threads = formatThreads > 0 ? formatThreads : Runtime.getRuntime().availableProcessors();
+        threads = Math.max( 1, Math.min( threads, archivers.size() ) );
 
-        for ( Iterator i = assembly.getFormats().iterator(); i.hasNext(); )
-        {
-            String format = (String) i.next();
+        getLog().debug( "Writing " + archivers.size() + " archives using " + threads + " threads" );
 
-            String filename = fullName + "." + format;
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List futures = new ArrayList();
 
-            File destFile;
-            try
+            for ( int i = 0; i < archivers.size(); i++ )
             {
-                Archiver archiver = createArchiver( format );
+                final Archiver archiver = (Archiver) archivers.get( i );
+                final String format = (String) formats.get( i );
 
-                destFile = createArchive( archiver, assembly, filename );
-            }
-            catch ( NoSuchArchiverException e )
-            {
-                throw new MojoFailureException( "Unable to obtain archiver for extension '" + format + "'" );
-            }
-            catch ( ArchiverException e )
-            {
-                throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
-            }
-            catch ( IOException e )
-            {
-                throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        writeArchive( assemblyId, plan, archiver, format );
+                        return archiver.getDestFile();
+                    }
+                } ) );
             }
-            catch ( RepositoryAssemblyException e )
+
+            for ( int i = 0; i < futures.size(); i++ )
             {
-                throw new MojoExecutionException( "Error creating assembly: " + e.getMessage(), e );
+                waitForArchive( (Future) futures.get( i ), (File) destFiles.get( i ) );
             }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
-            attachArtifact(assembly, format, destFile);
+    private static void waitForArchive( Future future, File destFile )
+        throws MojoExecutionException
+    {
+        try
+        {
+            future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while creating assembly '" + destFile + "'", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw new MojoExecutionException( "Error creating assembly: " + cause.getMessage(), cause );
         }
     }
 
@@ -297,6 +1116,55 @@ public abstract class AbstractAssemblyMojo
 		}
 	}
 
+    /**
+     * Attaches the volumes of a split archive, each with a <code>volNNN</code> classifier added to the one the
+     * archive would have had, and the index of the volumes with the type of the archive followed by
+     * <code>.index</code>.
+     *
+     * @param assembly
+     * @param format
+     * @param index the volume index
+     * @param volumes the volume files, in order
+     */
+    protected void attachVolumes( Assembly assembly, String format, File index, List volumes )
+    {
+        String base = getAttachedClassifier( assembly );
+        for ( int i = 0; i < volumes.size(); i++ )
+        {
+            attachArtifact( format, getVolumeClassifier( base, i + 1 ), (File) volumes.get( i ) );
+        }
+        attachArtifact( format + TarVolumeIndex.EXTENSION, base, index );
+    }
+
+    /**
+     * @param assembly
+     * @return the classifier the archives of the assembly are attached with, or null for none
+     */
+    protected String getAttachedClassifier( Assembly assembly )
+    {
+        if ( appendAssemblyId )
+        {
+            return assembly.getId();
+        }
+        return classifier;
+    }
+
+    /**
+     * @param base the classifier of the archive, or null
+     * @param volume the number of the volume, starting at 1
+     * @return the classifier of the volume
+     */
+    protected static String getVolumeClassifier( String base, int volume )
+    {
+        String name = TarVolumeIndex.getVolumeName( volume );
+        return base == null ? name : base + "-" + name;
+    }
+
+    protected void attachArtifact( String type, String classifier, File file )
+    {
+        projectHelper.attachArtifact( project, type, classifier, file );
+    }
+
     /**
      * Get the full name of the distribution artifact
      *
@@ -320,16 +1188,55 @@ public abstract class AbstractAssemblyMojo
         return distributionName;
     }
 
-    protected File createArchive( Archiver archiver, Assembly assembly, String filename )
+    /**
+     * Resolves every entry of the assembly. All staging (repository assembly, unpacking, filtering and line
+     * ending conversion) happens here, once, and the resulting plan can be replayed into any number of
+     * archivers.
+     *
+     * @param assembly
+     * @param jarFormat true if one of the formats is a jar, in which case signature files are removed from
+     *                  unpacked dependencies
+     * @return the entry plan
+     */
+    protected AssemblyEntryPlan createEntryPlan( Assembly assembly, boolean jarFormat )
         throws MojoExecutionException, MojoFailureException, IOException, ArchiverException, RepositoryAssemblyException
     {
-        processRepositories( archiver, assembly.getRepositories(), assembly.isIncludeBaseDirectory() );
-        processDependencySets( archiver, assembly.getDependencySets(), assembly.isIncludeBaseDirectory() );
-        processModules( archiver, assembly.getModuleSets(), assembly.isIncludeBaseDirectory() );
-        processFileSets( archiver, assembly.getFileSets(), assembly.isIncludeBaseDirectory() );
-        processFileList( archiver, assembly.getFiles(), assembly.isIncludeBaseDirectory() );
+        RecordingArchiver recorder = new RecordingArchiver();
+
+        // file sets often share a base directory, so each directory is walked only once per assembly
+        recorder.setDirectoryTreeCache( new DirectoryTreeCache() );
+
+        AssemblyStaging staging = getStaging();
+        staging.componentsXmlFilter = new ComponentsXmlArchiverFileFilter();
+        staging.removeSecurityFiles = jarFormat;
+
+        processRepositories( recorder, assembly.getRepositories(), assembly.isIncludeBaseDirectory() );
+        processDependencySets( recorder, assembly.getDependencySets(), assembly.isIncludeBaseDirectory() );
+        processModules( recorder, assembly.getModuleSets(), assembly.isIncludeBaseDirectory() );
+        processFileSets( recorder, assembly.getFileSets(), assembly.isIncludeBaseDirectory() );
+        processFileList( recorder, assembly.getFiles(), assembly.isIncludeBaseDirectory() );
 
-        componentsXmlFilter.addToArchive( archiver );
+        staging.componentsXmlFilter.addToArchive( recorder );
+
+        AssemblyEntryPlan plan = recorder.toEntryPlan();
+
+        getLog().debug( "Assembly " + assembly.getId() + " has " + plan.size() + " entries" );
+
+        return plan;
+    }
+
+    /**
+     * Adds the entries of the plan to the archiver and sets its destination, without writing the archive.
+     *
+     * @param archiver
+     * @param plan
+     * @param filename
+     * @return the file the archive will be written to
+     */
+    protected File populateArchive( Archiver archiver, AssemblyEntryPlan plan, String filename )
+        throws MojoExecutionException, MojoFailureException, ArchiverException
+    {
+        plan.replay( archiver, getStagingStore() );
 
         File destFile = new File( outputDirectory, filename );
 
@@ -385,7 +1292,6 @@ public abstract class AbstractAssemblyMojo
         }
 
         archiver.setDestFile( destFile );
-        archiver.createArchive();
 
         return destFile;
     }
@@ -397,38 +1303,9 @@ public abstract class AbstractAssemblyMojo
         {
             Repository repository = (Repository) i.next();
 
-            AndArtifactFilter filter = new AndArtifactFilter();
-
-            // ----------------------------------------------------------------------------
-            // Includes
-            //
-            // We'll take everything if no includes are specified to try and make this
-            // process more maintainable. Don't want to have to update the assembly
-            // descriptor everytime the POM is updated.
-            // ----------------------------------------------------------------------------
-
-            if ( repository.getIncludes().isEmpty() )
-            {
-                filter.add( new AssemblyIncludesArtifactFilter( getDependenciesIncludeList() ) );
-            }
-            else
-            {
-                filter.add( new AssemblyIncludesArtifactFilter( repository.getIncludes() ) );
-            }
-
-            // ----------------------------------------------------------------------------
-            // Excludes
-            //
-            // We still want to make it easy to exclude a few things even if we slurp
-            // up everything.
-            // ----------------------------------------------------------------------------
+            // the repository assembler applies the includes and excludes of the repository itself
 
-            if ( !repository.getExcludes().isEmpty() )
-            {
-                filter.add( new AssemblyExcludesArtifactFilter( repository.getExcludes() ) );
-            }
-
-            File repositoryDirectory = new File( tempRoot, repository.getOutputDirectory() );
+            File repositoryDirectory = new File( getStaging().tempRoot, repository.getOutputDirectory() );
 
             if ( !repositoryDirectory.exists() )
             {
@@ -455,7 +1332,7 @@ public abstract class AbstractAssemblyMojo
         }
     }
 
-    private void processModules( Archiver archiver, List moduleSets, boolean includeBaseDirectory )
+    private void processModules( RecordingArchiver archiver, List moduleSets, boolean includeBaseDirectory )
         throws MojoFailureException, MojoExecutionException
     {
         for ( Iterator i = moduleSets.iterator(); i.hasNext(); )
@@ -483,8 +1360,6 @@ public abstract class AbstractAssemblyMojo
 
                 if ( filter.include( moduleProject.getArtifact() ) )
                 {
-                    String name = moduleProject.getBuild().getFinalName();
-
                     ModuleSources sources = moduleSet.getSources();
 
                     if ( sources != null )
@@ -537,78 +1412,55 @@ public abstract class AbstractAssemblyMojo
                             Integer.toString( archiver.getDefaultDirectoryMode(), 8 ) + " file perms: " +
                             Integer.toString( archiver.getDefaultFileMode(), 8 ) );
 
-                        if ( binaries.isUnpack() )
+                        if ( binaries.isUnpack() && isStreamable( archiver, moduleProject, binaries ) )
                         {
-                            // TODO: something like zipfileset in plexus-archiver
-                            //                        archiver.addJar(  )
+                            RecordingArchiver recorder = (RecordingArchiver) archiver;
 
-                            // TODO refactor into the AbstractUnpackMojo
-                            File tempLocation = new File( workDirectory, name );
-                            boolean process = false;
-                            if ( !tempLocation.exists() )
-                            {
-                                tempLocation.mkdirs();
-                                process = true;
-                            }
-                            else if ( artifact.getFile().lastModified() > tempLocation.lastModified() )
-                            {
-                                process = true;
-                            }
+                            addArchiveContents( recorder, artifact.getFile(), output );
 
-                            if ( process )
+                            if ( binaries.isIncludeDependencies() )
                             {
-                                try
+                                Set artifactSet = moduleProject.getArtifacts();
+
+                                for ( Iterator artifacts = artifactSet.iterator(); artifacts.hasNext(); )
                                 {
-                                    unpack( artifact.getFile(), tempLocation );
+                                    Artifact dependencyArtifact = (Artifact) artifacts.next();
 
-                                    if ( binaries.isIncludeDependencies() )
-                                    {
-                                        Set artifactSet = moduleProject.getArtifacts();
+                                    addArchiveContents( recorder, dependencyArtifact.getFile(), output );
+                                }
+                            }
+                        }
+                        else if ( binaries.isUnpack() )
+                        {
+                            // TODO: something like zipfileset in plexus-archiver
+                            //                        archiver.addJar(  )
 
-                                        for ( Iterator artifacts = artifactSet.iterator(); artifacts.hasNext(); )
-                                        {
-                                            Artifact dependencyArtifact = (Artifact) artifacts.next();
+                            List excludes = getUnpackExcludes();
+                            String assemblyId = getStaging().assemblyId;
 
-                                            unpack( dependencyArtifact.getFile(), tempLocation );
-                                        }
-                                    }
-                                }
-                                catch ( NoSuchArchiverException e )
-                                {
-                                    throw new MojoExecutionException( "Unable to obtain unarchiver: " + e.getMessage(),
-                                                                      e );
-                                }
+                            try
+                            {
+                                addDirectory( archiver, unpackCached( artifact.getFile(), assemblyId ), output, null,
+                                              excludes );
 
-                                /*
-                                * If the assembly is 'jar-with-dependencies', remove the security files in all dependencies
-                                * that will prevent the uberjar to execute.  Please see MASSEMBLY-64 for details.
-                                */
-                                if ( archiver instanceof JarArchiver )
+                                if ( binaries.isIncludeDependencies() )
                                 {
-                                    String[] securityFiles = {"*.RSA", "*.DSA", "*.SF", "*.rsa", "*.dsa", "*.sf"};
-                                    org.apache.maven.shared.model.fileset.FileSet securityFileSet =
-                                        new org.apache.maven.shared.model.fileset.FileSet();
-                                    securityFileSet.setDirectory( tempLocation.getAbsolutePath() + "/META-INF/" );
+                                    Set artifactSet = moduleProject.getArtifacts();
 
-                                    for ( int sfsi = 0; sfsi < securityFiles.length; sfsi++ )
+                                    for ( Iterator artifacts = artifactSet.iterator(); artifacts.hasNext(); )
                                     {
-                                        securityFileSet.addInclude( securityFiles[sfsi] );
-                                    }
+                                        Artifact dependencyArtifact = (Artifact) artifacts.next();
 
-                                    FileSetManager fsm = new FileSetManager( getLog() );
-                                    try
-                                    {
-                                        fsm.delete( securityFileSet );
-                                    }
-                                    catch ( IOException e )
-                                    {
-                                        throw new MojoExecutionException(
-                                            "Failed to delete security files: " + e.getMessage(), e );
+                                        addDirectory( archiver,
+                                                      unpackCached( dependencyArtifact.getFile(), assemblyId ),
+                                                      output, null, excludes );
                                     }
                                 }
                             }
-
-                            addDirectory( archiver, tempLocation, output, null, FileUtils.getDefaultExcludesAsList() );
+                            catch ( NoSuchArchiverException e )
+                            {
+                                throw new MojoExecutionException( "Unable to obtain unarchiver: " + e.getMessage(), e );
+                            }
                         }
                         else
                         {
@@ -657,29 +1509,24 @@ public abstract class AbstractAssemblyMojo
         }
     }
 
-    private static String evaluateFileNameMapping( Artifact artifact, String mapping )
+    /**
+     * @param artifact
+     * @param mapping an <code>outputFileNameMapping</code>
+     * @return the file name of the artifact
+     * @throws MojoExecutionException if the mapping cannot be evaluated
+     */
+    protected static String evaluateFileNameMapping( Artifact artifact, String mapping )
         throws MojoExecutionException
     {
-        String fileNameMapping = mapping;
-        //insert the classifier if exist
-        if ( !StringUtils.isEmpty( artifact.getClassifier() ) )
+        try
         {
-            int dotIdx = fileNameMapping.lastIndexOf( "." );
-
-            if ( dotIdx >= 0 )
-            {
-                String extension = fileNameMapping.substring( dotIdx + 1, fileNameMapping.length() );
-                String artifactWithoutExt = fileNameMapping.substring( 0, dotIdx );
-
-                fileNameMapping = artifactWithoutExt + "-" + artifact.getClassifier() + "." + extension;
-            }
-            else
-            {
-                fileNameMapping = fileNameMapping + "-" + artifact.getClassifier();
-            }
+            return FileNameMapping.getFileName( artifact, mapping );
+        }
+        catch ( Exception e )
+        {
+            throw new MojoExecutionException(
+                "Cannot evaluate filenameMapping: '" + mapping + "': " + e.getMessage(), e );
         }
-
-        return evaluateFileNameMapping( fileNameMapping, artifact );
     }
 
     private Set getModulesFromReactor( MavenProject parent )
@@ -689,40 +1536,19 @@ public abstract class AbstractAssemblyMojo
 
     private Set getModulesFromReactor( MavenProject parent, boolean recurse )
     {
-        Set modules = new HashSet();
-
-        String parentId = parent.getId();
-
-        for ( Iterator i = reactorProjects.iterator(); i.hasNext(); )
-        {
-            MavenProject reactorProject = (MavenProject) i.next();
-
-            if ( isProjectModule( parentId, reactorProject, recurse ) )
-            {
-                modules.add( reactorProject );
-            }
-        }
-
-        return modules;
+        return getReactorModuleIndex().getModules( parent, recurse );
     }
 
-    private boolean isProjectModule( String parentId, MavenProject reactorProject, boolean recurse )
-    {
-        MavenProject parent = reactorProject.getParent();
-
-        if ( parent != null )
-        {
-            if ( parent.getId().equals( parentId ) )
-            {
-                return true;
-            }
-            else if ( recurse )
-            {
-                isProjectModule( parentId, parent, true );
-            }
+    /**
+     * @return the index of the reactor projects by parent, built on first use
+     */
+    private synchronized ReactorModuleIndex getReactorModuleIndex()
+    {
+        if ( reactorModuleIndex == null )
+        {
+            reactorModuleIndex = new ReactorModuleIndex( reactorProjects );
         }
-
-        return false;
+        return reactorModuleIndex;
     }
 
     protected List readAssemblies()
@@ -762,10 +1588,7 @@ public abstract class AbstractAssemblyMojo
             {
                 List descriptorList = FileUtils.getFiles( descriptorSourceDirectory, "**/*.xml", null );
 
-                for ( Iterator iter = descriptorList.iterator(); iter.hasNext(); )
-                {
-                    assemblies.add( getAssembly( (File) iter.next() ) );
-                }
+                assemblies.addAll( getAssembliesInParallel( descriptorList ) );
             }
             catch ( IOException e )
             {
@@ -792,6 +1615,84 @@ public abstract class AbstractAssemblyMojo
         return assemblies;
     }
 
+    /**
+     * Reads the descriptor files on a bounded pool, one thread per available processor at most.
+     *
+     * @param files the descriptor files
+     * @return the assemblies, in the order of the files
+     */
+    private List getAssembliesInParallel( List files )
+        throws MojoFailureException, MojoExecutionException
+    {
+        int threads = Math.max( 1, Math.min( Runtime.getRuntime().availableProcessors(), files.size() ) );
+        if ( threads == 1 )
+        {
+            List assemblies = new ArrayList();
+            for ( Iterator i = files.iterator(); i.hasNext(); )
+            {
+                assemblies.add( getAssembly( (File) i.next() ) );
+            }
+            return assemblies;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List futures = new ArrayList();
+            for ( Iterator i = files.iterator(); i.hasNext(); )
+            {
+                final File file = (File) i.next();
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        return getAssembly( file );
+                    }
+                } ) );
+            }
+
+            List assemblies = new ArrayList();
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                assemblies.add( waitForAssembly( (Future) futures.get( i ), (File) files.get( i ) ) );
+            }
+            return assemblies;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Assembly waitForAssembly( Future future, File file )
+        throws MojoFailureException, MojoExecutionException
+    {
+        try
+        {
+            return (Assembly) future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while reading descriptor '" + file + "'", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if ( cause instanceof MojoFailureException )
+            {
+                throw (MojoFailureException) cause;
+            }
+            if ( cause instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) cause;
+            }
+            throw new MojoExecutionException( "Error reading descriptor '" + file + "': " + cause.getMessage(), cause );
+        }
+    }
+
     private Assembly getAssembly( String ref )
         throws MojoFailureException, MojoExecutionException
     {
@@ -830,10 +1731,7 @@ public abstract class AbstractAssemblyMojo
 
             context.put( "basedir", basedir.getAbsolutePath() );
 
-            AssemblyXpp3Reader r = new AssemblyXpp3Reader();
-            assembly = r.read( reader );
-
-            assembly = new AssemblyInterpolator().interpolate( assembly, project.getModel(), context );
+            assembly = DescriptorCache.getAssembly( IOUtil.toString( reader ), project.getModel(), context );
         }
         catch ( IOException e )
         {
@@ -925,34 +1823,14 @@ public abstract class AbstractAssemblyMojo
     {
         File componentDescriptor = new File( this.project.getBasedir() + "/" + filePath );
 
-        Reader r;
         try
         {
-            r = new FileReader( componentDescriptor );
+            return DescriptorCache.getComponent( componentDescriptor );
         }
         catch ( FileNotFoundException e )
         {
             throw new MojoFailureException( "Unable to find descriptor: " + e.getMessage() );
         }
-
-        return getComponent( r );
-
-    }
-
-    /**
-     * Load the Component via a Reader
-     *
-     * @param reader
-     */
-    private Component getComponent( Reader reader )
-        throws MojoExecutionException
-    {
-        Component component;
-        try
-        {
-            ComponentXpp3Reader r = new ComponentXpp3Reader();
-            component = r.read( reader );
-        }
         catch ( IOException e )
         {
             throw new MojoExecutionException( "Error reading component descriptor", e );
@@ -961,12 +1839,6 @@ public abstract class AbstractAssemblyMojo
         {
             throw new MojoExecutionException( "Error reading component descriptor", e );
         }
-        finally
-        {
-            IOUtil.close( reader );
-        }
-
-        return component;
     }
 
     /**
@@ -978,6 +1850,21 @@ public abstract class AbstractAssemblyMojo
      */
     protected void processDependencySets( Archiver archiver, List dependencySets, boolean includeBaseDirectory )
         throws MojoExecutionException
+    {
+        ParallelUnpacker unpacker = startUnpacking( archiver, dependencySets );
+        try
+        {
+            processDependencySets( archiver, dependencySets, includeBaseDirectory, unpacker );
+        }
+        finally
+        {
+            unpacker.shutdown();
+        }
+    }
+
+    private void processDependencySets( Archiver archiver, List dependencySets, boolean includeBaseDirectory,
+                                        ParallelUnpacker unpacker )
+        throws MojoExecutionException
     {
         for ( Iterator i = dependencySets.iterator(); i.hasNext(); )
         {
@@ -993,132 +1880,440 @@ public abstract class AbstractAssemblyMojo
                 Integer.toString( archiver.getDefaultDirectoryMode(), 8 ) + " file perms: " +
                 Integer.toString( archiver.getDefaultFileMode(), 8 ) );
 
-            AndArtifactFilter filter = new AndArtifactFilter();
-            filter.add( new AssemblyScopeArtifactFilter( dependencySet.getScope() ) );
+            List selected = selectDependencies( dependencySet );
+
+            if ( getLog().isDebugEnabled() )
+            {
+                // would be better to have a way to find out when a specified include or exclude
+                // is never triggered and warn() it.
+                Set included = new HashSet( selected );
+                for ( Iterator j = getArtifactIndex().getArtifacts().iterator(); j.hasNext(); )
+                {
+                    Artifact artifact = (Artifact) j.next();
+                    if ( !included.contains( artifact ) )
+                    {
+                        getLog().debug( "artifact: " + artifact + " not included" );
+                    }
+                }
+            }
+
+            for ( Iterator j = selected.iterator(); j.hasNext(); )
+            {
+                Artifact artifact = (Artifact) j.next();
+
+                String fileNameMapping =
+                    evaluateFileNameMapping( artifact, dependencySet.getOutputFileNameMapping() );
+                if ( dependencySet.isUnpack() && isStreamable( archiver, artifact.getFile() ) )
+                {
+                    addArchiveContents( (RecordingArchiver) archiver, artifact.getFile(), output );
+                }
+                else if ( dependencySet.isUnpack() )
+                {
+                    // TODO: something like zipfileset in plexus-archiver
+                    //                        archiver.addJar(  )
+
+                    File unpacked;
+                    try
+                    {
+                        unpacked = unpacker.getUnpacked( artifact.getFile() );
+                    }
+                    catch ( NoSuchArchiverException e )
+                    {
+                        throw new MojoExecutionException(
+                            "Unable to obtain unarchiver for file '" + artifact.getFile() + "'" );
+                    }
+
+                    addDirectory( archiver, unpacked, output, null, getUnpackExcludes() );
+                }
+                else
+                {
+                    try
+                    {
+                        archiver.addFile( artifact.getFile(), output + fileNameMapping );
+                    }
+                    catch ( ArchiverException e )
+                    {
+                        throw new MojoExecutionException(
+                            "Error adding file '" + artifact.getFile() + "' to archive: " + e.getMessage(), e );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dependencySet
+     * @return the dependencies matching the includes, excludes and scope of the set
+     */
+    private List selectDependencies( DependencySet dependencySet )
+    {
+        return getArtifactIndex().select( dependencySet.getIncludes(), dependencySet.getExcludes(),
+                                          new AssemblyScopeArtifactFilter( dependencySet.getScope() ) );
+    }
+
+    /**
+     * @return the index of the dependencies, built on first use since they do not change during an execution
+     */
+    private synchronized ArtifactIndex getArtifactIndex()
+    {
+        if ( artifactIndex == null )
+        {
+            PhaseMetrics.Timer timer = metrics.start( null, null, "dependencies" );
+            artifactIndex = new ArtifactIndex( getDependencies() );
+            timer.stop( 0, 0, artifactIndex.getArtifacts().size() );
+        }
+        return artifactIndex;
+    }
+
+    /**
+     * Starts unpacking every artifact that the dependency sets will unpack on a pool of
+     * <code>unpackThreads</code> threads. Entries are still added to the archiver in the usual order, each
+     * one waiting for its own artifact.
+     *
+     * @param archiver
+     * @param dependencySets
+     * @return the unpacker to get the unpacked directories from
+     */
+    private ParallelUnpacker startUnpacking( Archiver archiver, List dependencySets )
+        throws MojoExecutionException
+    {
+        int threads = unpackThreads > 0 ? unpackThreads : Runtime.getRuntime().availableProcessors();
+
+        ParallelUnpacker unpacker = new ParallelUnpacker( threads, getStaging().assemblyId );
+
+        if ( threads > 1 )
+        {
+            for ( Iterator i = dependencySets.iterator(); i.hasNext(); )
+            {
+                DependencySet dependencySet = (DependencySet) i.next();
+
+                if ( !dependencySet.isUnpack() )
+                {
+                    continue;
+                }
+
+                for ( Iterator j = selectDependencies( dependencySet ).iterator(); j.hasNext(); )
+                {
+                    Artifact artifact = (Artifact) j.next();
+
+                    if ( !isStreamable( archiver, artifact.getFile() ) )
+                    {
+                        unpacker.submit( artifact.getFile() );
+                    }
+                }
+            }
+        }
+
+        return unpacker;
+    }
+
+    /**
+     * @return the staging of the assembly being built on this thread, or one using the configured temporary
+     *         directory when no assembly is being built
+     */
+    private AssemblyStaging getStaging()
+    {
+        AssemblyStaging staging = (AssemblyStaging) currentStaging.get();
+        if ( staging == null )
+        {
+            staging = new AssemblyStaging( tempRoot );
+            currentStaging.set( staging );
+        }
+        return staging;
+    }
+
+    /**
+     * @return the store holding the filtered and converted files of the current assembly
+     */
+    private StagingStore getStagingStore()
+    {
+        AssemblyStaging staging = getStaging();
+        if ( staging.store == null )
+        {
+            staging.store = new StagingStore( new File( staging.tempRoot, "staged" ), stagingEntrySize,
+                                              stagingMemorySize );
+        }
+        return staging.store;
+    }
+
+    /**
+     * The directories and merge state of one assembly, so assemblies built concurrently do not share them.
+     */
+    private static class AssemblyStaging
+    {
+        private final File tempRoot;
+
+        private ComponentsXmlArchiverFileFilter componentsXmlFilter = new ComponentsXmlArchiverFileFilter();
+
+        private boolean removeSecurityFiles;
+
+        private StagingStore store;
+
+        /**
+         * The id of the assembly, which the metrics of its phases are recorded under.
+         */
+        private String assemblyId;
+
+        AssemblyStaging( File tempRoot )
+        {
+            this.tempRoot = tempRoot;
+        }
+    }
+
+    /**
+     * Unpacks artifacts into the unpack cache in the background.
+     */
+    private class ParallelUnpacker
+    {
+        private final ExecutorService executor;
+
+        private final Map unpacking = new HashMap();
+
+        private final String assemblyId;
+
+        ParallelUnpacker( int threads, String assemblyId )
+        {
+            executor = threads > 1 ? Executors.newFixedThreadPool( threads ) : null;
+            this.assemblyId = assemblyId;
+        }
+
+        void submit( final File file )
+        {
+            if ( executor != null && !unpacking.containsKey( file ) )
+            {
+                unpacking.put( file, executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        return unpackCached( file, assemblyId );
+                    }
+                } ) );
+            }
+        }
+
+        /**
+         * @param file an artifact file
+         * @return the directory the artifact has been unpacked in, waiting for it if necessary
+         */
+        File getUnpacked( File file )
+            throws MojoExecutionException, NoSuchArchiverException
+        {
+            Future future = (Future) unpacking.get( file );
+            if ( future == null )
+            {
+                return unpackCached( file, assemblyId );
+            }
+
+            try
+            {
+                return (File) future.get();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException( "Interrupted while unpacking '" + file + "'", e );
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable cause = e.getCause();
+                if ( cause instanceof MojoExecutionException )
+                {
+                    throw (MojoExecutionException) cause;
+                }
+                if ( cause instanceof NoSuchArchiverException )
+                {
+                    throw (NoSuchArchiverException) cause;
+                }
+                throw new MojoExecutionException( "Error unpacking file '" + file + "': " + cause, cause );
+            }
+        }
+
+        void shutdown()
+        {
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Excludes for adding an unpacked artifact. Unpacked artifacts are shared through the unpack cache, so
+     * instead of deleting the security files that would prevent a 'jar-with-dependencies' from executing
+     * (see MASSEMBLY-64), they are left out of the archive.
+     *
+     * @return the excludes
+     */
+    private List getUnpackExcludes()
+    {
+        List excludes = new ArrayList( FileUtils.getDefaultExcludesAsList() );
+
+        if ( getStaging().removeSecurityFiles )
+        {
+            String[] securityFiles = {"*.RSA", "*.DSA", "*.SF", "*.rsa", "*.dsa", "*.sf"};
+
+            for ( int i = 0; i < securityFiles.length; i++ )
+            {
+                excludes.add( "META-INF/" + securityFiles[i] );
+            }
+        }
+
+        return excludes;
+    }
+
+    private boolean isStreamable( Archiver archiver, MavenProject moduleProject, ModuleBinaries binaries )
+        throws MojoExecutionException
+    {
+        if ( !isStreamable( archiver, moduleProject.getArtifact().getFile() ) )
+        {
+            return false;
+        }
+
+        if ( binaries.isIncludeDependencies() )
+        {
+            for ( Iterator i = moduleProject.getArtifacts().iterator(); i.hasNext(); )
+            {
+                if ( !isStreamable( archiver, ( (Artifact) i.next() ).getFile() ) )
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isStreamable( Archiver archiver, File file )
+        throws MojoExecutionException
+    {
+        if ( !streamUnpack || !( archiver instanceof RecordingArchiver ) )
+        {
+            return false;
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            return in.read() == 'P' && in.read() == 'K' && in.read() == 3 && in.read() == 4;
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error reading '" + file + "': " + e.getMessage(), e );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Adds the members of a zip archive below <code>output</code>, as if it had been unpacked and added with
+     * {@link #addDirectory(Archiver, File, String, String[], List)}. Default excludes and signature files
+     * are skipped and <code>components.xml</code> is merged, all without extracting anything.
+     *
+     * @param recorder
+     * @param file the zip archive
+     * @param output the prefix inside the archive
+     */
+    private void addArchiveContents( RecordingArchiver recorder, File file, String output )
+        throws MojoExecutionException
+    {
+        List defaultExcludes = FileUtils.getDefaultExcludesAsList();
 
-            if ( !dependencySet.getIncludes().isEmpty() )
-            {
-                filter.add( new AssemblyIncludesArtifactFilter( dependencySet.getIncludes() ) );
-            }
-            if ( !dependencySet.getExcludes().isEmpty() )
-            {
-                filter.add( new AssemblyExcludesArtifactFilter( dependencySet.getExcludes() ) );
-            }
+        ZipFile zip = null;
+        try
+        {
+            zip = new ZipFile( file );
 
-            for ( Iterator j = getDependencies().iterator(); j.hasNext(); )
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
             {
-                Artifact artifact = (Artifact) j.next();
+                ZipEntry member = (ZipEntry) e.nextElement();
+                String name = member.getName();
 
-                if ( filter.include( artifact ) )
+                if ( isExcludedMember( name, defaultExcludes ) )
                 {
-                    String fileNameMapping =
-                        evaluateFileNameMapping( artifact, dependencySet.getOutputFileNameMapping() );
-                    if ( dependencySet.isUnpack() )
-                    {
-                        // TODO: something like zipfileset in plexus-archiver
-                        //                        archiver.addJar(  )
-
-                        File tempLocation = new File( workDirectory, fileNameMapping );
-                        boolean process = false;
-                        if ( !tempLocation.exists() )
-                        {
-                            tempLocation.mkdirs();
-                            process = true;
-                        }
-                        else if ( artifact.getFile().lastModified() > tempLocation.lastModified() )
-                        {
-                            process = true;
-                        }
-
-                        if ( process )
-                        {
-                            try
-                            {
-                                unpack( artifact.getFile(), tempLocation );
-                            }
-                            catch ( NoSuchArchiverException e )
-                            {
-                                throw new MojoExecutionException(
-                                    "Unable to obtain unarchiver for file '" + artifact.getFile() + "'" );
-                            }
-
-                            /*
-                            * If the assembly is 'jar-with-dependencies', remove the security files in all dependencies
-                            * that will prevent the uberjar to execute.  Please see MASSEMBLY-64 for details.
-                            */
-                            if ( archiver instanceof JarArchiver )
-                            {
-                                String[] securityFiles = {"*.RSA", "*.DSA", "*.SF", "*.rsa", "*.dsa", "*.sf"};
-                                org.apache.maven.shared.model.fileset.FileSet securityFileSet =
-                                    new org.apache.maven.shared.model.fileset.FileSet();
-                                securityFileSet.setDirectory( tempLocation.getAbsolutePath() + "/META-INF/" );
-
-                                for ( int sfsi = 0; sfsi < securityFiles.length; sfsi++ )
-                                {
-                                    securityFileSet.addInclude( securityFiles[sfsi] );
-                                }
-
-                                FileSetManager fsm = new FileSetManager( getLog() );
-                                try
-                                {
-                                    fsm.delete( securityFileSet );
-                                }
-                                catch ( IOException e )
-                                {
-                                    throw new MojoExecutionException(
-                                        "Failed to delete security files: " + e.getMessage(), e );
-                                }
-                            }
-                        }
+                    continue;
+                }
 
-                        addDirectory( archiver, tempLocation, output, null, FileUtils.getDefaultExcludesAsList() );
-                    }
-                    else
-                    {
-                        try
-                        {
-                            archiver.addFile( artifact.getFile(), output + fileNameMapping );
-                        }
-                        catch ( ArchiverException e )
-                        {
-                            throw new MojoExecutionException(
-                                "Error adding file '" + artifact.getFile() + "' to archive: " + e.getMessage(), e );
-                        }
-                    }
+                if ( ComponentsXmlArchiverFileFilter.COMPONENTS_XML_PATH.equals( name ) )
+                {
+                    mergeComponentsXml( zip, member );
                 }
                 else
                 {
-                    // would be better to have a way to find out when a specified include or exclude
-                    // is never triggered and warn() it.
-                    getLog().debug( "artifact: " + artifact + " not included" );
+                    recorder.addArchiveMember( file, name, output + name, member.isDirectory() );
                 }
             }
         }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error reading archive '" + file + "': " + e.getMessage(), e );
+        }
+        finally
+        {
+            AssemblyEntryPlan.closeQuietly( zip );
+        }
     }
 
-    /**
-     * Retrieves an includes list generated from the existing depedencies in a project.
-     *
-     * @return A List of includes
-     */
-    private List getDependenciesIncludeList()
+    private boolean isExcludedMember( String name, List defaultExcludes )
     {
-        List includes = new ArrayList();
-
-        for ( Iterator i = getDependencies().iterator(); i.hasNext(); )
+        if ( getStaging().removeSecurityFiles && name.startsWith( "META-INF/" ) && name.indexOf( '/', 9 ) < 0 )
         {
-            Artifact a = (Artifact) i.next();
+            String lowerName = name.toLowerCase();
+            if ( lowerName.endsWith( ".rsa" ) || lowerName.endsWith( ".dsa" ) || lowerName.endsWith( ".sf" ) )
+            {
+                return true;
+            }
+        }
 
-            if ( !project.getGroupId().equals( a.getGroupId() ) ||
-                !project.getArtifactId().equals( a.getArtifactId() ) )
+        String path = name.endsWith( "/" ) ? name.substring( 0, name.length() - 1 ) : name;
+        for ( Iterator i = defaultExcludes.iterator(); i.hasNext(); )
+        {
+            if ( SelectorUtils.matchPath( (String) i.next(), path ) )
             {
-                includes.add( a.getGroupId() + ":" + a.getArtifactId() );
+                return true;
             }
         }
+        return false;
+    }
+
+    private void mergeComponentsXml( ZipFile zip, ZipEntry member )
+        throws IOException, MojoExecutionException
+    {
+        // the merge filter only reads files, so this one small file still goes through tempRoot
+        File tempRoot = getStaging().tempRoot;
+        tempRoot.mkdirs();
+        File componentsXml = File.createTempFile( "components.", ".xml", tempRoot );
+
+        InputStream in = zip.getInputStream( member );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( componentsXml );
+            IOUtil.copy( in, out );
+            out.close();
+            out = null;
 
-        return includes;
+            getStaging().componentsXmlFilter.addComponentsXml( componentsXml );
+        }
+        catch ( XmlPullParserException e )
+        {
+            throw new MojoExecutionException( "Error reading components.xml to merge: " + e.getMessage(), e );
+        }
+        finally
+        {
+            IOUtil.close( out );
+            IOUtil.close( in );
+            componentsXml.delete();
+        }
     }
 
+    /**
+     * Retrieves an includes list generated from the existing depedencies in a project.
+     *
+     * @return A List of includes
+     */
     private void addDirectory( Archiver archiver, File directory, String output, String[] includes, List excludes )
         throws MojoExecutionException
     {
@@ -1132,7 +2327,7 @@ public abstract class AbstractAssemblyMojo
             {
                 try
                 {
-                    componentsXmlFilter.addComponentsXml( componentsXml );
+                    getStaging().componentsXmlFilter.addComponentsXml( componentsXml );
                 }
                 catch ( IOException e )
                 {
@@ -1161,11 +2356,11 @@ public abstract class AbstractAssemblyMojo
     /**
      * Process Files that will be included in the distribution.
      *
-     * @param archiver
+     * @param archiver the recorder of the entry plan
      * @param fileSets
      * @param includeBaseDirecetory
      */
-    protected void processFileSets( Archiver archiver, List fileSets, boolean includeBaseDirecetory )
+    protected void processFileSets( RecordingArchiver archiver, List fileSets, boolean includeBaseDirecetory )
         throws MojoExecutionException, MojoFailureException
     {
         for ( Iterator i = fileSets.iterator(); i.hasNext(); )
@@ -1176,14 +2371,6 @@ public abstract class AbstractAssemblyMojo
 
             String lineEnding = getLineEndingCharacters( fileSet.getLineEnding() );
 
-            File tmpDir = null;
-
-            if ( lineEnding != null )
-            {
-                tmpDir = FileUtils.createTempFile( "", "", tempRoot );
-                tmpDir.mkdirs();
-            }
-
             archiver.setDefaultDirectoryMode( Integer.parseInt( fileSet.getDirectoryMode(), 8 ) );
 
             archiver.setDefaultFileMode( Integer.parseInt( fileSet.getFileMode(), 8 ) );
@@ -1218,7 +2405,7 @@ public abstract class AbstractAssemblyMojo
             }
 
             // TODO: default excludes should be in the archiver?
-            List excludesList = fileSet.getExcludes();
+            List excludesList = new ArrayList( fileSet.getExcludes() );
             excludesList.addAll( FileUtils.getDefaultExcludesAsList() );
 
             String[] excludes = (String[]) excludesList.toArray( EMPTY_STRING_ARRAY );
@@ -1251,14 +2438,18 @@ public abstract class AbstractAssemblyMojo
 
             if ( archiveBaseDir.exists() )
             {
-                if ( lineEnding != null )
-                {
-                    copySetReplacingLineEndings( archiveBaseDir, tmpDir, includes, excludes, lineEnding );
+                getLog().debug( "Archive base directory: '" + archiveBaseDir.getAbsolutePath() + "'" );
 
-                    archiveBaseDir = tmpDir;
+                // the line endings are converted while the archive is written
+                archiver.setLineEnding( lineEnding );
+                try
+                {
+                    addDirectory( archiver, archiveBaseDir, output, includes, excludesList );
+                }
+                finally
+                {
+                    archiver.setLineEnding( null );
                 }
-                getLog().debug( "Archive base directory: '" + archiveBaseDir.getAbsolutePath() + "'" );
-                addDirectory( archiver, archiveBaseDir, output, includes, excludesList );
             }
         }
     }
@@ -1266,10 +2457,10 @@ public abstract class AbstractAssemblyMojo
     /**
      * Copy files to the distribution with option to change destination name
      *
-     * @param archiver
+     * @param archiver the recorder of the entry plan
      * @param fileList
      */
-    protected void processFileList( Archiver archiver, List fileList, boolean includeBaseDirecetory )
+    protected void processFileList( RecordingArchiver archiver, List fileList, boolean includeBaseDirecetory )
         throws MojoExecutionException, MojoFailureException
     {
         for ( Iterator i = fileList.iterator(); i.hasNext(); )
@@ -1283,9 +2474,13 @@ public abstract class AbstractAssemblyMojo
                 source =  new File( this.basedir, fileItem.getSource() );
             }
             
+            String lineEnding = getLineEndingCharacters( fileItem.getLineEnding() );
+
+            StagingStore.Content staged = null;
             if ( fileItem.isFiltered() )
             {
-                source = filterFile( source ).getAbsoluteFile();
+                staged = filterFile( source, lineEnding );
+                lineEnding = null;
             }
 
             String outputDirectory = fileItem.getOutputDirectory();
@@ -1302,31 +2497,6 @@ public abstract class AbstractAssemblyMojo
                 destName = source.getName();
             }
 
-            String lineEnding = getLineEndingCharacters( fileItem.getLineEnding() );
-
-            if ( lineEnding != null )
-            {
-                try
-                {
-                    if ( !tempRoot.exists() )
-                    {
-                        tempRoot.mkdirs();
-                    }
-
-                    File tempRootFile = File.createTempFile( source.getName() + ".", "", tempRoot );
-                    
-                    tempRootFile.deleteOnExit();
-
-                    copyReplacingLineEndings( source, tempRootFile, lineEnding );
-
-                    source = tempRootFile;
-                }
-                catch ( IOException e )
-                {
-                    throw new MojoExecutionException( "Error replacing line endings: " + e.getMessage(), e );
-                }
-            }
-
             outputDirectory = getOutputDirectory( outputDirectory, project, includeBaseDirecetory );
 
             // omit the last char if ends with / or \\
@@ -1335,70 +2505,29 @@ public abstract class AbstractAssemblyMojo
                 outputDirectory = outputDirectory.substring( 0, outputDirectory.length() - 1 );
             }
 
+            // the line endings of files that are not filtered are converted while the archive is written
+            archiver.setLineEnding( lineEnding );
             try
             {
-                archiver.addFile( source, outputDirectory + "/" + destName,
-                                  Integer.parseInt( fileItem.getFileMode() ) );
+                int mode = Integer.parseInt( fileItem.getFileMode() );
+                if ( staged == null )
+                {
+                    archiver.addFile( source, outputDirectory + "/" + destName, mode );
+                }
+                else
+                {
+                    archiver.addStagedFile( staged, source, outputDirectory + "/" + destName, mode );
+                }
             }
             catch ( ArchiverException e )
             {
                 throw new MojoExecutionException( "Error adding file to archive: " + e.getMessage(), e );
             }
-        }
-    }
-
-    /**
-     * Evaluates Filename Mapping
-     *
-     * @param expression
-     * @param artifact
-     * @return expression
-     * @throws org.apache.maven.plugin.MojoExecutionException
-     *
-     */
-    private static String evaluateFileNameMapping( String expression, Artifact artifact )
-        throws MojoExecutionException
-    {
-        String value = expression;
-
-        // this matches the last ${...} string
-        Pattern pat = Pattern.compile( "^(.*)\\$\\{([^\\}]+)\\}(.*)$" );
-        Matcher mat = pat.matcher( expression );
-
-        if ( mat.matches() )
-        {
-            Object middle;
-            String left = evaluateFileNameMapping( mat.group( 1 ), artifact );
-            try
-            {
-                middle = ReflectionValueExtractor.evaluate( mat.group( 2 ), artifact, false );
-            }
-            catch ( Exception e )
-            {
-                throw new MojoExecutionException(
-                    "Cannot evaluate filenameMapping: '" + mat.group( 1 ) + "': " + e.getMessage(), e );
-            }
-            String right = mat.group( 3 );
-
-            if ( middle == null )
+            finally
             {
-                // TODO: There should be a more generic way dealing with that. Having magic words is not good at all.
-                // probe for magic word
-                if ( "extension".equals( mat.group( 2 ).trim() ) )
-                {
-                    ArtifactHandler artifactHandler = artifact.getArtifactHandler();
-                    middle = artifactHandler.getExtension();
-                }
-                else
-                {
-                    middle = "${" + mat.group( 2 ) + "}";
-                }
+                archiver.setLineEnding( null );
             }
-
-            value = left + middle + right;
         }
-
-        return value;
     }
 
     private String getOutputDirectory( String output, MavenProject project, boolean includeBaseDirectory )
@@ -1457,66 +2586,82 @@ public abstract class AbstractAssemblyMojo
      * @throws org.codehaus.plexus.archiver.manager.NoSuchArchiverException
      *
      */
-    private Archiver createArchiver( String format )
+    protected Archiver createArchiver( String format )
         throws ArchiverException, NoSuchArchiverException
     {
         Archiver archiver;
         if ( format.startsWith( "tar" ) )
         {
-            TarArchiver tarArchiver = (TarArchiver) this.archiverManager.getArchiver( "tar" );
-            archiver = tarArchiver;
             int index = format.indexOf( '.' );
-            if ( index >= 0 )
+            String suffix = index >= 0 ? format.substring( index + 1 ) : null;
+            if ( "gz".equals( suffix ) )
             {
-                // TODO: this needs a cleanup in plexus archiver - use a real typesafe enum
-                TarArchiver.TarCompressionMethod tarCompressionMethod = new TarArchiver.TarCompressionMethod();
-                // TODO: this should accept gz and bz2 as well so we can skip over the switch
-                String compression = format.substring( index + 1 );
-                if ( "gz".equals( compression ) )
-                {
-                    tarCompressionMethod.setValue( "gzip" );
-                }
-                else if ( "bz2".equals( compression ) )
-                {
-                    tarCompressionMethod.setValue( "bzip2" );
-                }
-                else
+                archiver = createGzipTarArchiver( format );
+            }
+            else if ( "xz".equals( suffix ) )
+            {
+                archiver = createStreamingTarArchiver( new XzCompressor( xzLevel, xzThreads, xzBlockSize,
+                                                                        getCompressionExecutor() ), format );
+            }
+            else if ( "zst".equals( suffix ) )
+            {
+                archiver = createStreamingTarArchiver( new ZstdCompressor( zstdLevel, zstdThreads ), format );
+            }
+            else
+            {
+                TarArchiver tarArchiver = (TarArchiver) this.archiverManager.getArchiver( "tar" );
+                archiver = tarArchiver;
+                if ( index >= 0 )
                 {
-                    // TODO: better handling
-                    throw new IllegalArgumentException( "Unknown compression format: " + compression );
-                }
-                tarArchiver.setCompression( tarCompressionMethod );
+                    // TODO: this needs a cleanup in plexus archiver - use a real typesafe enum
+                    TarArchiver.TarCompressionMethod tarCompressionMethod = new TarArchiver.TarCompressionMethod();
+                    // TODO: this should accept gz and bz2 as well so we can skip over the switch
+                    String compression = format.substring( index + 1 );
+                    if ( "bz2".equals( compression ) )
+                    {
+                        tarCompressionMethod.setValue( "bzip2" );
+                    }
+                    else
+                    {
+                        // TODO: better handling
+                        throw new IllegalArgumentException( "Unknown compression format: " + compression );
+                    }
+                    tarArchiver.setCompression( tarCompressionMethod );
 
-                TarLongFileMode tarFileMode = new TarLongFileMode();
+                    TarLongFileMode tarFileMode = new TarLongFileMode();
 
-                tarFileMode.setValue( tarLongFileMode );
+                    tarFileMode.setValue( tarLongFileMode );
 
-                tarArchiver.setLongfile( tarFileMode );
+                    tarArchiver.setLongfile( tarFileMode );
+                }
             }
         }
         else if ( "tgz".equals( format ) )
         {
-            TarArchiver tarArchiver = (TarArchiver) this.archiverManager.getArchiver( "tar" );
-            archiver = tarArchiver;
-	    
-	    TarArchiver.TarCompressionMethod tarCompressionMethod = new TarArchiver.TarCompressionMethod();
-	    tarCompressionMethod.setValue( "gzip" );
-
-	    tarArchiver.setCompression( tarCompressionMethod );
-
-	    TarLongFileMode tarFileMode = new TarLongFileMode();
-
-	    tarFileMode.setValue( tarLongFileMode );
-
-	    tarArchiver.setLongfile( tarFileMode );
-
+            archiver = createGzipTarArchiver( format );
         }
         else if ( "war".equals( format ) )
         {
-            WarArchiver warArchiver = (WarArchiver) this.archiverManager.getArchiver( "war" );
+            SelectiveWarArchiver warArchiver = new SelectiveWarArchiver();
             warArchiver.setIgnoreWebxml( false ); // See MNG-1274
+            warArchiver.setCompressionPolicy( getCompressionPolicy() );
+            warArchiver.enableLogging( createArchiverLogger() );
             archiver = warArchiver;
         }
+        else if ( "jar".equals( format ) )
+        {
+            SelectiveJarArchiver jarArchiver = new SelectiveJarArchiver();
+            jarArchiver.setCompressionPolicy( getCompressionPolicy() );
+            jarArchiver.enableLogging( createArchiverLogger() );
+            archiver = jarArchiver;
+        }
+        else if ( "zip".equals( format ) )
+        {
+            SelectiveZipArchiver zipArchiver = new SelectiveZipArchiver();
+            zipArchiver.setCompressionPolicy( getCompressionPolicy() );
+            zipArchiver.enableLogging( createArchiverLogger() );
+            archiver = zipArchiver;
+        }
         else
         {
             archiver = this.archiverManager.getArchiver( format );
@@ -1524,74 +2669,50 @@ public abstract class AbstractAssemblyMojo
         return archiver;
     }
 
-    private void copyReplacingLineEndings( File source, File dest, String lineEndings )
-        throws IOException
+    /**
+     * Creates the archiver for tgz and tar.gz, which compresses blocks of the tar on several threads.
+     *
+     * @param format tgz or tar.gz
+     * @return archiver
+     */
+    private StreamingTarArchiver createGzipTarArchiver( String format )
     {
-        getLog().debug( "Copying while replacing line endings: " + source + " to " + dest );
-
-        BufferedReader in = new BufferedReader( new FileReader( source ) );
-        BufferedWriter out = null;
-        try
-        {
-            out = new BufferedWriter( new FileWriter( dest ) );
-
-            String line;
-
-            do
-            {
-                line = in.readLine();
-                if ( line != null )
-                {
-                    out.write( line );
-                    out.write( lineEndings );
-                }
-            }
-            while ( line != null );
-
-            out.flush();
-        }
-        finally
+        if ( tgzIndex )
         {
-            IOUtil.close( out );
-            IOUtil.close( in );
+            return createStreamingTarArchiver( new IndexedGzipCompressor( compressionThreads, gzipBlockSize,
+                                                                          tgzIndexMemberSize,
+                                                                          getCompressionExecutor() ), format );
         }
+        return createStreamingTarArchiver( new ParallelGzipCompressor( compressionThreads, gzipBlockSize,
+                                                                       getCompressionExecutor() ), format );
     }
 
-    private void copySetReplacingLineEndings( File archiveBaseDir, File tmpDir, String[] includes, String[] excludes,
-                                              String lineEnding )
-        throws MojoExecutionException
+    private CompressionPolicy getCompressionPolicy()
     {
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir( archiveBaseDir.getAbsolutePath() );
-        scanner.setIncludes( includes );
-        scanner.setExcludes( excludes );
-        scanner.scan();
-
-        String[] dirs = scanner.getIncludedDirectories();
-
-        for ( int j = 0; j < dirs.length; j++ )
-        {
-            new File( tempRoot, dirs[j] ).mkdirs();
-        }
+        return new CompressionPolicy( zipCompressionLevel, storeIncompressible );
+    }
 
-        String[] files = scanner.getIncludedFiles();
+    /**
+     * The zip family archivers are created here rather than looked up, so they need a logger of their own.
+     */
+    private Logger createArchiverLogger()
+    {
+        return new ConsoleLogger( getLog().isDebugEnabled() ? Logger.LEVEL_DEBUG : Logger.LEVEL_INFO, "archiver" );
+    }
 
-        for ( int j = 0; j < files.length; j++ )
+    private StreamingTarArchiver createStreamingTarArchiver( TarCompressor compressor, String format )
+    {
+        StreamingTarArchiver tarArchiver = new StreamingTarArchiver( compressor );
+        tarArchiver.setLongFileMode( tarLongFileMode );
+        tarArchiver.setLog( getLog() );
+        tarArchiver.setHardlinkDuplicates( tarHardlinkDuplicates );
+        tarArchiver.setChecksums( writeChecksums );
+        tarArchiver.setContentDigests( getContentDigests() );
+        if ( tarVolumeSize > 0 )
         {
-            File targetFile = new File( tmpDir, files[j] );
-
-            try
-            {
-                targetFile.getParentFile().mkdirs();
-
-                copyReplacingLineEndings( new File( archiveBaseDir, files[j] ), targetFile, lineEnding );
-            }
-            catch ( IOException e )
-            {
-                throw new MojoExecutionException( "Error copying file '" + files[j] + "' to '" + targetFile + "'", e );
-            }
+            tarArchiver.setVolumes( tarVolumeSize * 1024L * 1024L, tarVolumeThreads, format );
         }
-
+        return tarArchiver;
     }
 
     private static String getLineEndingCharacters( String lineEnding )
@@ -1641,14 +2762,30 @@ public abstract class AbstractAssemblyMojo
         assembly.addFileSet( siteFileSet );
     }
 
-    //@todo should only run once or know when it has already initialized
-    private void initializeFiltering()
+    private synchronized FilterInterpolator getFilterInterpolator()
+        throws MojoExecutionException
+    {
+        if ( filterInterpolator == null )
+        {
+            String filterEncoding = encoding;
+            if ( filterEncoding == null || filterEncoding.length() == 0 )
+            {
+                filterEncoding = System.getProperty( "file.encoding" );
+                getLog().warn( "Using platform encoding (" + filterEncoding
+                    + ") to filter files, i.e. build is platform dependent!" );
+            }
+            filterInterpolator = new FilterInterpolator( initializeFiltering(), project, LS, filterEncoding );
+        }
+        return filterInterpolator;
+    }
+
+    private Properties initializeFiltering()
         throws MojoExecutionException
     {
         getLog().info( "Initializing assembly filters..." );
 
         // System properties
-        filterProperties = new Properties( System.getProperties() );
+        Properties filterProperties = new Properties( System.getProperties() );
 
         // Project properties
         filterProperties.putAll( project.getProperties() );
@@ -1671,54 +2808,29 @@ public abstract class AbstractAssemblyMojo
                 }
             }
         }
+
+        return filterProperties;
     }
 
-    private File filterFile( File file )
+    /**
+     * Filters a file into the staging store, so filtered files with the same name do not overwrite each other.
+     *
+     * @param file the file to filter
+     * @param lineEnding the line endings to give the filtered contents, or null to keep them
+     * @return the filtered contents, kept until the staging of the current assembly is released
+     */
+    protected StagingStore.Content filterFile( File file, String lineEnding )
         throws MojoExecutionException
     {
-        initializeFiltering();
+        FilterInterpolator interpolator = getFilterInterpolator();
 
-        File tempFilterFile = new File( tempRoot + "/" + file.getName() );
+        PhaseMetrics.Timer timer = metrics.start( getStaging().assemblyId, null, "filter" );
 
-        Reader fileReader = null;
+        StagingStore.Content staged;
         try
         {
-            fileReader = new BufferedReader( new FileReader( file ) );
-
-            boolean isPropertiesFile = false;
-
-            if ( file.isFile() && file.getName().endsWith( ".properties" ) )
-            {
-                isPropertiesFile = true;
-            }
-
-            tempFilterFile.getParentFile().mkdirs();
-
             // support ${token}
-            Reader reader = new InterpolationFilterReader( fileReader, filterProperties, "${", "}" );
-
-            BufferedReader in = new BufferedReader( new InterpolationFilterReader( reader, new ReflectionProperties(
-                project, isPropertiesFile ), "${", "}" ) );
-
-            Writer fileWriter = null;
-            try
-            {
-                fileWriter = new FileWriter( tempFilterFile );
-
-                String line;
-
-                while ( ( line = in.readLine() ) != null )
-                {
-                    fileWriter.write( line );
-                    fileWriter.write( LS );
-                }
-
-                fileWriter.flush();
-            }
-            finally
-            {
-                IOUtil.close( fileWriter );
-            }
+            staged = interpolator.filter( file, lineEnding, getStagingStore() );
         }
         catch ( FileNotFoundException e )
         {
@@ -1728,11 +2840,9 @@ public abstract class AbstractAssemblyMojo
         {
             throw new MojoExecutionException( "Error filtering file '" + file + "': " + e.getMessage(), e );
         }
-        finally
-        {
-            IOUtil.close( fileReader );
-        }
 
-        return tempFilterFile;
+        timer.stop( file.length(), staged.getLength(), 1 );
+
+        return staged;
     }
 }
@@ -25,6 +25,7 @@ import org.codehaus.plexus.archiver.ArchiverException;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.util.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -66,6 +67,23 @@ public abstract class AbstractUnpackingMojo
      */
     protected File workDirectory;
 
+    /**
+     * Directory where unpacked artifacts are cached, keyed by a hash of their contents. The cache is shared
+     * by all modules and builds that use the same directory.
+     *
+     * @parameter expression="${unpackCacheDirectory}" default-value="${user.home}/.m2/unpack-cache"
+     * @required
+     */
+    protected File unpackCacheDirectory;
+
+    /**
+     * The maximum size of the unpack cache in megabytes. When the cache grows larger, the least recently
+     * used artifacts are removed from it.
+     *
+     * @parameter expression="${unpackCacheSize}" default-value="2048"
+     */
+    protected int unpackCacheSize;
+
     /**
      * To look up Archiver/UnArchiver implementations
      *
@@ -111,6 +129,21 @@ public abstract class AbstractUnpackingMojo
     
     protected boolean shouldIncludeSelfAsDependency = true;
 
+    /**
+     * Timing and I/O of the phases of this execution.
+     */
+    protected final PhaseMetrics metrics = new PhaseMetrics();
+
+    /**
+     * The unpack cache of this execution, which keeps the entries it returned until it is released.
+     */
+    private UnpackCache unpackCache;
+
+    /**
+     * Cleared after each execution, so every build hashes files again.
+     */
+    private ContentDigests contentDigests;
+
 
     /**
      * Retrieves all artifact dependencies.
@@ -168,6 +201,118 @@ public abstract class AbstractUnpackingMojo
         }
     }
 
+    /**
+     * Unpacks the archive file into the unpack cache, unless the same contents have been unpacked before.
+     *
+     * @param file File to be unpacked.
+     * @param assemblyId the assembly the contents are unpacked for, which the metrics are recorded under
+     * @return the directory holding the unpacked contents, which must not be modified
+     */
+    protected File unpackCached( File file, String assemblyId )
+        throws MojoExecutionException, NoSuchArchiverException
+    {
+        UnpackCache cache = getUnpackCache();
+
+        try
+        {
+            String key = cache.getKey( file );
+
+            File location = cache.get( key );
+            if ( location == null )
+            {
+                getLog().debug( "Unpacking " + file + " into the unpack cache" );
+
+                PhaseMetrics.Timer timer = metrics.start( assemblyId, null, "unpack" );
+
+                File staging = cache.createStagingDirectory();
+                try
+                {
+                    unpack( file, staging );
+
+                    location = cache.put( key, staging );
+                }
+                finally
+                {
+                    if ( location == null )
+                    {
+                        deleteStagingDirectory( staging.getParentFile() );
+                    }
+                }
+
+                timer.stop( file.length(), 0, 1 );
+            }
+            else
+            {
+                metrics.start( assemblyId, null, "unpackCached" ).stop( 0, 0, 1 );
+            }
+
+            return location;
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Error unpacking file: " + file + " into the unpack cache", e );
+        }
+    }
+
+    /**
+     * Removes a staging directory of the unpack cache that was not moved into it, without hiding the error
+     * that left it behind.
+     */
+    private void deleteStagingDirectory( File staging )
+    {
+        try
+        {
+            FileUtils.deleteDirectory( staging );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Unable to delete " + staging + ": " + e.getMessage() );
+        }
+    }
+
+    private synchronized UnpackCache getUnpackCache()
+    {
+        if ( unpackCache == null )
+        {
+            unpackCache =
+                new UnpackCache( unpackCacheDirectory, unpackCacheSize * 1024L * 1024L, getContentDigests() );
+        }
+        return unpackCache;
+    }
+
+    /**
+     * @return the digests of the files used by this execution
+     */
+    protected synchronized ContentDigests getContentDigests()
+    {
+        if ( contentDigests == null )
+        {
+            contentDigests = new ContentDigests();
+        }
+        return contentDigests;
+    }
+
+    /**
+     * Forgets the digests of this execution, so the next one reads the files again.
+     */
+    protected synchronized void releaseContentDigests()
+    {
+        contentDigests = null;
+    }
+
+    /**
+     * Lets the unpack cache remove the entries used by this execution again. Called once the archives that
+     * are written from them are complete.
+     */
+    protected synchronized void releaseUnpackCache()
+    {
+        if ( unpackCache != null )
+        {
+            unpackCache.release();
+            unpackCache = null;
+        }
+    }
+
     public String getClassifier()
     {
         return classifier;
@@ -0,0 +1,185 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * The dependencies of a build, indexed by <code>groupId:artifactId</code> and by their dependency conflict
+ * id (<code>groupId:artifactId:type[:classifier]</code>), which are the two forms the include and exclude
+ * patterns of an assembly descriptor are matched against.
+ * <p/>
+ * Patterns without wildcards are looked up in the index, so selecting a few artifacts from a large
+ * dependency tree does not test every artifact against every pattern. Only patterns containing
+ * <code>*</code> or <code>?</code> are matched one artifact at a time.
+ *
+ * @version $Id$
+ */
+public class ArtifactIndex
+{
+    private final List artifacts;
+
+    private final String[] shortIds;
+
+    private final String[] ids;
+
+    private final Map positions = new HashMap();
+
+    /**
+     * @param artifacts the {@link Artifact} objects to index; selections keep their iteration order
+     */
+    public ArtifactIndex( Collection artifacts )
+    {
+        this.artifacts = new ArrayList( artifacts );
+        this.shortIds = new String[this.artifacts.size()];
+        this.ids = new String[this.artifacts.size()];
+
+        for ( int i = 0; i < shortIds.length; i++ )
+        {
+            Artifact artifact = (Artifact) this.artifacts.get( i );
+            shortIds[i] = artifact.getGroupId() + ":" + artifact.getArtifactId();
+            ids[i] = artifact.getDependencyConflictId();
+
+            addPosition( shortIds[i], i );
+            if ( !shortIds[i].equals( ids[i] ) )
+            {
+                addPosition( ids[i], i );
+            }
+        }
+    }
+
+    private void addPosition( String key, int position )
+    {
+        BitSet set = (BitSet) positions.get( key );
+        if ( set == null )
+        {
+            set = new BitSet();
+            positions.put( key, set );
+        }
+        set.set( position );
+    }
+
+    /**
+     * @return every indexed artifact
+     */
+    public List getArtifacts()
+    {
+        return artifacts;
+    }
+
+    /**
+     * Selects the artifacts matching at least one include pattern, or all of them when there are none,
+     * that match no exclude pattern and are accepted by the filter.
+     *
+     * @param includes patterns, may be empty
+     * @param excludes patterns, may be empty
+     * @param filter an additional filter, such as a scope filter, or null
+     * @return the selected {@link Artifact} objects, in index order
+     */
+    public List select( List includes, List excludes, ArtifactFilter filter )
+    {
+        BitSet candidates;
+        if ( includes == null || includes.isEmpty() )
+        {
+            candidates = new BitSet();
+            candidates.set( 0, artifacts.size() );
+        }
+        else
+        {
+            candidates = find( new Patterns( includes ) );
+        }
+
+        if ( excludes != null && !excludes.isEmpty() )
+        {
+            candidates.andNot( find( new Patterns( excludes ) ) );
+        }
+
+        List selected = new ArrayList( candidates.cardinality() );
+        for ( int i = candidates.nextSetBit( 0 ); i >= 0; i = candidates.nextSetBit( i + 1 ) )
+        {
+            Artifact artifact = (Artifact) artifacts.get( i );
+            if ( filter == null || filter.include( artifact ) )
+            {
+                selected.add( artifact );
+            }
+        }
+        return selected;
+    }
+
+    private BitSet find( Patterns patterns )
+    {
+        BitSet found = new BitSet();
+
+        for ( Iterator i = patterns.literals.iterator(); i.hasNext(); )
+        {
+            BitSet set = (BitSet) positions.get( i.next() );
+            if ( set != null )
+            {
+                found.or( set );
+            }
+        }
+
+        if ( !patterns.wildcards.isEmpty() )
+        {
+            for ( int i = 0; i < shortIds.length; i++ )
+            {
+                if ( !found.get( i ) && patterns.matchesWildcard( shortIds[i], ids[i] ) )
+                {
+                    found.set( i );
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Include or exclude patterns, split into the ones that can be looked up and the ones that need
+     * wildcard matching.
+     */
+    private static class Patterns
+    {
+        private final Set literals = new HashSet();
+
+        private final List wildcards = new ArrayList();
+
+        Patterns( List patterns )
+        {
+            for ( Iterator i = patterns.iterator(); i.hasNext(); )
+            {
+                String pattern = (String) i.next();
+                if ( pattern.indexOf( '*' ) >= 0 || pattern.indexOf( '?' ) >= 0 )
+                {
+                    wildcards.add( pattern );
+                }
+                else
+                {
+                    literals.add( pattern );
+                }
+            }
+        }
+
+        boolean matchesWildcard( String shortId, String id )
+        {
+            for ( Iterator i = wildcards.iterator(); i.hasNext(); )
+            {
+                String pattern = (String) i.next();
+                if ( SelectorUtils.match( pattern, shortId ) || SelectorUtils.match( pattern, id ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.archiver.Archiver;
+import org.codehaus.plexus.archiver.ArchiverException;
+
+/**
+ * The resolved contents of an assembly: every file and directory that goes into the archive, with the
+ * path it is stored under and its mode. A plan is computed once per assembly and can then be replayed
+ * into the archiver of each format, so staging work (unpacking, filtering, line ending conversion, ...)
+ * is not repeated.
+ *
+ * @version $Id$
+ */
+public class AssemblyEntryPlan
+{
+    /**
+     * Includes pattern that only matches the base directory of a scan, used to add a single directory
+     * entry to an archiver.
+     */
+    private static final String[] DIRECTORY_ONLY = { "" };
+
+    private final List entries;
+
+    public AssemblyEntryPlan( List entries )
+    {
+        this.entries = Collections.unmodifiableList( new ArrayList( entries ) );
+    }
+
+    /**
+     * @return the {@link Entry} objects of the plan, in archive order
+     */
+    public List getEntries()
+    {
+        return entries;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size of the source files of the plain file entries, before line endings are
+     *         converted; entries read from inside another archive are not counted
+     */
+    public long getSourceLength()
+    {
+        long length = 0;
+        for ( Iterator i = entries.iterator(); i.hasNext(); )
+        {
+            Entry entry = (Entry) i.next();
+            if ( entry.isStaged() )
+            {
+                length += entry.getContent().getLength();
+            }
+            else if ( !entry.isDirectory() && !entry.isArchiveMember() )
+            {
+                length += entry.getSource().length();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Adds every entry of the plan to the archiver. Entries that are read from inside another archive or
+     * whose line endings are converted are written to the staging store the first time an archiver needs
+     * them as files, and the archivers of the other formats share those files. Staged contents kept in
+     * memory are written to their store as well, unless the archiver is a {@link RecordingArchiver} that
+     * can read them directly.
+     *
+     * @param archiver
+     * @param store where the files the archivers need are written
+     * @throws ArchiverException
+     */
+    public void replay( Archiver archiver, StagingStore store )
+        throws ArchiverException
+    {
+        if ( archiver instanceof RecordingArchiver )
+        {
+            ( (RecordingArchiver) archiver ).addEntries( entries );
+            return;
+        }
+
+        ZipFile openArchive = null;
+        try
+        {
+            for ( Iterator i = entries.iterator(); i.hasNext(); )
+            {
+                Entry entry = (Entry) i.next();
+
+                if ( entry.isDirectory() )
+                {
+                    // the directory is only scanned for itself, so the entries of an archive can use any one
+                    File source = entry.isArchiveMember() ? store.getEmptyDirectory() : entry.getSource();
+                    archiver.setDefaultDirectoryMode( entry.getMode() );
+                    archiver.addDirectory( source, entry.getPath() + "/", DIRECTORY_ONLY, null );
+                    continue;
+                }
+
+                File source = entry.getSource();
+                if ( entry.isStaged() )
+                {
+                    source = entry.getContent().getFile();
+                }
+                else if ( entry.isArchiveMember() || entry.getLineEnding() != null )
+                {
+                    synchronized ( entry )
+                    {
+                        if ( entry.materialized == null )
+                        {
+                            if ( entry.isArchiveMember() && ( openArchive == null
+                                || !openArchive.getName().equals( entry.getSource().getPath() ) ) )
+                            {
+                                closeQuietly( openArchive );
+                                openArchive = new ZipFile( entry.getSource() );
+                            }
+                            entry.materialized = materialize( openArchive, entry, store );
+                        }
+                        source = entry.materialized.getFile();
+                    }
+                }
+
+                archiver.addFile( source, entry.getPath(), entry.getMode() );
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new ArchiverException( "Error staging archive entry: " + e.getMessage(), e );
+        }
+        finally
+        {
+            closeQuietly( openArchive );
+        }
+    }
+
+    /**
+     * Writes the contents of an archive member, or a file with its line endings converted, to a file of the
+     * store.
+     */
+    private static StagingStore.Content materialize( ZipFile archive, Entry entry, StagingStore store )
+        throws IOException
+    {
+        String name = entry.getPath().substring( entry.getPath().lastIndexOf( '/' ) + 1 );
+
+        if ( !entry.isArchiveMember() )
+        {
+            return store.stageFile( entry.openStream(), name );
+        }
+
+        ZipEntry zipEntry = archive.getEntry( entry.getArchiveEntryName() );
+        if ( zipEntry == null )
+        {
+            throw new IOException( "No entry " + entry.getArchiveEntryName() + " in " + archive.getName() );
+        }
+        return store.stageFile( archive.getInputStream( zipEntry ), name );
+    }
+
+    static void closeQuietly( ZipFile archive )
+    {
+        if ( archive != null )
+        {
+            try
+            {
+                archive.close();
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * A single file or directory of the plan.
+     */
+    public static class Entry
+    {
+        private final File source;
+
+        private final String archiveEntryName;
+
+        private final String path;
+
+        private final int mode;
+
+        private final boolean directory;
+
+        private final String lineEnding;
+
+        private final StagingStore.Content content;
+
+        /**
+         * The file written for an archive member or converted file, shared by the archivers of every format.
+         */
+        private StagingStore.Content materialized;
+
+        public Entry( File source, String path, int mode, boolean directory )
+        {
+            this( source, null, path, mode, directory );
+        }
+
+        public Entry( File source, String archiveEntryName, String path, int mode, boolean directory )
+        {
+            this( source, archiveEntryName, path, mode, directory, null );
+        }
+
+        /**
+         * @param source the file the entry is read from
+         * @param archiveEntryName if not null, the entry is read from this member of the zip file
+         *                         <code>source</code>
+         * @param path the path inside the archive
+         * @param mode
+         * @param directory
+         * @param lineEnding if not null, every line ending of the file is replaced with these characters
+         *                   while it is written
+         */
+        public Entry( File source, String archiveEntryName, String path, int mode, boolean directory,
+                      String lineEnding )
+        {
+            this.source = source;
+            this.archiveEntryName = archiveEntryName;
+            this.path = path;
+            this.mode = mode;
+            this.directory = directory;
+            this.lineEnding = lineEnding;
+            this.content = null;
+        }
+
+        /**
+         * @param source the file the contents were produced from, which provides the modification time
+         * @param content the contents of the entry
+         * @param path the path inside the archive
+         * @param mode
+         */
+        public Entry( File source, StagingStore.Content content, String path, int mode )
+        {
+            this.source = source;
+            this.archiveEntryName = null;
+            this.path = path;
+            this.mode = mode;
+            this.directory = false;
+            this.lineEnding = null;
+            this.content = content;
+        }
+
+        public File getSource()
+        {
+            return source;
+        }
+
+        /**
+         * @return the name of the zip member this entry is read from, or null if it is read from a plain file
+         */
+        public String getArchiveEntryName()
+        {
+            return archiveEntryName;
+        }
+
+        public boolean isArchiveMember()
+        {
+            return archiveEntryName != null;
+        }
+
+        /**
+         * @return the staged contents of the entry, or null if it is read from its source
+         */
+        public StagingStore.Content getContent()
+        {
+            return content;
+        }
+
+        public boolean isStaged()
+        {
+            return content != null;
+        }
+
+        /**
+         * @return the path inside the archive, using '/' as separator and without a trailing '/'
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        public int getMode()
+        {
+            return mode;
+        }
+
+        public boolean isDirectory()
+        {
+            return directory;
+        }
+
+        /**
+         * @return the characters that replace the line endings of the file, or null to keep them
+         */
+        public String getLineEnding()
+        {
+            return lineEnding;
+        }
+
+        /**
+         * @return a stream of the contents of a plain file entry, with line endings converted if needed
+         * @throws IOException
+         */
+        public InputStream openStream()
+            throws IOException
+        {
+            if ( content != null )
+            {
+                return content.openStream();
+            }
+
+            InputStream in = new FileInputStream( source );
+            return lineEnding == null ? in : new LineEndingInputStream( in, lineEnding );
+        }
+
+        /**
+         * @return the size of a plain file entry, after converting line endings if needed
+         * @throws IOException
+         */
+        public long getLength()
+            throws IOException
+        {
+            if ( content != null )
+            {
+                return content.getLength();
+            }
+            return lineEnding == null ? source.length() : LineEndingInputStream.getConvertedLength( source, lineEnding );
+        }
+
+        public String toString()
+        {
+            String from = archiveEntryName == null ? source.toString() : source + "!" + archiveEntryName;
+            if ( content != null )
+            {
+                from = content + " from " + source;
+            }
+            String converted = lineEnding == null ? "" : ( "\n".equals( lineEnding ) ? " [lf]" : " [crlf]" );
+            return path + " <- " + from + " (" + Integer.toString( mode, 8 ) + ")" + converted;
+        }
+    }
+}
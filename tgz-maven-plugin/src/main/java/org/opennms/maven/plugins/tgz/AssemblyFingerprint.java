@@ -0,0 +1,180 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Describes everything that ends up in an archive: the path, mode and content hash of each entry of an
+ * {@link AssemblyEntryPlan}, plus the settings that change how the archive is written. The description is
+ * stored in a manifest next to the archive; when the manifest of an existing archive still matches, the
+ * archive does not need to be written again.
+ *
+ * @version $Id$
+ */
+public class AssemblyFingerprint
+{
+    public static final String EXTENSION = ".fingerprint";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final String entries;
+
+    private final Map settings;
+
+    private AssemblyFingerprint( String entries, Map settings )
+    {
+        this.entries = entries;
+        this.settings = settings;
+    }
+
+    /**
+     * Hashes the contents of every entry of the plan.
+     *
+     * @param plan
+     * @param digests the digests of the current execution
+     * @return the fingerprint
+     * @throws IOException if an entry cannot be read
+     */
+    public static AssemblyFingerprint create( AssemblyEntryPlan plan, ContentDigests digests )
+        throws IOException
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        for ( Iterator i = plan.getEntries().iterator(); i.hasNext(); )
+        {
+            AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+
+            String hash;
+            if ( entry.isDirectory() )
+            {
+                hash = "-";
+            }
+            else if ( entry.isStaged() )
+            {
+                hash = entry.getContent().getDigest();
+            }
+            else if ( entry.isArchiveMember() )
+            {
+                hash = digests.sha1( entry.getSource() ) + "!" + entry.getArchiveEntryName();
+            }
+            else
+            {
+                hash = digests.sha1( entry.getSource() );
+            }
+
+            if ( entry.getLineEnding() != null )
+            {
+                hash += "\n".equals( entry.getLineEnding() ) ? "+lf" : "+crlf";
+            }
+
+            buffer.append( hash ).append( ' ' ).append( Integer.toString( entry.getMode(), 8 ) ).append( ' ' );
+            buffer.append( entry.getPath() ).append( '\n' );
+        }
+
+        return new AssemblyFingerprint( buffer.toString(), new TreeMap() );
+    }
+
+    /**
+     * @param name
+     * @param value
+     * @return a copy of this fingerprint that also covers a setting affecting the archive, such as its format
+     */
+    public AssemblyFingerprint withSetting( String name, String value )
+    {
+        Map copy = new TreeMap( settings );
+        copy.put( name, value == null ? "" : value );
+        return new AssemblyFingerprint( entries, copy );
+    }
+
+    /**
+     * @param archive
+     * @return the manifest file of an archive
+     */
+    public static File getManifestFile( File archive )
+    {
+        return new File( archive.getPath() + EXTENSION );
+    }
+
+    /**
+     * @param archive
+     * @return true if the archive exists and its manifest matches this fingerprint
+     */
+    public boolean isUpToDate( File archive )
+    {
+        File manifest = getManifestFile( archive );
+        if ( !archive.isFile() || !manifest.isFile() )
+        {
+            return false;
+        }
+
+        Reader reader = null;
+        try
+        {
+            reader = new InputStreamReader( new FileInputStream( manifest ), ENCODING );
+
+            StringBuffer existing = new StringBuffer();
+            char[] buffer = new char[8192];
+            int count;
+            while ( ( count = reader.read( buffer ) ) != -1 )
+            {
+                existing.append( buffer, 0, count );
+            }
+
+            return existing.toString().equals( toString( archive ) );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    /**
+     * Writes the manifest of a freshly written archive.
+     *
+     * @param archive
+     * @throws IOException
+     */
+    public void write( File archive )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( getManifestFile( archive ) ), ENCODING );
+        try
+        {
+            writer.write( toString( archive ) );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    private String toString( File archive )
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        for ( Iterator i = settings.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry setting = (Map.Entry) i.next();
+            buffer.append( "# " ).append( setting.getKey() ).append( ": " ).append( setting.getValue() ).append( '\n' );
+        }
+        buffer.append( "# archive-length: " ).append( archive.length() ).append( '\n' );
+        buffer.append( entries );
+
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Computes the MD5, SHA-1 and SHA-256 checksums of the bytes written through it, so the checksum files of
+ * an archive can be written without reading the archive again. Each checksum file is named after the
+ * archive with the extension of its algorithm and holds the hex encoded checksum.
+ *
+ * @version $Id$
+ */
+public class ChecksumOutputStream
+    extends FilterOutputStream
+{
+    private static final String[] ALGORITHMS = { "MD5", "SHA-1", "SHA-256" };
+
+    private static final String[] EXTENSIONS = { ".md5", ".sha1", ".sha256" };
+
+    private final MessageDigest[] digests = newDigests();
+
+    public ChecksumOutputStream( OutputStream out )
+    {
+        super( out );
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        out.write( b );
+        for ( int i = 0; i < digests.length; i++ )
+        {
+            digests[i].update( (byte) b );
+        }
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        out.write( b, off, len );
+        for ( int i = 0; i < digests.length; i++ )
+        {
+            digests[i].update( b, off, len );
+        }
+    }
+
+    /**
+     * Writes the checksums of everything written so far next to the file.
+     *
+     * @param file the file this stream wrote
+     * @throws IOException
+     */
+    public void writeChecksumFiles( File file )
+        throws IOException
+    {
+        writeChecksumFiles( file, digests );
+    }
+
+    /**
+     * Writes the checksum files of a file written by other means, reading it once for all algorithms.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void computeChecksumFiles( File file )
+        throws IOException
+    {
+        MessageDigest[] digests = newDigests();
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ( ( count = in.read( buffer ) ) != -1 )
+            {
+                for ( int i = 0; i < digests.length; i++ )
+                {
+                    digests[i].update( buffer, 0, count );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        writeChecksumFiles( file, digests );
+    }
+
+    /**
+     * Removes the checksum files of a file, so checksums of an earlier archive are not left behind.
+     *
+     * @param file
+     */
+    public static void deleteChecksumFiles( File file )
+    {
+        for ( int i = 0; i < EXTENSIONS.length; i++ )
+        {
+            new File( file.getPath() + EXTENSIONS[i] ).delete();
+        }
+    }
+
+    private static void writeChecksumFiles( File file, MessageDigest[] digests )
+        throws IOException
+    {
+        for ( int i = 0; i < digests.length; i++ )
+        {
+            Writer writer = new OutputStreamWriter( new FileOutputStream( file.getPath() + EXTENSIONS[i] ), "US-ASCII" );
+            try
+            {
+                writer.write( ContentDigests.toHex( digests[i].digest() ) );
+            }
+            finally
+            {
+                IOUtil.close( writer );
+            }
+        }
+    }
+
+    private static MessageDigest[] newDigests()
+    {
+        MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+        for ( int i = 0; i < ALGORITHMS.length; i++ )
+        {
+            digests[i] = ContentDigests.newDigest( ALGORITHMS[i] );
+        }
+        return digests;
+    }
+}
@@ -0,0 +1,146 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.codehaus.plexus.archiver.zip.ZipOutputStream;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Decides per entry whether a zip family archive should deflate a file or store it as it is. Files with
+ * the extension of an already compressed format are stored, and so are files whose first bytes look
+ * random, judged by their byte entropy. Everything else is deflated at the configured level.
+ *
+ * @version $Id$
+ */
+public class CompressionPolicy
+{
+    private static final Set COMPRESSED_EXTENSIONS = new HashSet( Arrays.asList( new String[] {
+        "jar", "war", "ear", "sar", "rar", "zip", "gz", "tgz", "bz2", "tbz", "xz", "txz", "zst", "lz", "lzma",
+        "7z", "png", "gif", "jpg", "jpeg", "mp3", "mp4", "ogg", "avi", "mov", "woff", "woff2", "pdf", "swf" } ) );
+
+    private static final int SAMPLE_SIZE = 4096;
+
+    /**
+     * Samples with more bits of entropy per byte than this are not worth deflating.
+     */
+    private static final double ENTROPY_THRESHOLD = 7.5;
+
+    private final int level;
+
+    private final boolean storeIncompressible;
+
+    /**
+     * @param level the deflate level for compressed entries, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param storeIncompressible false to deflate every entry
+     */
+    public CompressionPolicy( int level, boolean storeIncompressible )
+    {
+        this.level = level;
+        this.storeIncompressible = storeIncompressible;
+    }
+
+    public CompressionPolicy()
+    {
+        this( Deflater.DEFAULT_COMPRESSION, false );
+    }
+
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Sets the deflate level of the stream for the next file and decides how the file is added. The zip
+     * family archivers call this from the hook they add each file through.
+     *
+     * @param file the file about to be added
+     * @param compress whether the archiver is configured to compress at all
+     * @param zOut the stream the file is added to
+     * @return true if the file should be deflated, false if it should be stored
+     */
+    public boolean prepare( File file, boolean compress, ZipOutputStream zOut )
+    {
+        zOut.setLevel( level );
+        return compress && shouldCompress( file );
+    }
+
+    /**
+     * @param file
+     * @return true if the file should be deflated, false if it should be stored
+     */
+    public boolean shouldCompress( File file )
+    {
+        if ( !storeIncompressible || level == Deflater.NO_COMPRESSION )
+        {
+            return level != Deflater.NO_COMPRESSION;
+        }
+
+        String name = file.getName();
+        int dot = name.lastIndexOf( '.' );
+        if ( dot >= 0 && COMPRESSED_EXTENSIONS.contains( name.substring( dot + 1 ).toLowerCase() ) )
+        {
+            return false;
+        }
+
+        if ( file.length() < SAMPLE_SIZE )
+        {
+            // small files deflate quickly, and the entropy of a short sample says little
+            return true;
+        }
+
+        try
+        {
+            return getEntropy( file ) <= ENTROPY_THRESHOLD;
+        }
+        catch ( IOException e )
+        {
+            // the archiver will report the problem when it reads the file
+            return true;
+        }
+    }
+
+    private static double getEntropy( File file )
+        throws IOException
+    {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        int length = 0;
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            int count;
+            while ( length < sample.length && ( count = in.read( sample, length, sample.length - length ) ) != -1 )
+            {
+                length += count;
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        int[] frequencies = new int[256];
+        for ( int i = 0; i < length; i++ )
+        {
+            frequencies[sample[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for ( int i = 0; i < frequencies.length; i++ )
+        {
+            if ( frequencies[i] > 0 )
+            {
+                double p = (double) frequencies[i] / length;
+                entropy -= p * Math.log( p );
+            }
+        }
+        return entropy / Math.log( 2 );
+    }
+}
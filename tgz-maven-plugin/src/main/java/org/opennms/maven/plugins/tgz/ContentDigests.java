@@ -0,0 +1,100 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * SHA-1 digests of file contents. An instance remembers the digests it has computed, keyed by path, length
+ * and modification time, so a file used by several assemblies of one execution is only read once. Each
+ * execution uses an instance of its own, so a file changed between two builds is always read again, even
+ * when the JVM is reused and the change kept its length and timestamp.
+ *
+ * @version $Id$
+ */
+public class ContentDigests
+{
+    private final Map digests = Collections.synchronizedMap( new HashMap() );
+
+    /**
+     * @param file
+     * @return the hex encoded SHA-1 of the contents of the file
+     * @throws IOException
+     */
+    public String sha1( File file )
+        throws IOException
+    {
+        String id = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+
+        String digest = (String) digests.get( id );
+        if ( digest == null )
+        {
+            digest = digest( file );
+            digests.put( id, digest );
+        }
+        return digest;
+    }
+
+    /**
+     * @param file
+     * @return the hex encoded SHA-1 of the contents of the file, computed without the cache
+     * @throws IOException
+     */
+    static String digest( File file )
+        throws IOException
+    {
+        MessageDigest digest = newDigest( "SHA-1" );
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ( ( count = in.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return toHex( digest.digest() );
+    }
+
+    static MessageDigest newDigest( String algorithm )
+    {
+        try
+        {
+            return MessageDigest.getInstance( algorithm );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( algorithm + " is not available: " + e.getMessage() );
+        }
+    }
+
+    static String toHex( byte[] bytes )
+    {
+        StringBuffer hex = new StringBuffer( bytes.length * 2 );
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            int b = bytes[i] & 0xff;
+            if ( b < 0x10 )
+            {
+                hex.append( '0' );
+            }
+            hex.append( Integer.toHexString( b ) );
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,291 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.assembly.interpolation.AssemblyInterpolationException;
+import org.apache.maven.plugin.assembly.interpolation.AssemblyInterpolator;
+import org.apache.maven.plugins.assembly.model.Assembly;
+import org.apache.maven.plugins.assembly.model.Component;
+import org.apache.maven.plugins.assembly.model.DependencySet;
+import org.apache.maven.plugins.assembly.model.FileItem;
+import org.apache.maven.plugins.assembly.model.FileSet;
+import org.apache.maven.plugins.assembly.model.ModuleBinaries;
+import org.apache.maven.plugins.assembly.model.ModuleSet;
+import org.apache.maven.plugins.assembly.model.ModuleSources;
+import org.apache.maven.plugins.assembly.model.io.xpp3.AssemblyXpp3Reader;
+import org.apache.maven.plugins.assembly.model.io.xpp3.ComponentXpp3Reader;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Parsed assembly and component descriptors, kept for the life of the JVM so a descriptor shared by many
+ * modules or executions is only parsed once.
+ * <p/>
+ * Assemblies are interpolated, so they are cached per project model and keyed by a digest of the
+ * descriptor text and of the interpolation context. Components are not interpolated and are keyed by a
+ * digest of the file contents alone. Callers add components and the site to the assemblies they get and
+ * may change the sets in them, so every call returns a copy of the file sets, files, dependency sets and
+ * module sets, and of their lists; only the repositories, which are read but never changed, are shared.
+ *
+ * @version $Id$
+ */
+public class DescriptorCache
+{
+    /**
+     * Maps each project model to the assemblies interpolated against it, so models of finished builds can
+     * be collected.
+     */
+    private static final Map ASSEMBLIES = new WeakHashMap();
+
+    private static final Map COMPONENTS = new HashMap();
+
+    private DescriptorCache()
+    {
+    }
+
+    /**
+     * @param descriptor the text of the assembly descriptor
+     * @param model the model of the project the descriptor is interpolated against
+     * @param context the additional values available to the interpolation
+     * @return a copy of the parsed and interpolated assembly
+     * @throws IOException
+     * @throws XmlPullParserException
+     * @throws AssemblyInterpolationException
+     */
+    public static Assembly getAssembly( String descriptor, Model model, Map context )
+        throws IOException, XmlPullParserException, AssemblyInterpolationException
+    {
+        String key = digest( descriptor ) + ":" + digest( new TreeMap( context ).toString() );
+
+        Assembly assembly;
+        synchronized ( ASSEMBLIES )
+        {
+            Map assemblies = (Map) ASSEMBLIES.get( model );
+            assembly = assemblies == null ? null : (Assembly) assemblies.get( key );
+        }
+
+        if ( assembly == null )
+        {
+            assembly = new AssemblyXpp3Reader().read( new StringReader( descriptor ) );
+            assembly = new AssemblyInterpolator().interpolate( assembly, model, context );
+
+            synchronized ( ASSEMBLIES )
+            {
+                Map assemblies = (Map) ASSEMBLIES.get( model );
+                if ( assemblies == null )
+                {
+                    assemblies = new HashMap();
+                    ASSEMBLIES.put( model, assemblies );
+                }
+                assemblies.put( key, assembly );
+            }
+        }
+
+        return copy( assembly );
+    }
+
+    /**
+     * @param file the component descriptor
+     * @return a copy of the parsed component
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static Component getComponent( File file )
+        throws IOException, XmlPullParserException
+    {
+        String key = ContentDigests.digest( file );
+
+        synchronized ( COMPONENTS )
+        {
+            Component component = (Component) COMPONENTS.get( key );
+            if ( component != null )
+            {
+                return copy( component );
+            }
+        }
+
+        Component component;
+        Reader reader = new FileReader( file );
+        try
+        {
+            component = new ComponentXpp3Reader().read( reader );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+
+        synchronized ( COMPONENTS )
+        {
+            // another thread may have parsed the same component meanwhile; keep the first one
+            Component existing = (Component) COMPONENTS.get( key );
+            if ( existing != null )
+            {
+                component = existing;
+            }
+            else
+            {
+                COMPONENTS.put( key, component );
+            }
+        }
+        return copy( component );
+    }
+
+    /**
+     * Copies the assembly, its sets and their lists; the repositories are shared.
+     */
+    private static Assembly copy( Assembly assembly )
+    {
+        Assembly copy = new Assembly();
+        copy.setId( assembly.getId() );
+        copy.setIncludeBaseDirectory( assembly.isIncludeBaseDirectory() );
+        copy.setIncludeSiteDirectory( assembly.isIncludeSiteDirectory() );
+        copy.setFormats( new ArrayList( assembly.getFormats() ) );
+        copy.setRepositories( new ArrayList( assembly.getRepositories() ) );
+        copy.setDependencySets( copyDependencySets( assembly.getDependencySets() ) );
+        copy.setModuleSets( copyModuleSets( assembly.getModuleSets() ) );
+        copy.setFileSets( copyFileSets( assembly.getFileSets() ) );
+        copy.setFiles( copyFiles( assembly.getFiles() ) );
+        copy.setComponentDescriptors( new ArrayList( assembly.getComponentDescriptors() ) );
+        return copy;
+    }
+
+    private static Component copy( Component component )
+    {
+        Component copy = new Component();
+        copy.setDependencySets( copyDependencySets( component.getDependencySets() ) );
+        copy.setFileSets( copyFileSets( component.getFileSets() ) );
+        copy.setFiles( copyFiles( component.getFiles() ) );
+        return copy;
+    }
+
+    private static List copyFileSets( List fileSets )
+    {
+        List copies = new ArrayList( fileSets.size() );
+        for ( Iterator i = fileSets.iterator(); i.hasNext(); )
+        {
+            FileSet fileSet = (FileSet) i.next();
+
+            FileSet copy = new FileSet();
+            copy.setDirectory( fileSet.getDirectory() );
+            copy.setLineEnding( fileSet.getLineEnding() );
+            copy.setOutputDirectory( fileSet.getOutputDirectory() );
+            copy.setIncludes( new ArrayList( fileSet.getIncludes() ) );
+            copy.setExcludes( new ArrayList( fileSet.getExcludes() ) );
+            copy.setFileMode( fileSet.getFileMode() );
+            copy.setDirectoryMode( fileSet.getDirectoryMode() );
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    private static List copyFiles( List files )
+    {
+        List copies = new ArrayList( files.size() );
+        for ( Iterator i = files.iterator(); i.hasNext(); )
+        {
+            FileItem file = (FileItem) i.next();
+
+            FileItem copy = new FileItem();
+            copy.setSource( file.getSource() );
+            copy.setOutputDirectory( file.getOutputDirectory() );
+            copy.setDestName( file.getDestName() );
+            copy.setFileMode( file.getFileMode() );
+            copy.setLineEnding( file.getLineEnding() );
+            copy.setFiltered( file.isFiltered() );
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    private static List copyDependencySets( List dependencySets )
+    {
+        List copies = new ArrayList( dependencySets.size() );
+        for ( Iterator i = dependencySets.iterator(); i.hasNext(); )
+        {
+            DependencySet dependencySet = (DependencySet) i.next();
+
+            DependencySet copy = new DependencySet();
+            copy.setOutputFileNameMapping( dependencySet.getOutputFileNameMapping() );
+            copy.setUnpack( dependencySet.isUnpack() );
+            copy.setScope( dependencySet.getScope() );
+            copy.setOutputDirectory( dependencySet.getOutputDirectory() );
+            copy.setIncludes( new ArrayList( dependencySet.getIncludes() ) );
+            copy.setExcludes( new ArrayList( dependencySet.getExcludes() ) );
+            copy.setFileMode( dependencySet.getFileMode() );
+            copy.setDirectoryMode( dependencySet.getDirectoryMode() );
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    private static List copyModuleSets( List moduleSets )
+    {
+        List copies = new ArrayList( moduleSets.size() );
+        for ( Iterator i = moduleSets.iterator(); i.hasNext(); )
+        {
+            ModuleSet moduleSet = (ModuleSet) i.next();
+
+            ModuleSet copy = new ModuleSet();
+            copy.setIncludes( new ArrayList( moduleSet.getIncludes() ) );
+            copy.setExcludes( new ArrayList( moduleSet.getExcludes() ) );
+
+            ModuleSources sources = moduleSet.getSources();
+            if ( sources != null )
+            {
+                ModuleSources sourcesCopy = new ModuleSources();
+                sourcesCopy.setOutputDirectory( sources.getOutputDirectory() );
+                sourcesCopy.setIncludes( new ArrayList( sources.getIncludes() ) );
+                sourcesCopy.setExcludes( new ArrayList( sources.getExcludes() ) );
+                sourcesCopy.setFileMode( sources.getFileMode() );
+                sourcesCopy.setDirectoryMode( sources.getDirectoryMode() );
+                copy.setSources( sourcesCopy );
+            }
+
+            ModuleBinaries binaries = moduleSet.getBinaries();
+            if ( binaries != null )
+            {
+                ModuleBinaries binariesCopy = new ModuleBinaries();
+                binariesCopy.setOutputFileNameMapping( binaries.getOutputFileNameMapping() );
+                binariesCopy.setUnpack( binaries.isUnpack() );
+                binariesCopy.setIncludeDependencies( binaries.isIncludeDependencies() );
+                binariesCopy.setOutputDirectory( binaries.getOutputDirectory() );
+                binariesCopy.setIncludes( new ArrayList( binaries.getIncludes() ) );
+                binariesCopy.setExcludes( new ArrayList( binaries.getExcludes() ) );
+                binariesCopy.setFileMode( binaries.getFileMode() );
+                binariesCopy.setDirectoryMode( binaries.getDirectoryMode() );
+                copy.setBinaries( binariesCopy );
+            }
+
+            copies.add( copy );
+        }
+        return copies;
+    }
+
+    private static String digest( String text )
+    {
+        MessageDigest digest = ContentDigests.newDigest( "SHA-1" );
+        try
+        {
+            return ContentDigests.toHex( digest.digest( text.getBytes( "UTF-8" ) ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported" );
+        }
+    }
+}
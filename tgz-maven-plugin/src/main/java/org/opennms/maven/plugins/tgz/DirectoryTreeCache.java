@@ -0,0 +1,257 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Remembers the directory trees walked while an assembly is planned, so file sets that share a base
+ * directory but select different parts of it walk the filesystem only once. Includes and excludes are
+ * evaluated against the cached paths with the same rules as the plexus {@link
+ * org.codehaus.plexus.util.DirectoryScanner}, including its default excludes. A directory matched by an
+ * exclude pattern ending in <code>/**</code>, such as the default <code>**&#47;.svn/**</code>, is skipped
+ * with everything below it, since nothing there can be selected.
+ * <p/>
+ * The cache does not notice changes to the filesystem, so it is meant to live only as long as one
+ * assembly is planned.
+ *
+ * @version $Id$
+ */
+public class DirectoryTreeCache
+{
+    private static final String[] DEFAULT_INCLUDES = { "**" };
+
+    private final Map trees = new HashMap();
+
+    /**
+     * @param basedir
+     * @param includes the patterns to include, or null for everything
+     * @param excludes the patterns to exclude besides the default excludes, or null
+     * @return the included directories and files, relative to the base directory
+     * @throws IOException if the directory cannot be walked
+     */
+    public Scan scan( File basedir, String[] includes, String[] excludes )
+        throws IOException
+    {
+        Tree tree = getTree( basedir );
+
+        String[] includePatterns = normalize( includes == null || includes.length == 0 ? DEFAULT_INCLUDES : includes );
+
+        String[] defaultExcludes = FileUtils.getDefaultExcludes();
+        String[] allExcludes = new String[( excludes == null ? 0 : excludes.length ) + defaultExcludes.length];
+        if ( excludes != null )
+        {
+            System.arraycopy( excludes, 0, allExcludes, 0, excludes.length );
+        }
+        System.arraycopy( defaultExcludes, 0, allExcludes, allExcludes.length - defaultExcludes.length,
+                          defaultExcludes.length );
+        String[] excludePatterns = normalize( allExcludes );
+        String[] prunePatterns = getPrunePatterns( excludePatterns );
+
+        List directories = new ArrayList();
+        List files = new ArrayList();
+
+        int size = tree.paths.size();
+        for ( int i = 0; i < size; )
+        {
+            String path = (String) tree.paths.get( i );
+            if ( matches( includePatterns, path ) && !matches( excludePatterns, path ) )
+            {
+                ( tree.directories.get( i ) ? directories : files ).add( path );
+            }
+
+            if ( tree.directories.get( i ) && matches( prunePatterns, path ) )
+            {
+                i = tree.ends[i];
+            }
+            else
+            {
+                i++;
+            }
+        }
+
+        return new Scan( (String[]) directories.toArray( new String[directories.size()] ),
+                         (String[]) files.toArray( new String[files.size()] ) );
+    }
+
+    private synchronized Tree getTree( File basedir )
+        throws IOException
+    {
+        File key = basedir.getCanonicalFile();
+
+        Tree tree = (Tree) trees.get( key );
+        if ( tree == null )
+        {
+            tree = new Tree( key );
+            trees.put( key, tree );
+        }
+        return tree;
+    }
+
+    private static boolean matches( String[] patterns, String path )
+    {
+        for ( int i = 0; i < patterns.length; i++ )
+        {
+            if ( SelectorUtils.matchPath( patterns[i], path, true ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return for every exclude pattern ending in <code>/**</code>, the pattern a directory has to match for
+     *         everything below it to be excluded
+     */
+    private static String[] getPrunePatterns( String[] excludePatterns )
+    {
+        String suffix = File.separator + "**";
+
+        List patterns = new ArrayList();
+        for ( int i = 0; i < excludePatterns.length; i++ )
+        {
+            if ( excludePatterns[i].endsWith( suffix ) )
+            {
+                patterns.add( excludePatterns[i].substring( 0, excludePatterns[i].length() - suffix.length() ) );
+            }
+        }
+        return (String[]) patterns.toArray( new String[patterns.size()] );
+    }
+
+    private static String[] normalize( String[] patterns )
+    {
+        String[] normalized = new String[patterns.length];
+        for ( int i = 0; i < patterns.length; i++ )
+        {
+            String pattern = patterns[i].trim().replace( '/', File.separatorChar ).replace( '\\', File.separatorChar );
+            if ( pattern.endsWith( File.separator ) )
+            {
+                pattern += "**";
+            }
+            normalized[i] = pattern;
+        }
+        return normalized;
+    }
+
+    /**
+     * The result of a scan, in the order the directory tree was walked.
+     */
+    public static class Scan
+    {
+        private final String[] directories;
+
+        private final String[] files;
+
+        Scan( String[] directories, String[] files )
+        {
+            this.directories = directories;
+            this.files = files;
+        }
+
+        public String[] getIncludedDirectories()
+        {
+            return directories;
+        }
+
+        public String[] getIncludedFiles()
+        {
+            return files;
+        }
+    }
+
+    /**
+     * Every path below a base directory, relative to it, in the order the tree was walked, so the paths
+     * below a directory directly follow it. The base directory itself is the empty path.
+     */
+    private static class Tree
+        extends SimpleFileVisitor
+    {
+        private final Path root;
+
+        private final List paths = new ArrayList();
+
+        /**
+         * The indexes of the paths that are directories.
+         */
+        private final BitSet directories = new BitSet();
+
+        /**
+         * For a directory, the index of the first path after the ones below it.
+         */
+        private int[] ends = new int[64];
+
+        private final List openDirectories = new ArrayList();
+
+        Tree( File basedir )
+            throws IOException
+        {
+            this.root = basedir.toPath();
+            Files.walkFileTree( root, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE, this );
+        }
+
+        public FileVisitResult preVisitDirectory( Object dir, BasicFileAttributes attrs )
+        {
+            openDirectories.add( new Integer( paths.size() ) );
+            directories.set( paths.size() );
+            add( (Path) dir );
+            return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult postVisitDirectory( Object dir, IOException exc )
+        {
+            int index = ( (Integer) openDirectories.remove( openDirectories.size() - 1 ) ).intValue();
+            ends[index] = paths.size();
+            return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFile( Object file, BasicFileAttributes attrs )
+        {
+            // directories below the depth limit are visited as files
+            if ( attrs.isDirectory() )
+            {
+                directories.set( paths.size() );
+                ensureCapacity();
+                ends[paths.size()] = paths.size() + 1;
+            }
+            add( (Path) file );
+            return FileVisitResult.CONTINUE;
+        }
+
+        public FileVisitResult visitFileFailed( Object file, IOException exc )
+        {
+            // unreadable entries and symbolic link loops are skipped, as the directory scanner does
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void add( Path path )
+        {
+            ensureCapacity();
+            paths.add( root.relativize( path ).toString() );
+        }
+
+        private void ensureCapacity()
+        {
+            if ( paths.size() == ends.length )
+            {
+                int[] grown = new int[ends.length * 2];
+                System.arraycopy( ends, 0, grown, 0, ends.length );
+                ends = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.archiver.tar.TarEntry;
+import org.codehaus.plexus.archiver.tar.TarInputStream;
+import org.codehaus.plexus.util.IOUtil;
+import org.tukaani.xz.XZInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * The SHA-1 and mode of the bytes stored for each entry of an archive, keyed by path; directories are
+ * keyed by their path followed by '/'. Unlike an {@link AssemblyFingerprint}, which identifies where the
+ * contents come from, a manifest hashes the contents themselves, so the manifest of a plan can be compared
+ * with one read back from an existing archive.
+ * <p/>
+ * A manifest is stored next to its archive, one <code>sha1 mode path</code> line per entry.
+ *
+ * @version $Id$
+ */
+public class EntryManifest
+{
+    public static final String EXTENSION = ".entries";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String DIRECTORY = "-";
+
+    /**
+     * Mode of the entries read from zip archives, whose unix modes are not available.
+     */
+    private static final String UNKNOWN_MODE = "?";
+
+    private final Map entries = new LinkedHashMap();
+
+    private EntryManifest()
+    {
+    }
+
+    /**
+     * Hashes the contents every entry of the plan will have in the archive.
+     *
+     * @param plan
+     * @param digests the digests of the current execution
+     * @return the manifest
+     * @throws IOException if an entry cannot be read
+     */
+    public static EntryManifest create( AssemblyEntryPlan plan, ContentDigests digests )
+        throws IOException
+    {
+        EntryManifest manifest = new EntryManifest();
+
+        ZipFile openArchive = null;
+        try
+        {
+            for ( Iterator i = plan.getEntries().iterator(); i.hasNext(); )
+            {
+                AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+                String mode = Integer.toString( entry.getMode() & 07777, 8 );
+
+                if ( entry.isDirectory() )
+                {
+                    manifest.entries.put( entry.getPath() + "/", DIRECTORY + " " + mode );
+                    continue;
+                }
+
+                String hash;
+                if ( entry.isArchiveMember() )
+                {
+                    File source = entry.getSource();
+                    if ( openArchive == null || !openArchive.getName().equals( source.getPath() ) )
+                    {
+                        AssemblyEntryPlan.closeQuietly( openArchive );
+                        openArchive = new ZipFile( source );
+                    }
+                    ZipEntry member = openArchive.getEntry( entry.getArchiveEntryName() );
+                    if ( member == null )
+                    {
+                        throw new IOException( "Entry " + entry.getArchiveEntryName() + " not found in " + source );
+                    }
+                    hash = digest( openArchive.getInputStream( member ) );
+                }
+                else if ( entry.isStaged() )
+                {
+                    hash = entry.getContent().getDigest();
+                }
+                else if ( entry.getLineEnding() != null )
+                {
+                    hash = digest( entry.openStream() );
+                }
+                else
+                {
+                    hash = digests.sha1( entry.getSource() );
+                }
+
+                manifest.entries.put( entry.getPath(), hash + " " + mode );
+            }
+        }
+        finally
+        {
+            AssemblyEntryPlan.closeQuietly( openArchive );
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Reads the manifest of a baseline. The baseline is either a manifest, an archive with a manifest next
+     * to it, or an archive without one (tar, tgz, tar.gz, tar.xz, tar.zst, zip, jar or war), which is then
+     * read in full.
+     *
+     * @param baseline
+     * @return the manifest
+     * @throws IOException if the baseline cannot be read or is of an unknown format
+     */
+    public static EntryManifest read( File baseline )
+        throws IOException
+    {
+        String name = baseline.getName();
+        if ( name.endsWith( EXTENSION ) )
+        {
+            return readManifest( baseline );
+        }
+
+        File manifestFile = getManifestFile( baseline );
+        if ( manifestFile.isFile() )
+        {
+            return readManifest( manifestFile );
+        }
+
+        if ( name.endsWith( ".zip" ) || name.endsWith( ".jar" ) || name.endsWith( ".war" ) )
+        {
+            return readZip( baseline );
+        }
+
+        InputStream in = new BufferedInputStream( new FileInputStream( baseline ), 64 * 1024 );
+        try
+        {
+            if ( name.endsWith( ".tgz" ) || name.endsWith( ".tar.gz" ) )
+            {
+                in = new GZIPInputStream( in, 64 * 1024 );
+            }
+            else if ( name.endsWith( ".tar.xz" ) )
+            {
+                in = new XZInputStream( in );
+            }
+            else if ( name.endsWith( ".tar.zst" ) )
+            {
+                in = new ZstdInputStream( in );
+            }
+            else if ( !name.endsWith( ".tar" ) )
+            {
+                throw new IOException( "Unknown baseline format: " + baseline );
+            }
+            return readTar( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * @param archive
+     * @return the manifest file of an archive
+     */
+    public static File getManifestFile( File archive )
+    {
+        return new File( archive.getPath() + EXTENSION );
+    }
+
+    /**
+     * Writes this manifest next to an archive.
+     *
+     * @param archive
+     * @throws IOException
+     */
+    public void write( File archive )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( getManifestFile( archive ) ), ENCODING );
+        try
+        {
+            for ( Iterator i = entries.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry entry = (Map.Entry) i.next();
+                writer.write( (String) entry.getValue() );
+                writer.write( ' ' );
+                writer.write( (String) entry.getKey() );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * @param entry an entry of the plan this manifest was created from
+     * @param baseline
+     * @return true if the baseline has no entry at the same path with the same contents and mode; modes are
+     *         not compared when either side does not know them
+     */
+    public boolean isChanged( AssemblyEntryPlan.Entry entry, EntryManifest baseline )
+    {
+        String key = entry.isDirectory() ? entry.getPath() + "/" : entry.getPath();
+
+        String value = (String) entries.get( key );
+        String baselineValue = (String) baseline.entries.get( key );
+        if ( value == null || baselineValue == null )
+        {
+            return true;
+        }
+
+        int space = value.indexOf( ' ' );
+        int baselineSpace = baselineValue.indexOf( ' ' );
+        if ( !value.substring( 0, space ).equals( baselineValue.substring( 0, baselineSpace ) ) )
+        {
+            return true;
+        }
+
+        String mode = value.substring( space + 1 );
+        String baselineMode = baselineValue.substring( baselineSpace + 1 );
+        return !mode.equals( baselineMode ) && !UNKNOWN_MODE.equals( mode ) && !UNKNOWN_MODE.equals( baselineMode );
+    }
+
+    /**
+     * @param baseline
+     * @return the paths of the baseline that are not in this manifest, directories ending with '/'
+     */
+    public List getRemoved( EntryManifest baseline )
+    {
+        List removed = new ArrayList();
+        for ( Iterator i = baseline.entries.keySet().iterator(); i.hasNext(); )
+        {
+            String path = (String) i.next();
+            if ( !entries.containsKey( path ) )
+            {
+                removed.add( path );
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Writes the paths of the baseline that are not in this manifest to a file, one per line.
+     *
+     * @param baseline
+     * @param file
+     * @return the paths written, directories ending with '/'
+     * @throws IOException
+     */
+    public List writeRemoved( EntryManifest baseline, File file )
+        throws IOException
+    {
+        List removed = getRemoved( baseline );
+
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), ENCODING );
+        try
+        {
+            for ( Iterator i = removed.iterator(); i.hasNext(); )
+            {
+                writer.write( (String) i.next() );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+        return removed;
+    }
+
+    private static EntryManifest readManifest( File file )
+        throws IOException
+    {
+        EntryManifest manifest = new EntryManifest();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), ENCODING ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int first = line.indexOf( ' ' );
+                int second = first < 0 ? -1 : line.indexOf( ' ', first + 1 );
+                if ( second < 0 )
+                {
+                    throw new IOException( "Invalid line in entry manifest " + file + ": " + line );
+                }
+                manifest.entries.put( line.substring( second + 1 ), line.substring( 0, second ) );
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        return manifest;
+    }
+
+    private static EntryManifest readTar( InputStream in )
+        throws IOException
+    {
+        EntryManifest manifest = new EntryManifest();
+
+        TarInputStream tIn = new TarInputStream( in );
+        TarEntry entry;
+        while ( ( entry = tIn.getNextEntry() ) != null )
+        {
+            String path = normalize( entry.getName() );
+            String mode = Integer.toString( entry.getMode() & 07777, 8 );
+
+            if ( entry.isDirectory() )
+            {
+                manifest.entries.put( path.endsWith( "/" ) ? path : path + "/", DIRECTORY + " " + mode );
+            }
+            else if ( entry.getSize() == 0 && entry.getLinkName() != null && entry.getLinkName().length() > 0 )
+            {
+                // a hard link written for a duplicate has the contents of the entry it links to
+                String target = (String) manifest.entries.get( normalize( entry.getLinkName() ) );
+                String hash = target == null ? digest( new byte[0] ) : target.substring( 0, target.indexOf( ' ' ) );
+                manifest.entries.put( path, hash + " " + mode );
+            }
+            else
+            {
+                MessageDigest digest = ContentDigests.newDigest( "SHA-1" );
+                byte[] buffer = new byte[64 * 1024];
+                int count;
+                while ( ( count = tIn.read( buffer, 0, buffer.length ) ) != -1 )
+                {
+                    digest.update( buffer, 0, count );
+                }
+                manifest.entries.put( path, ContentDigests.toHex( digest.digest() ) + " " + mode );
+            }
+        }
+        return manifest;
+    }
+
+    private static EntryManifest readZip( File file )
+        throws IOException
+    {
+        EntryManifest manifest = new EntryManifest();
+
+        ZipFile zip = new ZipFile( file );
+        try
+        {
+            for ( Enumeration e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = (ZipEntry) e.nextElement();
+                String path = normalize( entry.getName() );
+                if ( entry.isDirectory() )
+                {
+                    manifest.entries.put( path.endsWith( "/" ) ? path : path + "/", DIRECTORY + " " + UNKNOWN_MODE );
+                }
+                else
+                {
+                    manifest.entries.put( path, digest( zip.getInputStream( entry ) ) + " " + UNKNOWN_MODE );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return manifest;
+    }
+
+    private static String normalize( String path )
+    {
+        return path.startsWith( "./" ) ? path.substring( 2 ) : path;
+    }
+
+    private static String digest( InputStream in )
+        throws IOException
+    {
+        MessageDigest digest = ContentDigests.newDigest( "SHA-1" );
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ( ( count = in.read( buffer ) ) != -1 )
+            {
+                digest.update( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return ContentDigests.toHex( digest.digest() );
+    }
+
+    private static String digest( byte[] bytes )
+    {
+        return ContentDigests.toHex( ContentDigests.newDigest( "SHA-1" ).digest( bytes ) );
+    }
+}
@@ -0,0 +1,255 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.introspection.ReflectionValueExtractor;
+
+/**
+ * A compiled <code>outputFileNameMapping</code>: the literal text and the <code>${...}</code> expressions of
+ * the mapping, parsed once. The usual artifact fields are read directly; any other expression is evaluated
+ * against the artifact by reflection. An expression without a value is kept as it is, except
+ * <code>${extension}</code>, which falls back to the extension of the artifact handler.
+ * <p/>
+ * Compiled mappings are cached by their mapping string, since the same few mappings are applied to every
+ * artifact of a build.
+ *
+ * @version $Id$
+ */
+public class FileNameMapping
+{
+    private static final Map CACHE = new HashMap();
+
+    private static final int LITERAL = 0;
+
+    private static final int REFLECTION = 1;
+
+    private static final int GROUP_ID = 2;
+
+    private static final int ARTIFACT_ID = 3;
+
+    private static final int VERSION = 4;
+
+    private static final int BASE_VERSION = 5;
+
+    private static final int CLASSIFIER = 6;
+
+    private static final int TYPE = 7;
+
+    private static final int SCOPE = 8;
+
+    private static final int EXTENSION = 9;
+
+    private static final Map ACCESSORS = new HashMap();
+
+    static
+    {
+        ACCESSORS.put( "groupId", new Integer( GROUP_ID ) );
+        ACCESSORS.put( "artifactId", new Integer( ARTIFACT_ID ) );
+        ACCESSORS.put( "version", new Integer( VERSION ) );
+        ACCESSORS.put( "baseVersion", new Integer( BASE_VERSION ) );
+        ACCESSORS.put( "classifier", new Integer( CLASSIFIER ) );
+        ACCESSORS.put( "type", new Integer( TYPE ) );
+        ACCESSORS.put( "scope", new Integer( SCOPE ) );
+        ACCESSORS.put( "extension", new Integer( EXTENSION ) );
+    }
+
+    private final String mapping;
+
+    private final int[] kinds;
+
+    private final String[] texts;
+
+    private FileNameMapping( String mapping, int[] kinds, String[] texts )
+    {
+        this.mapping = mapping;
+        this.kinds = kinds;
+        this.texts = texts;
+    }
+
+    /**
+     * @param mapping
+     * @return the compiled mapping, shared by every caller using the same mapping string
+     */
+    public static FileNameMapping getInstance( String mapping )
+    {
+        synchronized ( CACHE )
+        {
+            FileNameMapping compiled = (FileNameMapping) CACHE.get( mapping );
+            if ( compiled == null )
+            {
+                compiled = compile( mapping );
+                CACHE.put( mapping, compiled );
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Applies a mapping to an artifact. The classifier of an artifact that has one is inserted before the
+     * extension of the mapping, or appended when the mapping has none.
+     *
+     * @param artifact
+     * @param mapping
+     * @return the file name of the artifact
+     * @throws Exception if an expression cannot be evaluated
+     */
+    public static String getFileName( Artifact artifact, String mapping )
+        throws Exception
+    {
+        String fileNameMapping = mapping;
+        if ( !StringUtils.isEmpty( artifact.getClassifier() ) )
+        {
+            int dotIdx = fileNameMapping.lastIndexOf( "." );
+
+            if ( dotIdx >= 0 )
+            {
+                fileNameMapping = fileNameMapping.substring( 0, dotIdx ) + "-" + artifact.getClassifier()
+                    + fileNameMapping.substring( dotIdx );
+            }
+            else
+            {
+                fileNameMapping = fileNameMapping + "-" + artifact.getClassifier();
+            }
+        }
+
+        return getInstance( fileNameMapping ).evaluate( artifact );
+    }
+
+    private static FileNameMapping compile( String mapping )
+    {
+        List kinds = new ArrayList();
+        List texts = new ArrayList();
+
+        int start = 0;
+        int end;
+        while ( ( end = mapping.indexOf( '}', start ) ) != -1 )
+        {
+            // as with the regular expression this replaces, the expression starts at the last "${" before
+            // the closing brace
+            int begin = mapping.lastIndexOf( "${", end );
+            if ( begin < start || end - begin < 3 )
+            {
+                addLiteral( kinds, texts, mapping.substring( start, end + 1 ) );
+                start = end + 1;
+                continue;
+            }
+
+            addLiteral( kinds, texts, mapping.substring( start, begin ) );
+
+            String expression = mapping.substring( begin + 2, end );
+            Integer accessor = (Integer) ACCESSORS.get( expression );
+            if ( accessor == null )
+            {
+                accessor = new Integer( "extension".equals( expression.trim() ) ? EXTENSION : REFLECTION );
+            }
+            kinds.add( accessor );
+            texts.add( expression );
+
+            start = end + 1;
+        }
+        addLiteral( kinds, texts, mapping.substring( start ) );
+
+        int[] kindArray = new int[kinds.size()];
+        for ( int i = 0; i < kindArray.length; i++ )
+        {
+            kindArray[i] = ( (Integer) kinds.get( i ) ).intValue();
+        }
+
+        return new FileNameMapping( mapping, kindArray, (String[]) texts.toArray( new String[texts.size()] ) );
+    }
+
+    private static void addLiteral( List kinds, List texts, String text )
+    {
+        if ( text.length() == 0 )
+        {
+            return;
+        }
+
+        int last = kinds.size() - 1;
+        if ( last >= 0 && ( (Integer) kinds.get( last ) ).intValue() == LITERAL )
+        {
+            texts.set( last, texts.get( last ) + text );
+        }
+        else
+        {
+            kinds.add( new Integer( LITERAL ) );
+            texts.add( text );
+        }
+    }
+
+    /**
+     * @param artifact
+     * @return the file name of the artifact
+     * @throws Exception if an expression cannot be evaluated
+     */
+    public String evaluate( Artifact artifact )
+        throws Exception
+    {
+        if ( kinds.length == 1 && kinds[0] == LITERAL )
+        {
+            return texts[0];
+        }
+
+        StringBuffer value = new StringBuffer( mapping.length() + 32 );
+        for ( int i = 0; i < kinds.length; i++ )
+        {
+            if ( kinds[i] == LITERAL )
+            {
+                value.append( texts[i] );
+                continue;
+            }
+
+            Object part = getValue( kinds[i], texts[i], artifact );
+            if ( part == null )
+            {
+                if ( kinds[i] == EXTENSION )
+                {
+                    part = artifact.getArtifactHandler().getExtension();
+                }
+                else
+                {
+                    part = "${" + texts[i] + "}";
+                }
+            }
+            value.append( part );
+        }
+        return value.toString();
+    }
+
+    private static Object getValue( int kind, String expression, Artifact artifact )
+        throws Exception
+    {
+        switch ( kind )
+        {
+            case GROUP_ID:
+                return artifact.getGroupId();
+            case ARTIFACT_ID:
+                return artifact.getArtifactId();
+            case VERSION:
+                return artifact.getVersion();
+            case BASE_VERSION:
+                return artifact.getBaseVersion();
+            case CLASSIFIER:
+                return artifact.getClassifier();
+            case TYPE:
+                return artifact.getType();
+            case SCOPE:
+                return artifact.getScope();
+            case EXTENSION:
+                // artifacts have no extension property, so only the handler fallback applies
+                return null;
+            default:
+                return ReflectionValueExtractor.evaluate( expression, artifact, false );
+        }
+    }
+
+    public String toString()
+    {
+        return mapping;
+    }
+}
@@ -0,0 +1,224 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.assembly.interpolation.ReflectionProperties;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Replaces <code>${token}</code> expressions in filtered files. The filter properties are merged once,
+ * and a file is interpolated in a single pass: a token is looked up in the filter properties first and
+ * then in the project model. Unknown tokens are kept. The value of a filter property may refer to other
+ * filter properties and to the project model; the two stacked interpolating readers used before only
+ * resolved references to the project model there, and kept references to other filters as they were.
+ * A reference back to a property that is being resolved is kept as well.
+ *
+ * @version $Id$
+ */
+public class FilterInterpolator
+{
+    private static final String BEGIN_TOKEN = "${";
+
+    private static final String END_TOKEN = "}";
+
+    private static final Object MISSING = new Object();
+
+    private final Map properties;
+
+    private final ReflectionProperties projectProperties;
+
+    private final ReflectionProperties escapedProjectProperties;
+
+    private final Map projectValues = new HashMap();
+
+    private final Map escapedProjectValues = new HashMap();
+
+    private final String lineSeparator;
+
+    private final String encoding;
+
+    /**
+     * @param properties the merged filter properties
+     * @param project the project whose model resolves the remaining tokens
+     * @param lineSeparator the line ending of the filtered files
+     * @param encoding the encoding of the files to filter, which the filtered contents keep
+     */
+    public FilterInterpolator( Map properties, MavenProject project, String lineSeparator, String encoding )
+    {
+        this.properties = new HashMap( properties );
+        this.projectProperties = new ReflectionProperties( project, false );
+        this.escapedProjectProperties = new ReflectionProperties( project, true );
+        this.lineSeparator = lineSeparator;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Filters a file into a staging store, the way files of a file set or files with <code>filtered</code>
+     * set are filtered. Windows paths taken from the project model are escaped in properties files.
+     *
+     * @param source the file to filter
+     * @param lineEnding the line endings to give the filtered contents, or null to keep them
+     * @param store the store to keep the filtered contents in
+     * @return the filtered contents
+     * @throws IOException
+     */
+    public StagingStore.Content filter( File source, String lineEnding, StagingStore store )
+        throws IOException
+    {
+        boolean propertiesFile = source.isFile() && source.getName().endsWith( ".properties" );
+
+        byte[] filtered = filter( source, propertiesFile );
+
+        if ( lineEnding != null )
+        {
+            // converted in memory, so the store accounts for the converted length
+            filtered =
+                IOUtil.toByteArray( new LineEndingInputStream( new ByteArrayInputStream( filtered ), lineEnding ) );
+        }
+        return store.stage( filtered, source.getName() );
+    }
+
+    /**
+     * Interpolates the contents of a file in memory. Every line of the result ends with the line separator,
+     * and the result has the encoding of the file.
+     *
+     * @param source
+     * @param propertiesFile if true, windows paths taken from the project model are escaped
+     * @return the filtered contents
+     * @throws IOException
+     */
+    public byte[] filter( File source, boolean propertiesFile )
+        throws IOException
+    {
+        String text;
+        Reader reader = new InputStreamReader( new FileInputStream( source ), encoding );
+        try
+        {
+            text = IOUtil.toString( reader );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+
+        StringWriter writer = new StringWriter( text.length() + 64 );
+        writeLines( interpolate( text, propertiesFile ), writer );
+        return writer.toString().getBytes( encoding );
+    }
+
+    /**
+     * @param text
+     * @param propertiesFile if true, windows paths taken from the project model are escaped
+     * @return the text with every known token replaced
+     */
+    public String interpolate( String text, boolean propertiesFile )
+    {
+        return interpolate( text, propertiesFile, new HashSet() );
+    }
+
+    /**
+     * @param resolving the filter properties whose values are being interpolated
+     */
+    private String interpolate( String text, boolean propertiesFile, Set resolving )
+    {
+        if ( text.indexOf( BEGIN_TOKEN ) == -1 )
+        {
+            return text;
+        }
+
+        StringBuffer result = new StringBuffer( text.length() + 64 );
+
+        int start = 0;
+        int begin;
+        while ( ( begin = text.indexOf( BEGIN_TOKEN, start ) ) != -1 )
+        {
+            int end = text.indexOf( END_TOKEN, begin + BEGIN_TOKEN.length() );
+            if ( end == -1 )
+            {
+                break;
+            }
+
+            result.append( text, start, begin );
+
+            String token = text.substring( begin, end + END_TOKEN.length() );
+            String key = text.substring( begin + BEGIN_TOKEN.length(), end );
+            Object value = properties.get( key );
+            if ( value == null )
+            {
+                value = getProjectValue( key, propertiesFile );
+                result.append( value == null ? token : value );
+            }
+            else if ( resolving.add( key ) )
+            {
+                result.append( interpolate( value.toString(), propertiesFile, resolving ) );
+                resolving.remove( key );
+            }
+            else
+            {
+                // refers back to a property that is being resolved
+                result.append( token );
+            }
+
+            start = end + END_TOKEN.length();
+        }
+
+        result.append( text, start, text.length() );
+
+        return result.toString();
+    }
+
+    private Object getProjectValue( String key, boolean propertiesFile )
+    {
+        Map cache = propertiesFile ? escapedProjectValues : projectValues;
+
+        synchronized ( cache )
+        {
+            Object value = cache.get( key );
+            if ( value == null )
+            {
+                value = ( propertiesFile ? escapedProjectProperties : projectProperties ).get( key );
+                cache.put( key, value == null ? MISSING : value );
+            }
+            return value == MISSING ? null : value;
+        }
+    }
+
+    private void writeLines( String text, Writer writer )
+        throws IOException
+    {
+        int start = 0;
+        int length = text.length();
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = text.charAt( i );
+            if ( c == '\n' || c == '\r' )
+            {
+                writer.write( text, start, i - start );
+                writer.write( lineSeparator );
+                if ( c == '\r' && i + 1 < length && text.charAt( i + 1 ) == '\n' )
+                {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+
+        if ( start < length )
+        {
+            writer.write( text, start, length - start );
+            writer.write( lineSeparator );
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that writes its input as a series of complete gzip members, in the manner of BGZF,
+ * so that reading can start at any member. Members are compressed on several threads. A member ends at
+ * the maximum block size, or at the first boundary marked with {@link #markBoundary(long)} once it holds
+ * at least the minimum member size; for a tar archive the boundaries are the entry headers. Concatenated
+ * members are a standard gzip file that any gunzip reads as a whole.
+ * <p/>
+ * Once the stream is closed, {@link #getPosition(long)} maps an offset of the input to the member it is in.
+ *
+ * @version $Id$
+ */
+public class IndexedGZIPOutputStream
+    extends ParallelBlockOutputStream
+{
+    public static final int DEFAULT_MEMBER_SIZE = 64 * 1024;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final int level;
+
+    private final int memberSize;
+
+    /**
+     * Marked offsets the input has not reached yet, in increasing order.
+     */
+    private final LinkedList boundaries = new LinkedList();
+
+    /**
+     * The input offset each member starts at, in order.
+     */
+    private final List memberStarts = new ArrayList();
+
+    /**
+     * The offset in the compressed output each member starts at, in order.
+     */
+    private final List memberOffsets = new ArrayList();
+
+    private long totalIn;
+
+    private long totalOut;
+
+    private long blockStart;
+
+    /**
+     * @param out the stream to write the gzip members to
+     * @param threads number of compression threads, 0 or less for one per available processor
+     * @param blockSize the maximum uncompressed size of a member, 0 or less for the default
+     * @param memberSize the size a member must reach before it ends at a boundary, 0 or less for the default
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public IndexedGZIPOutputStream( OutputStream out, int threads, int blockSize, int memberSize, int level )
+    {
+        this( out, null, threads, blockSize, memberSize, level );
+    }
+
+    /**
+     * @param out the stream to write the gzip members to
+     * @param executor the executor shared by the compressing streams, or null for threads of this stream's own
+     * @param threads number of members compressed at the same time, 0 or less for one per available processor
+     * @param blockSize the maximum uncompressed size of a member, 0 or less for the default
+     * @param memberSize the size a member must reach before it ends at a boundary, 0 or less for the default
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public IndexedGZIPOutputStream( OutputStream out, ExecutorService executor, int threads, int blockSize,
+                                    int memberSize, int level )
+    {
+        super( out, executor, threads, blockSize > 0 ? blockSize : ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE,
+               "tgz-bgzf" );
+
+        this.level = level;
+        this.memberSize = memberSize > 0 ? memberSize : DEFAULT_MEMBER_SIZE;
+    }
+
+    /**
+     * Marks an offset of the input where a new member may start. Offsets must be marked in increasing order
+     * and before the input reaches them.
+     *
+     * @param offset
+     * @throws IOException
+     */
+    public void markBoundary( long offset )
+        throws IOException
+    {
+        if ( offset == totalIn )
+        {
+            reachBoundary();
+        }
+        else if ( offset > totalIn )
+        {
+            boundaries.add( new Long( offset ) );
+        }
+    }
+
+    /**
+     * @param offset an offset of the input
+     * @return the offset in the compressed output of the member holding the input offset, and the number of
+     *         uncompressed bytes of that member before it
+     */
+    public long[] getPosition( long offset )
+    {
+        int low = 0;
+        int high = memberStarts.size() - 1;
+        while ( low < high )
+        {
+            int middle = ( low + high + 1 ) / 2;
+            if ( ( (Long) memberStarts.get( middle ) ).longValue() <= offset )
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        long start = ( (Long) memberStarts.get( low ) ).longValue();
+        return new long[] { ( (Long) memberOffsets.get( low ) ).longValue(), offset - start };
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[] { (byte) b }, 0, 1 );
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        int offset = off;
+        int remaining = len;
+        while ( remaining > 0 )
+        {
+            int count = remaining;
+            if ( !boundaries.isEmpty() )
+            {
+                long next = ( (Long) boundaries.getFirst() ).longValue();
+                count = (int) Math.min( count, next - totalIn );
+            }
+
+            super.write( b, offset, count );
+            totalIn += count;
+            offset += count;
+            remaining -= count;
+
+            if ( !boundaries.isEmpty() && ( (Long) boundaries.getFirst() ).longValue() == totalIn )
+            {
+                boundaries.removeFirst();
+                reachBoundary();
+            }
+        }
+    }
+
+    private void reachBoundary()
+        throws IOException
+    {
+        if ( totalIn - blockStart >= memberSize )
+        {
+            endBlock();
+        }
+    }
+
+    protected Callable createTask( final byte[] data, final int length, boolean last )
+    {
+        if ( last && length == 0 && !memberStarts.isEmpty() )
+        {
+            // nothing left for the final block; an empty member would only waste space
+            return new Callable()
+            {
+                public Object call()
+                {
+                    return new byte[0];
+                }
+            };
+        }
+
+        memberStarts.add( new Long( blockStart ) );
+        blockStart += length;
+
+        return new Callable()
+        {
+            public Object call()
+            {
+                return compressMember( data, length, level );
+            }
+        };
+    }
+
+    protected void blockWritten( int length )
+    {
+        if ( length > 0 )
+        {
+            memberOffsets.add( new Long( totalOut ) );
+            totalOut += length;
+        }
+    }
+
+    static byte[] compressMember( byte[] data, int length, int level )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( data, 0, length );
+
+        byte[] deflated = ParallelGZIPOutputStream.deflate( data, length, null, true, level );
+
+        ByteArrayOutputStream member = new ByteArrayOutputStream( HEADER.length + deflated.length + 8 );
+        member.write( HEADER, 0, HEADER.length );
+        member.write( deflated, 0, deflated.length );
+        writeInt( member, (int) crc.getValue() );
+        writeInt( member, length );
+        return member.toByteArray();
+    }
+
+    private static void writeInt( ByteArrayOutputStream out, int value )
+    {
+        out.write( value & 0xff );
+        out.write( ( value >> 8 ) & 0xff );
+        out.write( ( value >> 16 ) & 0xff );
+        out.write( ( value >> 24 ) & 0xff );
+    }
+}
@@ -0,0 +1,49 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses tar archives with an {@link IndexedGZIPOutputStream}, so that a {@link TarGzIndex} of the
+ * archive can be written.
+ *
+ * @version $Id$
+ */
+public class IndexedGzipCompressor
+    implements TarCompressor
+{
+    private final int threads;
+
+    private final int blockSize;
+
+    private final int memberSize;
+
+    private final ExecutorService executor;
+
+    public IndexedGzipCompressor( int threads, int blockSize, int memberSize )
+    {
+        this( threads, blockSize, memberSize, null );
+    }
+
+    /**
+     * @param threads number of members of an archive compressed at the same time
+     * @param blockSize the maximum uncompressed size of a member
+     * @param memberSize the size a member must reach before it ends at an entry
+     * @param executor the executor shared by the compressing streams, or null for threads of each stream's own
+     */
+    public IndexedGzipCompressor( int threads, int blockSize, int memberSize, ExecutorService executor )
+    {
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.memberSize = memberSize;
+        this.executor = executor;
+    }
+
+    public OutputStream compress( OutputStream out )
+        throws IOException
+    {
+        return new IndexedGZIPOutputStream( out, executor, threads, blockSize, memberSize, Deflater.DEFAULT_COMPRESSION );
+    }
+}
@@ -0,0 +1,262 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Extracts single entries of a tgz archive that has a {@link TarGzIndex}, by seeking to the gzip member
+ * holding the entry and inflating only from there on.
+ *
+ * @version $Id$
+ */
+public class IndexedTarGzReader
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int RECORD_SIZE = 512;
+
+    private static final int NAME_LENGTH = 100;
+
+    private static final int SIZE_OFFSET = 124;
+
+    private static final int SIZE_LENGTH = 12;
+
+    private static final int TYPE_OFFSET = 156;
+
+    private static final int LINK_OFFSET = 157;
+
+    private static final byte TYPE_LINK = '1';
+
+    private static final byte TYPE_DIRECTORY = '5';
+
+    private static final byte TYPE_GNU_LONG_NAME = 'L';
+
+    private final File archive;
+
+    private final TarGzIndex index;
+
+    /**
+     * @param archive an archive with an index next to it
+     * @throws IOException if the index cannot be read
+     */
+    public IndexedTarGzReader( File archive )
+        throws IOException
+    {
+        this.archive = archive;
+        this.index = TarGzIndex.read( TarGzIndex.getIndexFile( archive ) );
+    }
+
+    /**
+     * @param archive
+     * @return true if the archive has an index to read it with
+     */
+    public static boolean isIndexed( File archive )
+    {
+        return TarGzIndex.getIndexFile( archive ).isFile();
+    }
+
+    /**
+     * @return the paths of the entries, in archive order; directories end with '/'
+     */
+    public List getPaths()
+    {
+        return index.getPaths();
+    }
+
+    /**
+     * Writes the contents of a file entry to a file.
+     *
+     * @param path
+     * @param dest
+     * @return false if the archive has no file with that path
+     * @throws IOException
+     */
+    public boolean extract( String path, File dest )
+        throws IOException
+    {
+        if ( index.getPosition( path ) == null )
+        {
+            return false;
+        }
+
+        if ( dest.getParentFile() != null )
+        {
+            dest.getParentFile().mkdirs();
+        }
+
+        OutputStream out = new FileOutputStream( dest );
+        try
+        {
+            return extract( path, out );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * Writes the contents of a file entry to a stream. Hard links are followed to the entry they link to.
+     *
+     * @param path
+     * @param out
+     * @return false if the archive has no file with that path
+     * @throws IOException if the archive cannot be read or does not match its index
+     */
+    public boolean extract( String path, OutputStream out )
+        throws IOException
+    {
+        long[] position = index.getPosition( path );
+        if ( position == null )
+        {
+            return false;
+        }
+
+        FileInputStream file = new FileInputStream( archive );
+        InputStream in = file;
+        try
+        {
+            file.getChannel().position( position[0] );
+            in = new GZIPInputStream( new BufferedInputStream( file, BUFFER_SIZE ), BUFFER_SIZE );
+            skipFully( in, position[1] );
+
+            byte[] header = new byte[RECORD_SIZE];
+            readFully( in, header, header.length );
+
+            String name;
+            if ( header[TYPE_OFFSET] == TYPE_GNU_LONG_NAME )
+            {
+                int length = (int) parseOctal( header, SIZE_OFFSET, SIZE_LENGTH );
+                byte[] longName = new byte[( length + RECORD_SIZE - 1 ) / RECORD_SIZE * RECORD_SIZE];
+                readFully( in, longName, longName.length );
+                name = parseString( longName, 0, length, false );
+
+                readFully( in, header, header.length );
+            }
+            else
+            {
+                name = parseString( header, 0, NAME_LENGTH, true );
+            }
+
+            // names longer than the header are cut off when the archive was written with long names truncated
+            if ( !name.equals( path ) && !( name.length() == NAME_LENGTH && path.startsWith( name ) ) )
+            {
+                throw new IOException( "The index of " + archive + " does not match the archive: expected " + path
+                    + " but found " + name );
+            }
+
+            if ( header[TYPE_OFFSET] == TYPE_DIRECTORY )
+            {
+                return false;
+            }
+            if ( header[TYPE_OFFSET] == TYPE_LINK )
+            {
+                return extract( parseString( header, LINK_OFFSET, NAME_LENGTH, true ), out );
+            }
+
+            long remaining = parseOctal( header, SIZE_OFFSET, SIZE_LENGTH );
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while ( remaining > 0 )
+            {
+                int count = in.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+                if ( count == -1 )
+                {
+                    throw new EOFException( "Unexpected end of " + archive + " in " + path );
+                }
+                out.write( buffer, 0, count );
+                remaining -= count;
+            }
+            return true;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    private static void skipFully( InputStream in, long count )
+        throws IOException
+    {
+        byte[] buffer = new byte[(int) Math.min( BUFFER_SIZE, Math.max( count, 1 ) )];
+        long remaining = count;
+        while ( remaining > 0 )
+        {
+            int read = in.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+            if ( read == -1 )
+            {
+                throw new EOFException( "Unexpected end of archive" );
+            }
+            remaining -= read;
+        }
+    }
+
+    private static void readFully( InputStream in, byte[] buffer, int length )
+        throws IOException
+    {
+        int offset = 0;
+        while ( offset < length )
+        {
+            int count = in.read( buffer, offset, length - offset );
+            if ( count == -1 )
+            {
+                throw new EOFException( "Unexpected end of archive" );
+            }
+            offset += count;
+        }
+    }
+
+    /**
+     * Header fields are written one byte per character; GNU long name records are encoded as the archiver
+     * encodes them.
+     */
+    private static String parseString( byte[] buffer, int offset, int length, boolean header )
+        throws UnsupportedEncodingException
+    {
+        int end = offset;
+        while ( end < offset + length && buffer[end] != 0 )
+        {
+            end++;
+        }
+
+        if ( !header )
+        {
+            return new String( buffer, offset, end - offset, StreamingTarArchiver.LONG_NAME_ENCODING );
+        }
+
+        StringBuffer value = new StringBuffer( end - offset );
+        for ( int i = offset; i < end; i++ )
+        {
+            value.append( (char) ( buffer[i] & 0xff ) );
+        }
+        return value.toString();
+    }
+
+    private static long parseOctal( byte[] buffer, int offset, int length )
+    {
+        long value = 0;
+        for ( int i = offset; i < offset + length; i++ )
+        {
+            byte b = buffer[i];
+            if ( b == 0 )
+            {
+                break;
+            }
+            if ( b >= '0' && b <= '7' )
+            {
+                value = ( value << 3 ) + ( b - '0' );
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,210 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * An input stream that replaces every line ending of the underlying stream ("\r\n", "\r" or "\n") with
+ * the given characters, and terminates a last line that has no line ending. This is the same result as
+ * copying the file line by line, but it works on bytes, so no charset is involved and any ASCII compatible
+ * encoding such as UTF-8 passes through unchanged.
+ *
+ * @version $Id$
+ */
+public class LineEndingInputStream
+    extends FilterInputStream
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] lineEnding;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final byte[] single = new byte[1];
+
+    private int position;
+
+    private int limit;
+
+    private int pendingLineEnding;
+
+    private boolean lastWasCarriageReturn;
+
+    private boolean atLineStart = true;
+
+    private boolean eof;
+
+    /**
+     * @param in the stream to convert
+     * @param lineEnding the characters to end each line with, such as "\n" or "\r\n"
+     */
+    public LineEndingInputStream( InputStream in, String lineEnding )
+    {
+        super( in );
+
+        this.lineEnding = new byte[lineEnding.length()];
+        for ( int i = 0; i < this.lineEnding.length; i++ )
+        {
+            this.lineEnding[i] = (byte) lineEnding.charAt( i );
+        }
+        this.pendingLineEnding = this.lineEnding.length;
+    }
+
+    /**
+     * Reads a file through the conversion without keeping the result, which is needed when the size has
+     * to be known before the contents are written, as in a tar header.
+     *
+     * @param file
+     * @param lineEnding
+     * @return the number of bytes the converted file is made of
+     * @throws IOException
+     */
+    public static long getConvertedLength( File file, String lineEnding )
+        throws IOException
+    {
+        InputStream in = new LineEndingInputStream( new FileInputStream( file ), lineEnding );
+        try
+        {
+            byte[] discard = new byte[BUFFER_SIZE];
+            long length = 0;
+            int count;
+            while ( ( count = in.read( discard ) ) != -1 )
+            {
+                length += count;
+            }
+            return length;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    public int read()
+        throws IOException
+    {
+        return read( single, 0, 1 ) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        int count = 0;
+        while ( count < len )
+        {
+            if ( pendingLineEnding < lineEnding.length )
+            {
+                b[off + count++] = lineEnding[pendingLineEnding++];
+                continue;
+            }
+
+            if ( position == limit )
+            {
+                if ( eof || ( count > 0 && in.available() <= 0 ) )
+                {
+                    break;
+                }
+
+                limit = in.read( buffer );
+                position = 0;
+                if ( limit == -1 )
+                {
+                    limit = 0;
+                    eof = true;
+                    if ( !atLineStart )
+                    {
+                        startLineEnding();
+                    }
+                }
+                continue;
+            }
+
+            byte c = buffer[position++];
+            if ( c == '\n' )
+            {
+                if ( lastWasCarriageReturn )
+                {
+                    lastWasCarriageReturn = false;
+                }
+                else
+                {
+                    startLineEnding();
+                }
+            }
+            else if ( c == '\r' )
+            {
+                lastWasCarriageReturn = true;
+                startLineEnding();
+            }
+            else
+            {
+                lastWasCarriageReturn = false;
+                atLineStart = false;
+                b[off + count++] = c;
+            }
+        }
+
+        return count == 0 && eof ? -1 : count;
+    }
+
+    public long skip( long n )
+        throws IOException
+    {
+        if ( n <= 0 )
+        {
+            return 0;
+        }
+
+        byte[] discard = new byte[(int) Math.min( n, BUFFER_SIZE )];
+        long skipped = 0;
+        while ( skipped < n )
+        {
+            int count = read( discard, 0, (int) Math.min( n - skipped, discard.length ) );
+            if ( count == -1 )
+            {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    public int available()
+        throws IOException
+    {
+        // buffered input may still shrink when "\r\n" is converted, so only count what is certain
+        return lineEnding.length - pendingLineEnding;
+    }
+
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    public synchronized void mark( int readlimit )
+    {
+        // not supported
+    }
+
+    public synchronized void reset()
+        throws IOException
+    {
+        throw new IOException( "mark/reset not supported" );
+    }
+
+    private void startLineEnding()
+    {
+        pendingLineEnding = 0;
+        atLineStart = true;
+    }
+}
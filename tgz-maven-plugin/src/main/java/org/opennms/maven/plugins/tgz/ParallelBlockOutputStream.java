@@ -0,0 +1,271 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An output stream that cuts its input into fixed size blocks and compresses them on several threads. The
+ * compressed blocks are written to the underlying stream in input order, so subclasses only decide how a
+ * single block is compressed and what goes before and after the blocks. At most two blocks per thread are
+ * kept in memory. Blocks are compressed either on threads of the stream's own or on an executor shared
+ * with other streams, which bounds the compression threads of all of them together.
+ *
+ * @version $Id$
+ */
+public abstract class ParallelBlockOutputStream
+    extends FilterOutputStream
+{
+    private final int blockSize;
+
+    private final int maxPending;
+
+    private final ExecutorService executor;
+
+    private final boolean sharedExecutor;
+
+    private final LinkedList pending = new LinkedList();
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private boolean closed;
+
+    /**
+     * @param out the stream to write the compressed data to
+     * @param threads number of compression threads, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks
+     * @param threadName prefix of the names of the compression threads
+     */
+    protected ParallelBlockOutputStream( OutputStream out, int threads, int blockSize, String threadName )
+    {
+        this( out, null, threads, blockSize, threadName );
+    }
+
+    /**
+     * @param out the stream to write the compressed data to
+     * @param executor the executor to compress the blocks on, which is left running when the stream is
+     *                 closed; null to create one for this stream
+     * @param threads number of blocks compressed at the same time, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks
+     * @param threadName prefix of the names of the compression threads, when the stream creates its own
+     */
+    protected ParallelBlockOutputStream( OutputStream out, ExecutorService executor, int threads, int blockSize,
+                                         String threadName )
+    {
+        super( out );
+
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        this.blockSize = blockSize;
+        this.maxPending = threadCount * 2;
+        this.sharedExecutor = executor != null;
+        this.executor = executor != null ? executor : newExecutor( threadCount, threadName );
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Creates an executor for compression tasks, which can be shared by several streams.
+     *
+     * @param threads number of threads, 0 or less for one per available processor
+     * @param threadName prefix of the names of the threads
+     * @return an executor of daemon threads
+     */
+    public static ExecutorService newExecutor( int threads, final String threadName )
+    {
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        return Executors.newFixedThreadPool( threadCount, new ThreadFactory()
+        {
+            private int count;
+
+            public synchronized Thread newThread( Runnable r )
+            {
+                Thread thread = new Thread( r, threadName + "-" + ( ++count ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Creates the task that compresses a block. It is called on the writing thread, in input order.
+     *
+     * @param data the block, which is not touched again by this stream
+     * @param length the number of bytes used in the block
+     * @param last true for the final block, which may be empty
+     * @return a task returning the compressed block as a byte array
+     */
+    protected abstract Callable createTask( byte[] data, int length, boolean last );
+
+    /**
+     * Writes whatever has to follow the last block, such as a trailer. The default writes nothing.
+     *
+     * @throws IOException
+     */
+    protected void finish()
+        throws IOException
+    {
+    }
+
+    /**
+     * Called on the writing thread after each compressed block has been written, in input order. The
+     * default does nothing.
+     *
+     * @param length the compressed length of the block
+     */
+    protected void blockWritten( int length )
+    {
+    }
+
+    /**
+     * Ends the current block early, so the next byte written starts a new one. Does nothing if the current
+     * block is empty.
+     *
+     * @throws IOException
+     */
+    protected void endBlock()
+        throws IOException
+    {
+        if ( blockLength > 0 )
+        {
+            submitBlock( false );
+        }
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+
+        block[blockLength++] = (byte) b;
+        if ( blockLength == blockSize )
+        {
+            submitBlock( false );
+        }
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+
+        int offset = off;
+        int remaining = len;
+        while ( remaining > 0 )
+        {
+            int count = Math.min( remaining, blockSize - blockLength );
+            System.arraycopy( b, offset, block, blockLength, count );
+            blockLength += count;
+            offset += count;
+            remaining -= count;
+
+            if ( blockLength == blockSize )
+            {
+                submitBlock( false );
+            }
+        }
+    }
+
+    /**
+     * Only flushes the blocks that are already compressed; a partially filled block is kept so that
+     * flushing does not hurt the compression ratio.
+     */
+    public void flush()
+        throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining input, writes the trailer and closes the underlying stream.
+     */
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            submitBlock( true );
+
+            while ( !pending.isEmpty() )
+            {
+                writeBlock( (Future) pending.removeFirst() );
+            }
+
+            finish();
+            out.flush();
+        }
+        finally
+        {
+            if ( sharedExecutor )
+            {
+                // blocks of this stream still queued after a failure must not hold up the other streams
+                while ( !pending.isEmpty() )
+                {
+                    ( (Future) pending.removeFirst() ).cancel( false );
+                }
+            }
+            else
+            {
+                executor.shutdownNow();
+            }
+            out.close();
+        }
+    }
+
+    private void submitBlock( boolean last )
+        throws IOException
+    {
+        pending.add( executor.submit( createTask( block, blockLength, last ) ) );
+
+        block = last ? null : new byte[blockSize];
+        blockLength = 0;
+
+        while ( pending.size() > maxPending )
+        {
+            writeBlock( (Future) pending.removeFirst() );
+        }
+    }
+
+    private void writeBlock( Future future )
+        throws IOException
+    {
+        try
+        {
+            byte[] compressed = (byte[]) future.get();
+            out.write( compressed );
+            blockWritten( compressed.length );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while compressing" );
+        }
+        catch ( ExecutionException e )
+        {
+            IOException ioe = new IOException( "Error compressing block: " + e.getCause() );
+            ioe.initCause( e.getCause() );
+            throw ioe;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses fixed size blocks of its input on several threads, in the manner
+ * of pigz. Each block is deflated independently, primed with the last 32k of the input before it, and ends
+ * on a byte boundary with a sync flush, so the compressed blocks can simply be concatenated. The result is
+ * a single standard gzip member that any gunzip can read.
+ *
+ * @version $Id$
+ */
+public class ParallelGZIPOutputStream
+    extends ParallelBlockOutputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final int level;
+
+    private final CRC32 crc = new CRC32();
+
+    private long totalIn;
+
+    private byte[] dictionary;
+
+    /**
+     * @param out the stream to write the gzip data to
+     * @param threads number of compression threads, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks, 0 or less for the default
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IOException if the gzip header cannot be written
+     */
+    public ParallelGZIPOutputStream( OutputStream out, int threads, int blockSize, int level )
+        throws IOException
+    {
+        this( out, null, threads, blockSize, level );
+    }
+
+    /**
+     * @param out the stream to write the gzip data to
+     * @param executor the executor shared by the compressing streams, or null for threads of this stream's own
+     * @param threads number of blocks compressed at the same time, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks, 0 or less for the default
+     * @param level the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IOException if the gzip header cannot be written
+     */
+    public ParallelGZIPOutputStream( OutputStream out, ExecutorService executor, int threads, int blockSize,
+                                     int level )
+        throws IOException
+    {
+        super( out, executor, threads, blockSize > 0 ? Math.max( blockSize, DICTIONARY_SIZE ) : DEFAULT_BLOCK_SIZE,
+               "tgz-gzip" );
+
+        this.level = level;
+
+        out.write( HEADER );
+    }
+
+    public ParallelGZIPOutputStream( OutputStream out, int threads )
+        throws IOException
+    {
+        this( out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION );
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        super.write( b );
+
+        crc.update( b );
+        totalIn++;
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        super.write( b, off, len );
+
+        crc.update( b, off, len );
+        totalIn += len;
+    }
+
+    protected Callable createTask( final byte[] data, final int length, final boolean last )
+    {
+        final byte[] dict = dictionary;
+
+        dictionary = getDictionary( dict, data, length );
+
+        return new Callable()
+        {
+            public Object call()
+            {
+                return deflate( data, length, dict, last, level );
+            }
+        };
+    }
+
+    /**
+     * @param previous the dictionary the block was primed with, or null
+     * @param data the block
+     * @param length the number of bytes used in the block
+     * @return the last 32k of the input up to the end of the block, which may reach back into the blocks
+     *         before it when the block is shorter than that
+     */
+    static byte[] getDictionary( byte[] previous, byte[] data, int length )
+    {
+        if ( length == 0 )
+        {
+            return previous;
+        }
+
+        int copied = Math.min( length, DICTIONARY_SIZE );
+        int kept = previous == null ? 0 : Math.min( previous.length, DICTIONARY_SIZE - copied );
+
+        byte[] dictionary = new byte[kept + copied];
+        if ( kept > 0 )
+        {
+            System.arraycopy( previous, previous.length - kept, dictionary, 0, kept );
+        }
+        System.arraycopy( data, length - copied, dictionary, kept, copied );
+        return dictionary;
+    }
+
+    /**
+     * Writes the gzip trailer.
+     */
+    protected void finish()
+        throws IOException
+    {
+        writeInt( (int) crc.getValue() );
+        writeInt( (int) totalIn );
+    }
+
+    private void writeInt( int value )
+        throws IOException
+    {
+        out.write( value & 0xff );
+        out.write( ( value >> 8 ) & 0xff );
+        out.write( ( value >> 16 ) & 0xff );
+        out.write( ( value >> 24 ) & 0xff );
+    }
+
+    static byte[] deflate( byte[] data, int length, byte[] dictionary, boolean last, int level )
+    {
+        Deflater deflater = new Deflater( level, true );
+        try
+        {
+            if ( dictionary != null )
+            {
+                deflater.setDictionary( dictionary );
+            }
+            deflater.setInput( data, 0, length );
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream( length / 2 + 64 );
+            byte[] buffer = new byte[64 * 1024];
+
+            if ( last )
+            {
+                deflater.finish();
+                while ( !deflater.finished() )
+                {
+                    int count = deflater.deflate( buffer );
+                    compressed.write( buffer, 0, count );
+                }
+            }
+            else
+            {
+                int count;
+                do
+                {
+                    count = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+                    compressed.write( buffer, 0, count );
+                }
+                while ( count == buffer.length );
+            }
+
+            return compressed.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses tar archives with a {@link ParallelGZIPOutputStream}.
+ *
+ * @version $Id$
+ */
+public class ParallelGzipCompressor
+    implements TarCompressor
+{
+    private final int threads;
+
+    private final int blockSize;
+
+    private final ExecutorService executor;
+
+    public ParallelGzipCompressor( int threads, int blockSize )
+    {
+        this( threads, blockSize, null );
+    }
+
+    /**
+     * @param threads number of blocks of an archive compressed at the same time
+     * @param blockSize size of the independently compressed blocks
+     * @param executor the executor shared by the compressing streams, or null for threads of each stream's own
+     */
+    public ParallelGzipCompressor( int threads, int blockSize, ExecutorService executor )
+    {
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.executor = executor;
+    }
+
+    public OutputStream compress( OutputStream out )
+        throws IOException
+    {
+        return new ParallelGZIPOutputStream( out, executor, threads, blockSize, Deflater.DEFAULT_COMPRESSION );
+    }
+}
@@ -0,0 +1,69 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * An xz output stream that compresses fixed size blocks of its input on several threads. Every block
+ * becomes a complete xz stream of its own; the xz format allows streams to be concatenated, so xz, unxz
+ * and tar read the result as a single file.
+ *
+ * @version $Id$
+ */
+public class ParallelXZOutputStream
+    extends ParallelBlockOutputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private final int preset;
+
+    /**
+     * @param out the stream to write the xz data to
+     * @param threads number of compression threads, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks, 0 or less for the default
+     * @param preset the xz preset, from 0 to 9
+     */
+    public ParallelXZOutputStream( OutputStream out, int threads, int blockSize, int preset )
+    {
+        this( out, null, threads, blockSize, preset );
+    }
+
+    /**
+     * @param out the stream to write the xz data to
+     * @param executor the executor shared by the compressing streams, or null for threads of this stream's own
+     * @param threads number of blocks compressed at the same time, 0 or less for one per available processor
+     * @param blockSize size of the independently compressed blocks, 0 or less for the default
+     * @param preset the xz preset, from 0 to 9
+     */
+    public ParallelXZOutputStream( OutputStream out, ExecutorService executor, int threads, int blockSize,
+                                   int preset )
+    {
+        super( out, executor, threads, blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE, "tgz-xz" );
+
+        this.preset = preset;
+    }
+
+    protected Callable createTask( final byte[] data, final int length, boolean last )
+    {
+        return new Callable()
+        {
+            public Object call()
+                throws IOException
+            {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream( length / 4 + 64 );
+
+                XZOutputStream xz = new XZOutputStream( compressed, new LZMA2Options( preset ) );
+                xz.write( data, 0, length );
+                xz.finish();
+
+                return compressed.toByteArray();
+            }
+        };
+    }
+}
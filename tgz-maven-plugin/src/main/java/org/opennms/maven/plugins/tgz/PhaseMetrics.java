@@ -0,0 +1,293 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Wall time, bytes read and written and entry counts of the phases of an execution, such as planning an
+ * assembly, unpacking dependencies or writing each format. Repeated phases, for instance unpacking one
+ * artifact after the other, are added up, so phases that run on several threads can report more time than
+ * the execution took.
+ *
+ * @version $Id$
+ */
+public class PhaseMetrics
+{
+    private final long started = System.currentTimeMillis();
+
+    private final Map phases = new LinkedHashMap();
+
+    /**
+     * Starts timing a phase.
+     *
+     * @param assembly the assembly id, or null for a phase of the whole execution
+     * @param format the format, or null for a phase shared by all formats
+     * @param phase the name of the phase
+     * @return the timer to stop when the phase is done
+     */
+    public Timer start( String assembly, String format, String phase )
+    {
+        return new Timer( assembly, format, phase );
+    }
+
+    /**
+     * @return the {@link Phase} objects recorded so far, in the order they were first started
+     */
+    public synchronized List getPhases()
+    {
+        return new ArrayList( phases.values() );
+    }
+
+    private synchronized void add( Timer timer, long millis, long bytesRead, long bytesWritten, long entries )
+    {
+        String key = timer.assembly + "|" + timer.format + "|" + timer.phase;
+
+        Phase phase = (Phase) phases.get( key );
+        if ( phase == null )
+        {
+            phase = new Phase( timer.assembly, timer.format, timer.phase );
+            phases.put( key, phase );
+        }
+
+        phase.count++;
+        phase.millis += millis;
+        phase.bytesRead += bytesRead;
+        phase.bytesWritten += bytesWritten;
+        phase.entries += entries;
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     *
+     * @param file
+     * @param id identifies the execution in the report, such as the project id
+     * @throws IOException
+     */
+    public void writeJson( File file, String id )
+        throws IOException
+    {
+        StringBuffer json = new StringBuffer();
+        json.append( "{\n" );
+        json.append( "  \"id\": " ).append( quote( id ) ).append( ",\n" );
+        json.append( "  \"totalMillis\": " ).append( System.currentTimeMillis() - started ).append( ",\n" );
+        json.append( "  \"phases\": [" );
+
+        for ( Iterator i = getPhases().iterator(); i.hasNext(); )
+        {
+            Phase phase = (Phase) i.next();
+            json.append( "\n    { \"phase\": " ).append( quote( phase.phase ) );
+            json.append( ", \"assembly\": " ).append( quote( phase.assembly ) );
+            json.append( ", \"format\": " ).append( quote( phase.format ) );
+            json.append( ", \"count\": " ).append( phase.count );
+            json.append( ", \"millis\": " ).append( phase.millis );
+            json.append( ", \"bytesRead\": " ).append( phase.bytesRead );
+            json.append( ", \"bytesWritten\": " ).append( phase.bytesWritten );
+            json.append( ", \"entries\": " ).append( phase.entries ).append( " }" );
+            if ( i.hasNext() )
+            {
+                json.append( ',' );
+            }
+        }
+
+        json.append( "\n  ]\n}\n" );
+
+        if ( file.getParentFile() != null )
+        {
+            file.getParentFile().mkdirs();
+        }
+
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            writer.write( json.toString() );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * @return the lines of a table summarizing every phase
+     */
+    public List getSummary()
+    {
+        List lines = new ArrayList();
+        lines.add( pad( "Phase", 22 ) + pad( "Assembly", 16 ) + pad( "Format", 10 ) + padLeft( "Time (ms)", 11 ) +
+            padLeft( "Read (kB)", 12 ) + padLeft( "Written (kB)", 14 ) + padLeft( "Entries", 9 ) );
+
+        for ( Iterator i = getPhases().iterator(); i.hasNext(); )
+        {
+            Phase phase = (Phase) i.next();
+            lines.add( pad( phase.phase, 22 ) + pad( phase.assembly == null ? "-" : phase.assembly, 16 ) +
+                pad( phase.format == null ? "-" : phase.format, 10 ) + padLeft( Long.toString( phase.millis ), 11 ) +
+                padLeft( Long.toString( phase.bytesRead / 1024 ), 12 ) +
+                padLeft( Long.toString( phase.bytesWritten / 1024 ), 14 ) +
+                padLeft( Long.toString( phase.entries ), 9 ) );
+        }
+        return lines;
+    }
+
+    private static String pad( String value, int width )
+    {
+        StringBuffer buffer = new StringBuffer( value );
+        while ( buffer.length() < width - 1 )
+        {
+            buffer.append( ' ' );
+        }
+        return buffer.append( ' ' ).toString();
+    }
+
+    private static String padLeft( String value, int width )
+    {
+        StringBuffer buffer = new StringBuffer();
+        for ( int i = value.length(); i < width; i++ )
+        {
+            buffer.append( ' ' );
+        }
+        return buffer.append( value ).toString();
+    }
+
+    private static String quote( String value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+
+        StringBuffer quoted = new StringBuffer( "\"" );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                quoted.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 )
+            {
+                String hex = Integer.toHexString( c );
+                quoted.append( "\\u" ).append( "0000".substring( hex.length() ) ).append( hex );
+            }
+            else
+            {
+                quoted.append( c );
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+
+    /**
+     * Times one run of a phase.
+     */
+    public class Timer
+    {
+        private final String assembly;
+
+        private final String format;
+
+        private final String phase;
+
+        private final long start = System.currentTimeMillis();
+
+        Timer( String assembly, String format, String phase )
+        {
+            this.assembly = assembly;
+            this.format = format;
+            this.phase = phase;
+        }
+
+        public void stop()
+        {
+            stop( 0, 0, 0 );
+        }
+
+        /**
+         * @param bytesRead
+         * @param bytesWritten
+         * @param entries the number of files, artifacts or archive entries handled
+         */
+        public void stop( long bytesRead, long bytesWritten, long entries )
+        {
+            add( this, System.currentTimeMillis() - start, bytesRead, bytesWritten, entries );
+        }
+    }
+
+    /**
+     * The totals of a phase.
+     */
+    public static class Phase
+    {
+        private final String assembly;
+
+        private final String format;
+
+        private final String phase;
+
+        private long count;
+
+        private long millis;
+
+        private long bytesRead;
+
+        private long bytesWritten;
+
+        private long entries;
+
+        Phase( String assembly, String format, String phase )
+        {
+            this.assembly = assembly;
+            this.format = format;
+            this.phase = phase;
+        }
+
+        public String getAssembly()
+        {
+            return assembly;
+        }
+
+        public String getFormat()
+        {
+            return format;
+        }
+
+        public String getPhase()
+        {
+            return phase;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getMillis()
+        {
+            return millis;
+        }
+
+        public long getBytesRead()
+        {
+            return bytesRead;
+        }
+
+        public long getBytesWritten()
+        {
+            return bytesWritten;
+        }
+
+        public long getEntries()
+        {
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * The projects of a reactor, indexed by the id of their parent and of every further ancestor, so the
+ * modules of a project are found without scanning the whole reactor for each module set.
+ *
+ * @version $Id$
+ */
+public class ReactorModuleIndex
+{
+    private final Map children = new HashMap();
+
+    private final Map descendants = new HashMap();
+
+    /**
+     * @param reactorProjects the {@link MavenProject} objects of the reactor; lookups keep their order
+     */
+    public ReactorModuleIndex( List reactorProjects )
+    {
+        for ( Iterator i = reactorProjects.iterator(); i.hasNext(); )
+        {
+            MavenProject reactorProject = (MavenProject) i.next();
+
+            MavenProject parent = reactorProject.getParent();
+            if ( parent == null )
+            {
+                continue;
+            }
+
+            add( children, parent.getId(), reactorProject );
+
+            // guard against broken parent chains that point back to a project already seen
+            Set seen = new HashSet();
+            while ( parent != null && seen.add( parent.getId() ) )
+            {
+                add( descendants, parent.getId(), reactorProject );
+                parent = parent.getParent();
+            }
+        }
+    }
+
+    private static void add( Map index, String id, MavenProject project )
+    {
+        List projects = (List) index.get( id );
+        if ( projects == null )
+        {
+            projects = new ArrayList();
+            index.put( id, projects );
+        }
+        projects.add( project );
+    }
+
+    /**
+     * @param parent
+     * @param recurse true to include the modules of modules
+     * @return the reactor projects that have the given project as parent, or as any ancestor when
+     *         recursing
+     */
+    public Set getModules( MavenProject parent, boolean recurse )
+    {
+        List projects = (List) ( recurse ? descendants : children ).get( parent.getId() );
+        if ( projects == null )
+        {
+            return Collections.EMPTY_SET;
+        }
+        return Collections.unmodifiableSet( new LinkedHashSet( projects ) );
+    }
+}
@@ -0,0 +1,228 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.tar.TarArchiver;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * An archiver that only records what is added to it. Directories are scanned when they are added, so the
+ * recorded entries can be turned into an {@link AssemblyEntryPlan} and replayed into real archivers
+ * without touching the filesystem again.
+ * <p/>
+ * As with the plexus archivers, adding a second entry with the same path replaces the first one but keeps
+ * its position.
+ *
+ * @version $Id$
+ */
+public class RecordingArchiver
+    extends TarArchiver
+{
+    private final Map entries = new LinkedHashMap();
+
+    private String lineEnding;
+
+    private DirectoryTreeCache directoryTreeCache;
+
+    /**
+     * @param directoryTreeCache the cache to scan added directories through, or null to scan the filesystem
+     *                           each time
+     */
+    public void setDirectoryTreeCache( DirectoryTreeCache directoryTreeCache )
+    {
+        this.directoryTreeCache = directoryTreeCache;
+    }
+
+    /**
+     * @param lineEnding the characters that replace the line endings of the files added from now on, or
+     *                   null to keep them
+     */
+    public void setLineEnding( String lineEnding )
+    {
+        this.lineEnding = lineEnding;
+    }
+
+    public void addDirectory( File directory )
+        throws ArchiverException
+    {
+        addDirectory( directory, "" );
+    }
+
+    public void addDirectory( File directory, String prefix )
+        throws ArchiverException
+    {
+        addDirectory( directory, prefix, null, null );
+    }
+
+    public void addDirectory( File directory, String[] includes, String[] excludes )
+        throws ArchiverException
+    {
+        addDirectory( directory, "", includes, excludes );
+    }
+
+    public void addDirectory( File directory, String prefix, String[] includes, String[] excludes )
+        throws ArchiverException
+    {
+        if ( !directory.isDirectory() )
+        {
+            throw new ArchiverException( directory.getAbsolutePath() + " isn't a directory." );
+        }
+
+        String basePrefix = prefix == null ? "" : prefix.replace( '\\', '/' );
+
+        String[] dirs;
+        String[] files;
+        if ( directoryTreeCache != null )
+        {
+            try
+            {
+                DirectoryTreeCache.Scan scan = directoryTreeCache.scan( directory, includes, excludes );
+                dirs = scan.getIncludedDirectories();
+                files = scan.getIncludedFiles();
+            }
+            catch ( IOException e )
+            {
+                throw new ArchiverException( "Error scanning " + directory + ": " + e.getMessage(), e );
+            }
+        }
+        else
+        {
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir( directory );
+            if ( includes != null && includes.length > 0 )
+            {
+                scanner.setIncludes( includes );
+            }
+            if ( excludes != null )
+            {
+                scanner.setExcludes( excludes );
+            }
+            scanner.addDefaultExcludes();
+            scanner.scan();
+
+            dirs = scanner.getIncludedDirectories();
+            files = scanner.getIncludedFiles();
+        }
+
+        for ( int i = 0; i < dirs.length; i++ )
+        {
+            String path = normalize( basePrefix + dirs[i] );
+            if ( path.length() > 0 )
+            {
+                record( new AssemblyEntryPlan.Entry( new File( directory, dirs[i] ), path, getDefaultDirectoryMode(),
+                                                     true ) );
+            }
+        }
+
+        for ( int i = 0; i < files.length; i++ )
+        {
+            record( new AssemblyEntryPlan.Entry( new File( directory, files[i] ), null,
+                                                 normalize( basePrefix + files[i] ), getDefaultFileMode(), false,
+                                                 lineEnding ) );
+        }
+    }
+
+    public void addFile( File inputFile, String destFileName )
+        throws ArchiverException
+    {
+        addFile( inputFile, destFileName, getDefaultFileMode() );
+    }
+
+    public void addFile( File inputFile, String destFileName, int permissions )
+        throws ArchiverException
+    {
+        if ( !inputFile.isFile() )
+        {
+            throw new ArchiverException( inputFile.getAbsolutePath() + " isn't a file." );
+        }
+
+        record( new AssemblyEntryPlan.Entry( inputFile, null, normalize( destFileName ), permissions, false,
+                                             lineEnding ) );
+    }
+
+    /**
+     * Adds a file whose contents were transformed into a {@link StagingStore}. The line ending set on this
+     * archiver is not applied to it.
+     *
+     * @param content the transformed contents
+     * @param source the file the contents were produced from
+     * @param destFileName the path inside the archive
+     * @param permissions
+     */
+    public void addStagedFile( StagingStore.Content content, File source, String destFileName, int permissions )
+    {
+        record( new AssemblyEntryPlan.Entry( source, content, normalize( destFileName ), permissions ) );
+    }
+
+    /**
+     * Adds a member of a zip file, which is read straight from the zip when the archive is written.
+     *
+     * @param archive the zip file
+     * @param entryName the name of the member inside the zip file
+     * @param destFileName the path inside the archive
+     * @param directory true if the member is a directory
+     */
+    public void addArchiveMember( File archive, String entryName, String destFileName, boolean directory )
+    {
+        int mode = directory ? getDefaultDirectoryMode() : getDefaultFileMode();
+        record( new AssemblyEntryPlan.Entry( archive, entryName, normalize( destFileName ), mode, directory ) );
+    }
+
+    /**
+     * Adds entries that have already been resolved, for instance by replaying an {@link AssemblyEntryPlan}.
+     *
+     * @param planEntries a list of {@link AssemblyEntryPlan.Entry}
+     */
+    public void addEntries( List planEntries )
+    {
+        for ( Iterator i = planEntries.iterator(); i.hasNext(); )
+        {
+            record( (AssemblyEntryPlan.Entry) i.next() );
+        }
+    }
+
+    /**
+     * @return the recorded {@link AssemblyEntryPlan.Entry} objects, in archive order
+     */
+    public List getEntries()
+    {
+        return new ArrayList( entries.values() );
+    }
+
+    public AssemblyEntryPlan toEntryPlan()
+    {
+        return new AssemblyEntryPlan( getEntries() );
+    }
+
+    public void createArchive()
+        throws ArchiverException, IOException
+    {
+        throw new ArchiverException( "This archiver only records entries and cannot write an archive." );
+    }
+
+    protected void record( AssemblyEntryPlan.Entry entry )
+    {
+        entries.put( entry.getPath(), entry );
+    }
+
+    private static String normalize( String path )
+    {
+        String value = path.replace( '\\', '/' );
+        while ( value.startsWith( "/" ) )
+        {
+            value = value.substring( 1 );
+        }
+        while ( value.endsWith( "/" ) )
+        {
+            value = value.substring( 0, value.length() - 1 );
+        }
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.zip.ZipArchiver;
+import org.codehaus.plexus.archiver.zip.ZipOutputStream;
+
+/**
+ * A zip archiver that lets a {@link CompressionPolicy} decide which files are deflated and at which level.
+ *
+ * @version $Id$
+ */
+public class SelectiveZipArchiver
+    extends ZipArchiver
+{
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+    public void setCompressionPolicy( CompressionPolicy compressionPolicy )
+    {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    protected void zipFile( ArchiveEntry entry, ZipOutputStream zOut, String vPath )
+        throws IOException, ArchiverException
+    {
+        boolean compress = isCompress();
+        try
+        {
+            setCompress( compressionPolicy.prepare( entry.getFile(), compress, zOut ) );
+            super.zipFile( entry, zOut, vPath );
+        }
+        finally
+        {
+            setCompress( compress );
+        }
+    }
+}
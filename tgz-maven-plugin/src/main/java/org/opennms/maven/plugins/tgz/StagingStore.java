@@ -0,0 +1,268 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Holds the contents of files that are transformed while an assembly is planned, such as filtered files,
+ * until the archives are written. Contents up to a size limit are kept in memory as long as the memory
+ * budget of the store allows; others are spilled to files with unique names below the directory of the
+ * store, so files with the same name never overwrite each other. The spilled files are removed by
+ * {@link #delete()}.
+ *
+ * @version $Id$
+ */
+public class StagingStore
+{
+    private final File directory;
+
+    private final long maxEntrySize;
+
+    private final long maxMemory;
+
+    private long memoryUsed;
+
+    private int fileCount;
+
+    private final List files = new ArrayList();
+
+    private File emptyDirectory;
+
+    /**
+     * @param directory where contents that are not kept in memory are written
+     * @param maxEntrySize the size up to which contents may be kept in memory
+     * @param maxMemory the total size of the contents kept in memory
+     */
+    public StagingStore( File directory, long maxEntrySize, long maxMemory )
+    {
+        this.directory = directory;
+        this.maxEntrySize = maxEntrySize;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * @param bytes the transformed contents, which must not be modified afterwards
+     * @param name the file name the contents had, used in the name of a spilled file
+     * @return the staged contents
+     * @throws IOException if the contents have to be spilled and cannot be written
+     */
+    public Content stage( byte[] bytes, String name )
+        throws IOException
+    {
+        if ( reserve( bytes.length ) )
+        {
+            return new Content( this, bytes, name );
+        }
+
+        Content content = new Content( this, null, name );
+        content.file = writeFile( bytes, name );
+        return content;
+    }
+
+    /**
+     * Stages the contents of a stream in a file of the store, for contents that archivers need as files. The
+     * stream is closed afterwards.
+     *
+     * @param in the contents
+     * @param name the file name the contents had, used in the name of the file
+     * @return the staged contents
+     * @throws IOException
+     */
+    public Content stageFile( InputStream in, String name )
+        throws IOException
+    {
+        try
+        {
+            File file = newFile( name );
+            OutputStream out = new FileOutputStream( file );
+            try
+            {
+                IOUtil.copy( in, out );
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+
+            Content content = new Content( this, null, name );
+            content.file = file;
+            return content;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * @return an empty directory below the directory of the store
+     */
+    public synchronized File getEmptyDirectory()
+    {
+        if ( emptyDirectory == null )
+        {
+            emptyDirectory = new File( directory, ( ++fileCount ) + "-empty" );
+            emptyDirectory.mkdirs();
+        }
+        return emptyDirectory;
+    }
+
+    /**
+     * @return the total size of the contents kept in memory
+     */
+    public synchronized long getMemoryUsed()
+    {
+        return memoryUsed;
+    }
+
+    /**
+     * Removes the spilled files. Contents of the store must not be used afterwards.
+     */
+    public void delete()
+    {
+        synchronized ( this )
+        {
+            for ( Iterator i = files.iterator(); i.hasNext(); )
+            {
+                ( (File) i.next() ).delete();
+            }
+            files.clear();
+
+            if ( emptyDirectory != null )
+            {
+                emptyDirectory.delete();
+                emptyDirectory = null;
+            }
+        }
+        directory.delete();
+    }
+
+    private synchronized boolean reserve( long length )
+    {
+        if ( length <= maxEntrySize && memoryUsed + length <= maxMemory )
+        {
+            memoryUsed += length;
+            return true;
+        }
+        return false;
+    }
+
+    private File newFile( String name )
+    {
+        File file;
+        synchronized ( this )
+        {
+            file = new File( directory, ( ++fileCount ) + "-" + name );
+            files.add( file );
+        }
+
+        directory.mkdirs();
+        return file;
+    }
+
+    private File writeFile( byte[] bytes, String name )
+        throws IOException
+    {
+        File file = newFile( name );
+
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( bytes );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+        return file;
+    }
+
+    /**
+     * Staged contents, held either in memory or in a spilled file.
+     */
+    public static class Content
+    {
+        private final StagingStore store;
+
+        private final byte[] bytes;
+
+        private final String name;
+
+        private File file;
+
+        private String digest;
+
+        Content( StagingStore store, byte[] bytes, String name )
+        {
+            this.store = store;
+            this.bytes = bytes;
+            this.name = name;
+        }
+
+        public long getLength()
+        {
+            return bytes != null ? bytes.length : file.length();
+        }
+
+        public InputStream openStream()
+            throws IOException
+        {
+            return bytes != null ? (InputStream) new ByteArrayInputStream( bytes ) : new FileInputStream( file );
+        }
+
+        /**
+         * @return true if the contents are kept in memory
+         */
+        public boolean isInMemory()
+        {
+            return bytes != null;
+        }
+
+        /**
+         * @return the hex encoded SHA-1 of the contents
+         * @throws IOException
+         */
+        public synchronized String getDigest()
+            throws IOException
+        {
+            if ( digest == null )
+            {
+                digest = bytes != null ? ContentDigests.toHex( ContentDigests.newDigest( "SHA-1" ).digest( bytes ) )
+                                : ContentDigests.digest( file );
+            }
+            return digest;
+        }
+
+        /**
+         * Gives the contents as a file, for archivers that can only add files. Contents kept in memory are
+         * written to a file of the store the first time.
+         *
+         * @return the file holding the contents
+         * @throws IOException
+         */
+        public synchronized File getFile()
+            throws IOException
+        {
+            if ( file == null )
+            {
+                file = store.writeFile( bytes, name );
+            }
+            return file;
+        }
+
+        public String toString()
+        {
+            return bytes != null ? name + " [" + bytes.length + " bytes in memory]" : file.toString();
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.tar.TarConstants;
+import org.codehaus.plexus.archiver.tar.TarEntry;
+import org.codehaus.plexus.archiver.tar.TarOutputStream;
+import org.codehaus.plexus.archiver.tar.TarUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A tar archiver that writes the recorded entries straight through a pluggable {@link TarCompressor}, so
+ * compression is not limited to the methods built into the plexus tar archiver.
+ *
+ * @version $Id$
+ */
+public class StreamingTarArchiver
+    extends RecordingArchiver
+{
+    private static final int FILE_FLAG = 0100000;
+
+    private static final int DIR_FLAG = 040000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int RECORD_SIZE = 512;
+
+    /**
+     * Where the link name follows the name, mode, ids, size, time, checksum and link flag of a tar header.
+     */
+    private static final int LINKNAME_OFFSET = TarConstants.NAMELEN + TarConstants.MODELEN + TarConstants.UIDLEN
+        + TarConstants.GIDLEN + TarConstants.SIZELEN + TarConstants.MODTIMELEN + TarConstants.CHKSUMLEN + 1;
+
+    /**
+     * The encoding of names in GNU long name records, which {@link IndexedTarGzReader} reads them with.
+     */
+    static final String LONG_NAME_ENCODING = "UTF-8";
+
+    private final TarCompressor compressor;
+
+    private String longFileMode = "warn";
+
+    private Log log;
+
+    private boolean longWarningGiven;
+
+    private ZipFile openArchive;
+
+    private boolean hardlinkDuplicates;
+
+    private boolean checksums;
+
+    private ContentDigests digests = new ContentDigests();
+
+    /**
+     * The path of the first entry written for each content key, when duplicates are hardlinked.
+     */
+    private final Map writtenContents = new HashMap();
+
+    private long volumeSize;
+
+    private int volumeThreads;
+
+    private String volumeExtension;
+
+    private List volumes = Collections.EMPTY_LIST;
+
+    /**
+     * @param compressor the compression to apply, or null for a plain tar
+     */
+    public StreamingTarArchiver( TarCompressor compressor )
+    {
+        this.compressor = compressor;
+    }
+
+    /**
+     * @param longFileMode one of "warn", "fail", "truncate", "gnu" or "omit"
+     */
+    public void setLongFileMode( String longFileMode )
+    {
+        this.longFileMode = longFileMode == null ? "warn" : longFileMode;
+    }
+
+    public void setLog( Log log )
+    {
+        this.log = log;
+    }
+
+    /**
+     * @param hardlinkDuplicates true to write files whose contents and mode were already written as hard
+     *                           links to the first copy
+     */
+    public void setHardlinkDuplicates( boolean hardlinkDuplicates )
+    {
+        this.hardlinkDuplicates = hardlinkDuplicates;
+    }
+
+    /**
+     * @param checksums true to write the checksum files of the archive, computed from the compressed bytes
+     *                  as they are written
+     */
+    public void setChecksums( boolean checksums )
+    {
+        this.checksums = checksums;
+    }
+
+    /**
+     * @param digests the digests of the current execution, used to find duplicate contents
+     */
+    public void setContentDigests( ContentDigests digests )
+    {
+        this.digests = digests;
+    }
+
+    /**
+     * Splits the archive into volumes instead of writing the destination file. Each volume is a complete
+     * archive holding consecutive entries of about the given uncompressed size; an entry larger than that
+     * gets a volume of its own. The volumes are written on several threads, and a {@link TarVolumeIndex}
+     * listing the entries of each volume is written next to the destination file.
+     *
+     * @param volumeSize the maximum uncompressed size of a volume in bytes, 0 or less to not split
+     * @param threads number of volumes written at the same time, 0 or less for one per available processor
+     * @param extension the extension of the destination file, which the volume files keep
+     */
+    public void setVolumes( long volumeSize, int threads, String extension )
+    {
+        this.volumeSize = volumeSize;
+        this.volumeThreads = threads;
+        this.volumeExtension = extension;
+    }
+
+    /**
+     * @return true if the archive is written as volumes
+     */
+    public boolean isSplit()
+    {
+        return volumeSize > 0;
+    }
+
+    /**
+     * @return the volume files written by the last call to {@link #createArchive()}, empty unless the archive
+     *         is split
+     */
+    public List getVolumes()
+    {
+        return volumes;
+    }
+
+    public void createArchive()
+        throws ArchiverException, IOException
+    {
+        File destFile = getDestFile();
+        if ( destFile == null )
+        {
+            throw new ArchiverException( "You must set the destination tar file." );
+        }
+
+        List entries = getEntries();
+        if ( entries.isEmpty() )
+        {
+            throw new ArchiverException( "You must set at least one file." );
+        }
+
+        if ( destFile.getParentFile() != null )
+        {
+            destFile.getParentFile().mkdirs();
+        }
+
+        if ( isSplit() )
+        {
+            createVolumes( destFile, entries );
+            return;
+        }
+
+        longWarningGiven = false;
+        writtenContents.clear();
+
+        ChecksumOutputStream checksumOut = null;
+        OutputStream out = new FileOutputStream( destFile );
+        if ( checksums )
+        {
+            // below the buffer, so the digests are updated a block at a time
+            checksumOut = new ChecksumOutputStream( out );
+            out = checksumOut;
+        }
+        out = new BufferedOutputStream( out, BUFFER_SIZE );
+        TarOutputStream tOut = null;
+        IndexedGZIPOutputStream indexedOut = null;
+        TarGzIndex index = null;
+        boolean success = false;
+        try
+        {
+            OutputStream compressedOut = compressor == null ? out : compressor.compress( out );
+            if ( compressedOut instanceof IndexedGZIPOutputStream )
+            {
+                indexedOut = (IndexedGZIPOutputStream) compressedOut;
+                index = new TarGzIndex();
+            }
+
+            tOut = new TarOutputStream( compressedOut );
+            tOut.setLongFileMode( getTarLongFileMode() );
+
+            List offsets = new ArrayList();
+            long offset = 0;
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for ( Iterator i = entries.iterator(); i.hasNext(); )
+            {
+                AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+
+                if ( indexedOut != null )
+                {
+                    // the tar stream buffers its output, so the boundary is marked before the header reaches it
+                    indexedOut.markBoundary( offset );
+                }
+
+                long written = writeEntry( tOut, entry, buffer );
+                if ( index != null && written > 0 )
+                {
+                    offsets.add( new Object[] { entry, new Long( offset ) } );
+                }
+                offset += written;
+            }
+
+            tOut.close();
+
+            for ( Iterator i = offsets.iterator(); i.hasNext(); )
+            {
+                Object[] entryOffset = (Object[]) i.next();
+                AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) entryOffset[0];
+                long[] position = indexedOut.getPosition( ( (Long) entryOffset[1] ).longValue() );
+                index.addEntry( entry.isDirectory() ? entry.getPath() + "/" : entry.getPath(), position[0],
+                                position[1] );
+            }
+            success = true;
+        }
+        finally
+        {
+            AssemblyEntryPlan.closeQuietly( openArchive );
+            openArchive = null;
+
+            if ( !success )
+            {
+                IOUtil.close( tOut == null ? out : tOut );
+                destFile.delete();
+            }
+        }
+
+        if ( index != null )
+        {
+            index.write( TarGzIndex.getIndexFile( destFile ) );
+        }
+        else
+        {
+            TarGzIndex.getIndexFile( destFile ).delete();
+        }
+
+        if ( checksumOut != null )
+        {
+            checksumOut.writeChecksumFiles( destFile );
+        }
+        else
+        {
+            ChecksumOutputStream.deleteChecksumFiles( destFile );
+        }
+    }
+
+    private void createVolumes( File destFile, List entries )
+        throws ArchiverException, IOException
+    {
+        TarVolumeIndex index = new TarVolumeIndex();
+
+        List volumeEntries = new ArrayList();
+        long size = 0;
+        try
+        {
+            for ( Iterator i = entries.iterator(); i.hasNext(); )
+            {
+                AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+                long entrySize = estimateSize( entry );
+
+                if ( !volumeEntries.isEmpty() && size + entrySize > volumeSize )
+                {
+                    index.addVolume( TarVolumeIndex.getVolumeFile( destFile, volumeExtension, index.getVolumes().size() + 1 ),
+                                     volumeEntries );
+                    volumeEntries = new ArrayList();
+                    size = 0;
+                }
+
+                volumeEntries.add( entry );
+                size += entrySize;
+            }
+        }
+        finally
+        {
+            AssemblyEntryPlan.closeQuietly( openArchive );
+            openArchive = null;
+        }
+        index.addVolume( TarVolumeIndex.getVolumeFile( destFile, volumeExtension, index.getVolumes().size() + 1 ),
+                         volumeEntries );
+
+        List volumeFiles = index.getVolumes();
+
+        int threads = volumeThreads > 0 ? volumeThreads : Runtime.getRuntime().availableProcessors();
+        threads = Math.max( 1, Math.min( threads, volumeFiles.size() ) );
+
+        debug( "Writing " + volumeFiles.size() + " volumes of " + destFile + " using " + threads + " threads" );
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        File indexFile = TarVolumeIndex.getIndexFile( destFile );
+        boolean success = false;
+        try
+        {
+            List futures = new ArrayList();
+            for ( int i = 0; i < volumeFiles.size(); i++ )
+            {
+                final StreamingTarArchiver volume = new StreamingTarArchiver( compressor );
+                volume.setLongFileMode( longFileMode );
+                volume.setLog( log );
+                volume.setHardlinkDuplicates( hardlinkDuplicates );
+                volume.setChecksums( checksums );
+                volume.setContentDigests( digests );
+                volume.addEntries( (List) index.getEntries().get( i ) );
+                volume.setDestFile( (File) volumeFiles.get( i ) );
+
+                futures.add( executor.submit( new Callable()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        volume.createArchive();
+                        return volume.getDestFile();
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                waitForVolume( (Future) futures.get( i ) );
+            }
+
+            index.write( indexFile );
+            if ( checksums )
+            {
+                ChecksumOutputStream.computeChecksumFiles( indexFile );
+            }
+            else
+            {
+                ChecksumOutputStream.deleteChecksumFiles( indexFile );
+            }
+            success = true;
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            if ( !success )
+            {
+                // volumes still being written would be created again after they are deleted
+                awaitTermination( executor );
+                deleteVolumes( indexFile, volumeFiles );
+            }
+        }
+
+        volumes = Collections.unmodifiableList( new ArrayList( volumeFiles ) );
+    }
+
+    private static void awaitTermination( ExecutorService executor )
+    {
+        try
+        {
+            while ( !executor.awaitTermination( 1, TimeUnit.SECONDS ) )
+            {
+                // a volume is still being written
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes the volumes written so far, with their indexes and checksums, and the index of the volumes, so a
+     * failed split leaves no set of volumes that looks complete.
+     */
+    private static void deleteVolumes( File indexFile, List volumeFiles )
+    {
+        for ( Iterator i = volumeFiles.iterator(); i.hasNext(); )
+        {
+            File volume = (File) i.next();
+            volume.delete();
+            TarGzIndex.getIndexFile( volume ).delete();
+            ChecksumOutputStream.deleteChecksumFiles( volume );
+        }
+        indexFile.delete();
+        ChecksumOutputStream.deleteChecksumFiles( indexFile );
+    }
+
+    private static void waitForVolume( Future future )
+        throws ArchiverException, IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new ArchiverException( "Interrupted while writing volumes", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof ArchiverException )
+            {
+                throw (ArchiverException) cause;
+            }
+            throw new ArchiverException( "Error writing volume: " + cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * Estimates the uncompressed size of an entry in the tar. Files whose line endings are converted are
+     * counted with their original size, so they are not read twice.
+     */
+    private long estimateSize( AssemblyEntryPlan.Entry entry )
+        throws IOException
+    {
+        long size = RECORD_SIZE;
+
+        String name = entry.isDirectory() ? entry.getPath() + "/" : entry.getPath();
+        if ( name.length() >= TarConstants.NAMELEN )
+        {
+            // the GNU long name header and the name itself
+            size += RECORD_SIZE + roundUp( getLongName( name ).length + 1 );
+        }
+
+        if ( !entry.isDirectory() )
+        {
+            if ( entry.isArchiveMember() )
+            {
+                size += roundUp( getArchiveMember( entry ).getSize() );
+            }
+            else
+            {
+                size += roundUp( entry.isStaged() ? entry.getLength() : entry.getSource().length() );
+            }
+        }
+        return size;
+    }
+
+    private static long roundUp( long length )
+    {
+        return ( length + RECORD_SIZE - 1 ) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    /**
+     * Writes an entry to the tar stream.
+     *
+     * @param tOut
+     * @param entry
+     * @param buffer
+     * @return the number of bytes the entry takes in the tar, including its headers and padding; 0 if it
+     *         was omitted
+     * @throws IOException
+     * @throws ArchiverException
+     */
+    protected long writeEntry( TarOutputStream tOut, AssemblyEntryPlan.Entry entry, byte[] buffer )
+        throws IOException, ArchiverException
+    {
+        String name = entry.isDirectory() ? entry.getPath() + "/" : entry.getPath();
+
+        long written = RECORD_SIZE;
+        if ( name.length() >= TarConstants.NAMELEN )
+        {
+            if ( "omit".equals( longFileMode ) )
+            {
+                debug( "Omitting: " + name );
+                return 0;
+            }
+            else if ( "warn".equals( longFileMode ) && !longWarningGiven )
+            {
+                if ( log != null )
+                {
+                    log.warn( "Entry: " + name + " longer than " + TarConstants.NAMELEN + " characters." );
+                    log.warn( "Resulting tar file can only be processed successfully by GNU compatible tar commands" );
+                }
+                longWarningGiven = true;
+            }
+
+            if ( getTarLongFileMode() == TarOutputStream.LONGFILE_GNU )
+            {
+                // the GNU long name header and the name itself
+                written += RECORD_SIZE + roundUp( getLongName( name ).length + 1 );
+            }
+        }
+
+        File source = entry.getSource();
+        ZipEntry member = null;
+
+        if ( entry.isArchiveMember() )
+        {
+            member = getArchiveMember( entry );
+        }
+
+        long modTime = member == null ? source.lastModified() : member.getTime();
+
+        if ( entry.isDirectory() )
+        {
+            TarEntry te = createEntry( tOut, name, TarConstants.LF_DIR );
+            te.setModTime( modTime );
+            te.setMode( DIR_FLAG | ( entry.getMode() & 07777 ) );
+            tOut.putNextEntry( te );
+        }
+        else
+        {
+            long size = member == null ? entry.getLength() : member.getSize();
+
+            String contentKey = null;
+            if ( hardlinkDuplicates && size > 0 )
+            {
+                contentKey = getContentKey( entry );
+
+                String target = (String) writtenContents.get( contentKey );
+                if ( target != null )
+                {
+                    TarEntry link = createEntry( tOut, name, TarConstants.LF_LINK );
+                    link.setModTime( modTime );
+                    link.setMode( FILE_FLAG | ( entry.getMode() & 07777 ) );
+                    tOut.putNextEntry( withLinkName( link, target ) );
+                    tOut.closeEntry();
+                    return written;
+                }
+
+                // link names have no long name extension, so only short paths can be link targets
+                if ( name.length() < TarConstants.NAMELEN )
+                {
+                    writtenContents.put( contentKey, name );
+                }
+            }
+
+            TarEntry te = createEntry( tOut, name, TarConstants.LF_NORMAL );
+            te.setModTime( modTime );
+            te.setMode( FILE_FLAG | ( entry.getMode() & 07777 ) );
+            te.setSize( size );
+            tOut.putNextEntry( te );
+            written += roundUp( size );
+
+            InputStream in = member == null ? entry.openStream() : openArchive.getInputStream( member );
+            try
+            {
+                int count;
+                while ( ( count = in.read( buffer ) ) != -1 )
+                {
+                    tOut.write( buffer, 0, count );
+                }
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+
+        tOut.closeEntry();
+        return written;
+    }
+
+    /**
+     * Creates the tar entry of a name. A name too long for the header is written in a GNU long name record
+     * first, sized by its encoded length, and the entry gets the name cut to fit the header. The tar stream
+     * would size that record by the number of characters, which is too small for names that are not ASCII.
+     */
+    /**
+     * The tar entries of plexus-archiver have no setter for the link name, so the header of the entry is
+     * written, the link name field filled in, and the entry parsed back from it. The output stream computes
+     * the checksum again when it writes the header.
+     */
+    private static TarEntry withLinkName( TarEntry entry, String linkName )
+    {
+        byte[] header = new byte[RECORD_SIZE];
+        entry.writeEntryHeader( header );
+        TarUtils.getNameBytes( new StringBuffer( linkName ), header, LINKNAME_OFFSET, TarConstants.NAMELEN );
+        return new TarEntry( header );
+    }
+
+    private TarEntry createEntry( TarOutputStream tOut, String name, byte linkFlag )
+        throws IOException
+    {
+        if ( name.length() < TarConstants.NAMELEN || getTarLongFileMode() != TarOutputStream.LONGFILE_GNU )
+        {
+            return new TarEntry( name, linkFlag );
+        }
+
+        byte[] longName = getLongName( name );
+
+        TarEntry longNameEntry = new TarEntry( TarConstants.GNU_LONGLINK, TarConstants.LF_GNUTYPE_LONGNAME );
+        longNameEntry.setSize( longName.length + 1 );
+        tOut.putNextEntry( longNameEntry );
+        tOut.write( longName );
+        tOut.write( 0 );
+        tOut.closeEntry();
+
+        return new TarEntry( name.substring( 0, TarConstants.NAMELEN - 1 ), linkFlag );
+    }
+
+    /**
+     * @return the bytes of a name in a GNU long name record
+     */
+    private static byte[] getLongName( String name )
+        throws UnsupportedEncodingException
+    {
+        return name.getBytes( LONG_NAME_ENCODING );
+    }
+
+    /**
+     * Looks up the zip member of an entry. Members of the same artifact are recorded next to each other,
+     * so the zip file is kept open until an entry from another file comes along.
+     */
+    private ZipEntry getArchiveMember( AssemblyEntryPlan.Entry entry )
+        throws IOException
+    {
+        File source = entry.getSource();
+        if ( openArchive == null || !openArchive.getName().equals( source.getPath() ) )
+        {
+            AssemblyEntryPlan.closeQuietly( openArchive );
+            openArchive = null;
+            openArchive = new ZipFile( source );
+        }
+
+        ZipEntry member = openArchive.getEntry( entry.getArchiveEntryName() );
+        if ( member == null )
+        {
+            throw new IOException( "No entry " + entry.getArchiveEntryName() + " in " + source );
+        }
+        return member;
+    }
+
+    /**
+     * Identifies the contents and mode of a file entry. Members of a zip are identified by the zip and the
+     * member name rather than hashed, so their contents are not read twice.
+     */
+    private String getContentKey( AssemblyEntryPlan.Entry entry )
+        throws IOException
+    {
+        StringBuffer key = new StringBuffer();
+        key.append( Integer.toString( entry.getMode() & 07777, 8 ) ).append( ' ' );
+        if ( entry.isStaged() )
+        {
+            return key.append( "staged " ).append( entry.getContent().getDigest() ).toString();
+        }
+        key.append( digests.sha1( entry.getSource() ) );
+        if ( entry.isArchiveMember() )
+        {
+            key.append( '!' ).append( entry.getArchiveEntryName() );
+        }
+        if ( entry.getLineEnding() != null )
+        {
+            key.append( '+' ).append( entry.getLineEnding().length() );
+        }
+        return key.toString();
+    }
+
+    private int getTarLongFileMode()
+    {
+        if ( "fail".equals( longFileMode ) )
+        {
+            return TarOutputStream.LONGFILE_ERROR;
+        }
+        else if ( "truncate".equals( longFileMode ) )
+        {
+            return TarOutputStream.LONGFILE_TRUNCATE;
+        }
+        return TarOutputStream.LONGFILE_GNU;
+    }
+
+    private void debug( String message )
+    {
+        if ( log != null )
+        {
+            log.debug( message );
+        }
+    }
+}
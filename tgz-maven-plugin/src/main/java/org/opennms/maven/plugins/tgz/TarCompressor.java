@@ -0,0 +1,21 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Wraps the output of a {@link StreamingTarArchiver} in a compressing stream.
+ *
+ * @version $Id$
+ */
+public interface TarCompressor
+{
+    /**
+     * @param out the stream the compressed archive is written to
+     * @return a stream that compresses everything written to it into <code>out</code>; closing it must
+     *         close <code>out</code>
+     * @throws IOException
+     */
+    OutputStream compress( OutputStream out )
+        throws IOException;
+}
@@ -0,0 +1,135 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The index of a tgz archive written with an {@link IndexedGZIPOutputStream}. For each entry it holds the
+ * offset in the archive of the gzip member its tar header is in, and the number of uncompressed bytes of
+ * that member before the header. Each line holds the member offset, the bytes to skip and the path,
+ * separated by tabs; directories end with '/'.
+ *
+ * @version $Id$
+ */
+public class TarGzIndex
+{
+    public static final String EXTENSION = ".tarindex";
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Maps each path to its position, as a long array of the member offset and the bytes to skip.
+     */
+    private final Map positions = new LinkedHashMap();
+
+    /**
+     * @param archive
+     * @return the index file of an archive
+     */
+    public static File getIndexFile( File archive )
+    {
+        return new File( archive.getPath() + EXTENSION );
+    }
+
+    /**
+     * @param path the path of the entry, ending with '/' for a directory
+     * @param memberOffset the offset in the archive of the gzip member holding the tar header of the entry
+     * @param skip the number of uncompressed bytes of the member before the tar header
+     */
+    public void addEntry( String path, long memberOffset, long skip )
+    {
+        positions.put( path, new long[] { memberOffset, skip } );
+    }
+
+    /**
+     * @param path
+     * @return the member offset and the bytes to skip of the entry, or null if the archive has no entry with
+     *         that path
+     */
+    public long[] getPosition( String path )
+    {
+        return (long[]) positions.get( path );
+    }
+
+    /**
+     * @return the paths of the entries, in archive order
+     */
+    public List getPaths()
+    {
+        return Collections.unmodifiableList( new ArrayList( positions.keySet() ) );
+    }
+
+    public void write( File index )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( index ), ENCODING );
+        try
+        {
+            for ( Iterator i = positions.entrySet().iterator(); i.hasNext(); )
+            {
+                Map.Entry entry = (Map.Entry) i.next();
+                long[] position = (long[]) entry.getValue();
+                writer.write( Long.toString( position[0] ) );
+                writer.write( '\t' );
+                writer.write( Long.toString( position[1] ) );
+                writer.write( '\t' );
+                writer.write( (String) entry.getKey() );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    public static TarGzIndex read( File index )
+        throws IOException
+    {
+        TarGzIndex tarGzIndex = new TarGzIndex();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( index ), ENCODING ) );
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int first = line.indexOf( '\t' );
+                int second = first < 0 ? -1 : line.indexOf( '\t', first + 1 );
+                if ( second < 0 )
+                {
+                    throw new IOException( "Invalid line in archive index " + index + ": " + line );
+                }
+
+                try
+                {
+                    tarGzIndex.addEntry( line.substring( second + 1 ), Long.parseLong( line.substring( 0, first ) ),
+                                         Long.parseLong( line.substring( first + 1, second ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new IOException( "Invalid line in archive index " + index + ": " + line );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        return tarGzIndex;
+    }
+}
@@ -0,0 +1,197 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * The index of a tar archive that has been split into volumes. Each line holds the file name of a volume
+ * and, separated by a tab, the path of an entry in that volume; directories end with '/'. Volumes are
+ * listed in order and each one is a complete archive of its own.
+ *
+ * @version $Id$
+ */
+public class TarVolumeIndex
+{
+    public static final String EXTENSION = ".index";
+
+    private static final String ENCODING = "UTF-8";
+
+    private final List volumes = new ArrayList();
+
+    private final List entries = new ArrayList();
+
+    /**
+     * @param destFile the archive that is split
+     * @return the index of the volumes of the archive
+     */
+    public static File getIndexFile( File destFile )
+    {
+        return new File( destFile.getPath() + EXTENSION );
+    }
+
+    /**
+     * @param file
+     * @return true if the file is the index of a split archive
+     */
+    public static boolean isIndex( File file )
+    {
+        return file.getName().endsWith( EXTENSION );
+    }
+
+    /**
+     * @param destFile the archive that is split
+     * @param extension the extension of the archive, such as <code>tar.gz</code>, which the volumes keep
+     * @param volume the number of the volume, starting at 1
+     * @return the file of the volume, such as <code>dist-bin-vol001.tar.gz</code>
+     */
+    public static File getVolumeFile( File destFile, String extension, int volume )
+    {
+        String name = destFile.getName();
+        String suffix = "." + extension;
+        if ( name.endsWith( suffix ) )
+        {
+            name = name.substring( 0, name.length() - suffix.length() );
+        }
+
+        return new File( destFile.getParentFile(), name + "-" + getVolumeName( volume ) + suffix );
+    }
+
+    /**
+     * @param volume the number of the volume, starting at 1
+     * @return the name of the volume, such as <code>vol001</code>
+     */
+    public static String getVolumeName( int volume )
+    {
+        String number = Integer.toString( volume );
+        while ( number.length() < 3 )
+        {
+            number = "0" + number;
+        }
+        return "vol" + number;
+    }
+
+    /**
+     * Records the entries written to a volume.
+     *
+     * @param volume the file of the volume
+     * @param volumeEntries the {@link AssemblyEntryPlan.Entry} objects in the volume
+     */
+    public void addVolume( File volume, List volumeEntries )
+    {
+        volumes.add( volume );
+        entries.add( volumeEntries );
+    }
+
+    /**
+     * @return the files of the volumes, in order
+     */
+    public List getVolumes()
+    {
+        return volumes;
+    }
+
+    /**
+     * @return for each volume, the list of its {@link AssemblyEntryPlan.Entry} objects
+     */
+    public List getEntries()
+    {
+        return entries;
+    }
+
+    public void write( File index )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( index ), ENCODING );
+        try
+        {
+            for ( int i = 0; i < volumes.size(); i++ )
+            {
+                String volumeName = ( (File) volumes.get( i ) ).getName();
+                for ( Iterator j = ( (List) entries.get( i ) ).iterator(); j.hasNext(); )
+                {
+                    AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) j.next();
+                    writer.write( volumeName );
+                    writer.write( '\t' );
+                    writer.write( entry.getPath() );
+                    writer.write( entry.isDirectory() ? "/\n" : "\n" );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * @param index
+     * @return the files of the volumes listed in the index, in order
+     * @throws IOException
+     */
+    public static List readVolumes( File index )
+        throws IOException
+    {
+        List volumes = new ArrayList();
+
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( index ), ENCODING ) );
+        try
+        {
+            String last = null;
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                int tab = line.indexOf( '\t' );
+                String volumeName = tab < 0 ? line : line.substring( 0, tab );
+                if ( !volumeName.equals( last ) )
+                {
+                    volumes.add( new File( index.getParentFile(), volumeName ) );
+                    last = volumeName;
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        return volumes;
+    }
+
+    /**
+     * @param index
+     * @return true if the index and all of its volumes exist
+     */
+    public static boolean isComplete( File index )
+    {
+        if ( !index.isFile() )
+        {
+            return false;
+        }
+
+        try
+        {
+            for ( Iterator i = readVolumes( index ).iterator(); i.hasNext(); )
+            {
+                if ( !( (File) i.next() ).isFile() )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.opennms.maven.plugins.tgz;
 
 import java.io.File;
+import java.util.List;
 
 import org.apache.maven.plugins.assembly.model.Assembly;
 import org.apache.maven.project.MavenProject;
@@ -25,6 +26,15 @@ public class TgzMojo extends AbstractAssemblyMojo {
 		project.getArtifact().setFile(destFile);
 	}
 
+	protected void attachVolumes(Assembly assembly, String format, File index, List volumes) {
+		// the first volume is the main artifact, the others are attached like those of an attached assembly
+		project.getArtifact().setFile((File) volumes.get(0));
+		for (int i = 1; i < volumes.size(); i++) {
+			attachArtifact(format, getVolumeClassifier(null, i + 1), (File) volumes.get(i));
+		}
+		attachArtifact(format + TarVolumeIndex.EXTENSION, null, index);
+	}
+
 	protected MavenProject getExecutedProject() {
 		return project;
 	}
@@ -0,0 +1,542 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A directory of unpacked artifacts, keyed by the SHA-1 of the artifact contents, that is shared by every
+ * build using the same directory. Each entry lives in <code>&lt;key&gt;/contents</code>; the
+ * <code>&lt;key&gt;/size</code> file records the unpacked size, marks the entry as complete and its
+ * modification time is the last time the entry was used.
+ * <p/>
+ * Entries are extracted into a staging directory and renamed into place, so concurrent builds never see
+ * a half unpacked entry. When the cache grows over its maximum size the least recently used entries are
+ * removed, except the ones in use, since archives may still be written from them. An entry is in use from
+ * the moment a cache instance returns it until that instance is {@link #release() released}; while it is,
+ * a shared lock is held on its <code>&lt;key&gt;/lock</code> file, so builds in other processes do not
+ * remove it either. Where the filesystem does not support locks, entries used within the last
+ * {@link #GRACE_PERIOD} milliseconds are kept instead. Staging directories left behind by builds that did
+ * not finish are removed once they are older than {@link #STALE_STAGING_AGE} milliseconds.
+ *
+ * @version $Id$
+ */
+public class UnpackCache
+{
+    /**
+     * How long an entry is kept after its last use when it cannot be locked.
+     */
+    public static final long GRACE_PERIOD = 60 * 60 * 1000L;
+
+    /**
+     * How old a staging directory must be before it is taken for one left behind.
+     */
+    public static final long STALE_STAGING_AGE = 24 * 60 * 60 * 1000L;
+
+    private static final String CONTENTS = "contents";
+
+    private static final String SIZE = "size";
+
+    private static final String LOCK = "lock";
+
+    private static final String STAGING_PREFIX = "unpack";
+
+    private static final String STAGING_SUFFIX = ".tmp";
+
+    /**
+     * The {@link EntryLock} of every entry in use in this JVM, keyed by entry directory. File locks are held
+     * by the whole JVM, so cache instances using the same entry share a single lock.
+     */
+    private static final Map LOCKS = new HashMap();
+
+    private static final Object EVICTION_LOCK = new Object();
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final ContentDigests digests;
+
+    /**
+     * The entry directories this instance has returned and not released yet.
+     */
+    private final Set acquired = new HashSet();
+
+    /**
+     * @param directory the cache directory
+     * @param maxSize the maximum size of all entries in bytes
+     */
+    public UnpackCache( File directory, long maxSize )
+    {
+        this( directory, maxSize, new ContentDigests() );
+    }
+
+    /**
+     * @param directory the cache directory
+     * @param maxSize the maximum size of all entries in bytes
+     * @param digests the digests of the execution using the cache
+     */
+    public UnpackCache( File directory, long maxSize, ContentDigests digests )
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.digests = digests;
+    }
+
+    /**
+     * @param file an artifact
+     * @return the hex encoded SHA-1 of the contents of the file
+     * @throws IOException
+     */
+    public String getKey( File file )
+        throws IOException
+    {
+        return digests.sha1( file );
+    }
+
+    /**
+     * @param key
+     * @return the directory holding the unpacked contents for the key, or null if it is not cached; the
+     *         entry is kept until this instance is released
+     * @throws IOException if the entry cannot be locked
+     */
+    public File get( String key )
+        throws IOException
+    {
+        File entry = new File( directory, key );
+        File size = new File( entry, SIZE );
+
+        if ( !size.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            acquire( entry );
+        }
+        catch ( IOException e )
+        {
+            if ( size.isFile() )
+            {
+                throw e;
+            }
+            // removed by another build in the meantime
+            return null;
+        }
+
+        // the entry may have been removed by another build before the lock was granted
+        if ( !size.isFile() )
+        {
+            releaseEntry( entry );
+            return null;
+        }
+
+        size.setLastModified( System.currentTimeMillis() );
+
+        return new File( entry, CONTENTS );
+    }
+
+    /**
+     * @return an empty directory inside the cache to unpack an artifact into before calling
+     *         {@link #put(String, File)}
+     * @throws IOException
+     */
+    public File createStagingDirectory()
+        throws IOException
+    {
+        directory.mkdirs();
+
+        File staging = File.createTempFile( STAGING_PREFIX, STAGING_SUFFIX, directory );
+        staging.delete();
+
+        if ( !new File( staging, CONTENTS ).mkdirs() )
+        {
+            throw new IOException( "Unable to create unpack cache directory " + staging );
+        }
+        return new File( staging, CONTENTS );
+    }
+
+    /**
+     * Moves an unpacked staging directory into the cache.
+     *
+     * @param key
+     * @param contents a directory returned by {@link #createStagingDirectory()}
+     * @return the directory holding the cached contents, which is kept until this instance is released
+     * @throws IOException
+     */
+    public File put( String key, File contents )
+        throws IOException
+    {
+        File staging = contents.getParentFile();
+
+        Writer writer = new FileWriter( new File( staging, SIZE ) );
+        try
+        {
+            writer.write( Long.toString( sizeOf( contents ) ) );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+
+        File entry = new File( directory, key );
+
+        // locked before it is moved into place, so no other build can take it for unused
+        acquire( staging );
+        boolean moved = staging.renameTo( entry );
+        moveLock( staging, moved ? entry : null );
+
+        if ( !moved )
+        {
+            // somebody else unpacked the same contents in the meantime
+            FileUtils.deleteDirectory( staging );
+
+            if ( get( key ) == null )
+            {
+                throw new IOException( "Unable to move " + staging + " to " + entry );
+            }
+        }
+
+        evict();
+
+        return new File( entry, CONTENTS );
+    }
+
+    /**
+     * Releases the entries this instance has returned, so they can be removed from the cache again. The
+     * instance can still be used afterwards.
+     */
+    public void release()
+    {
+        List entries;
+        synchronized ( acquired )
+        {
+            entries = new ArrayList( acquired );
+        }
+
+        for ( Iterator i = entries.iterator(); i.hasNext(); )
+        {
+            releaseEntry( (File) i.next() );
+        }
+    }
+
+    /**
+     * Removes the least recently used entries that are not in use until the cache is no larger than its
+     * maximum size, and staging directories left behind.
+     *
+     * @throws IOException
+     */
+    public void evict()
+        throws IOException
+    {
+        synchronized ( EVICTION_LOCK )
+        {
+            evictUnsynchronized();
+        }
+    }
+
+    private void evictUnsynchronized()
+        throws IOException
+    {
+        File[] entries = directory.listFiles();
+        if ( entries == null )
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        List candidates = new ArrayList();
+        long total = 0;
+
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            String name = entries[i].getName();
+            if ( name.startsWith( STAGING_PREFIX ) && name.endsWith( STAGING_SUFFIX ) )
+            {
+                if ( entries[i].lastModified() < now - STALE_STAGING_AGE && !isLockedHere( entries[i] ) )
+                {
+                    FileUtils.deleteDirectory( entries[i] );
+                }
+                continue;
+            }
+
+            File size = new File( entries[i], SIZE );
+            if ( size.isFile() )
+            {
+                total += readSize( size );
+                if ( !isLockedHere( entries[i] ) )
+                {
+                    candidates.add( size );
+                }
+            }
+        }
+
+        if ( total <= maxSize )
+        {
+            return;
+        }
+
+        Collections.sort( candidates, new Comparator()
+        {
+            public int compare( Object o1, Object o2 )
+            {
+                long t1 = ( (File) o1 ).lastModified();
+                long t2 = ( (File) o2 ).lastModified();
+                return t1 < t2 ? -1 : ( t1 == t2 ? 0 : 1 );
+            }
+        } );
+
+        for ( Iterator i = candidates.iterator(); i.hasNext() && total > maxSize; )
+        {
+            File size = (File) i.next();
+            long entrySize = readSize( size );
+            if ( remove( size.getParentFile(), now ) )
+            {
+                total -= entrySize;
+            }
+        }
+    }
+
+    /**
+     * Removes an entry unless a build in another process holds its lock.
+     *
+     * @return true if the entry was removed
+     */
+    private static boolean remove( File entry, long now )
+        throws IOException
+    {
+        File size = new File( entry, SIZE );
+
+        RandomAccessFile file;
+        try
+        {
+            file = new RandomAccessFile( new File( entry, LOCK ), "rw" );
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+
+        try
+        {
+            try
+            {
+                if ( file.getChannel().tryLock() == null )
+                {
+                    // in use by a build in another process
+                    return false;
+                }
+            }
+            catch ( IOException e )
+            {
+                // no locks on this filesystem: only remove entries nobody has used for a while
+                if ( size.lastModified() >= now - GRACE_PERIOD )
+                {
+                    return false;
+                }
+            }
+
+            // the size file goes first, so a build waiting for the lock sees the entry is gone
+            size.delete();
+            FileUtils.deleteDirectory( entry );
+            return true;
+        }
+        finally
+        {
+            // closing the file releases the lock
+            close( file );
+        }
+    }
+
+    private void acquire( File entry )
+        throws IOException
+    {
+        synchronized ( acquired )
+        {
+            if ( acquired.contains( entry ) )
+            {
+                return;
+            }
+        }
+
+        // not while this JVM removes entries, which would hold the lock file the JVM is about to lock
+        synchronized ( EVICTION_LOCK )
+        {
+            synchronized ( LOCKS )
+            {
+                EntryLock lock = (EntryLock) LOCKS.get( entry );
+                if ( lock == null )
+                {
+                    lock = EntryLock.lock( new File( entry, LOCK ) );
+                    LOCKS.put( entry, lock );
+                }
+                lock.users++;
+            }
+        }
+
+        synchronized ( acquired )
+        {
+            acquired.add( entry );
+        }
+    }
+
+    private void releaseEntry( File entry )
+    {
+        synchronized ( acquired )
+        {
+            if ( !acquired.remove( entry ) )
+            {
+                return;
+            }
+        }
+
+        synchronized ( LOCKS )
+        {
+            EntryLock lock = (EntryLock) LOCKS.get( entry );
+            if ( lock != null && --lock.users == 0 )
+            {
+                LOCKS.remove( entry );
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Moves the lock of a staging directory to the entry it was renamed to. The lock stays on the same file,
+     * which has only changed its path.
+     *
+     * @param entry the entry, or null if the staging directory was not moved and its lock is released
+     */
+    private void moveLock( File staging, File entry )
+    {
+        if ( entry == null )
+        {
+            releaseEntry( staging );
+            return;
+        }
+
+        synchronized ( acquired )
+        {
+            acquired.remove( staging );
+            acquired.add( entry );
+        }
+
+        synchronized ( LOCKS )
+        {
+            LOCKS.put( entry, LOCKS.remove( staging ) );
+        }
+    }
+
+    private static boolean isLockedHere( File entry )
+    {
+        synchronized ( LOCKS )
+        {
+            return LOCKS.containsKey( entry );
+        }
+    }
+
+    private static void close( RandomAccessFile file )
+    {
+        try
+        {
+            file.close();
+        }
+        catch ( IOException e )
+        {
+            // ignore
+        }
+    }
+
+    private static long readSize( File size )
+        throws IOException
+    {
+        try
+        {
+            return Long.parseLong( FileUtils.fileRead( size ).trim() );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0;
+        }
+    }
+
+    private static long sizeOf( File directory )
+    {
+        long size = 0;
+
+        List pending = new ArrayList();
+        pending.add( directory );
+        while ( !pending.isEmpty() )
+        {
+            File[] files = ( (File) pending.remove( pending.size() - 1 ) ).listFiles();
+            if ( files != null )
+            {
+                for ( int i = 0; i < files.length; i++ )
+                {
+                    if ( files[i].isDirectory() )
+                    {
+                        pending.add( files[i] );
+                    }
+                    else
+                    {
+                        size += files[i].length();
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * A shared lock on the lock file of an entry, held for every user of the entry in this JVM.
+     */
+    private static class EntryLock
+    {
+        private final RandomAccessFile file;
+
+        private int users;
+
+        private EntryLock( RandomAccessFile file )
+        {
+            this.file = file;
+        }
+
+        static EntryLock lock( File lockFile )
+            throws IOException
+        {
+            RandomAccessFile file = new RandomAccessFile( lockFile, "rw" );
+            try
+            {
+                // waits while another build is removing the entry
+                file.getChannel().lock( 0, Long.MAX_VALUE, true );
+            }
+            catch ( IOException e )
+            {
+                // no locks on this filesystem; the grace period protects the entry instead
+            }
+            return new EntryLock( file );
+        }
+
+        void release()
+        {
+            // closing the file releases the lock
+            close( file );
+        }
+    }
+}
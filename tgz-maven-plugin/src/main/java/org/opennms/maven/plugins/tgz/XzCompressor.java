@@ -0,0 +1,56 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Compresses tar archives with xz. A single thread writes one xz stream; more threads compress blocks of
+ * the tar in parallel with a {@link ParallelXZOutputStream}.
+ *
+ * @version $Id$
+ */
+public class XzCompressor
+    implements TarCompressor
+{
+    private final int preset;
+
+    private final int threads;
+
+    private final int blockSize;
+
+    private final ExecutorService executor;
+
+    public XzCompressor( int preset, int threads, int blockSize )
+    {
+        this( preset, threads, blockSize, null );
+    }
+
+    /**
+     * @param preset the xz preset, from 0 (fastest) to 9 (smallest)
+     * @param threads number of compression threads, 0 or less for one per available processor
+     * @param blockSize size of the blocks compressed in parallel
+     * @param executor the executor shared by the compressing streams, or null for threads of each stream's own
+     */
+    public XzCompressor( int preset, int threads, int blockSize, ExecutorService executor )
+    {
+        this.preset = preset;
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.executor = executor;
+    }
+
+    public OutputStream compress( OutputStream out )
+        throws IOException
+    {
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if ( threadCount == 1 )
+        {
+            return new XZOutputStream( out, new LZMA2Options( preset ) );
+        }
+        return new ParallelXZOutputStream( out, executor, threadCount, blockSize, preset );
+    }
+}
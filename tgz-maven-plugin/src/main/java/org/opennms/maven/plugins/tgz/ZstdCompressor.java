@@ -0,0 +1,43 @@
+package org.opennms.maven.plugins.tgz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Compresses tar archives with Zstandard, using the encoder bundled with zstd-jni. With more than one
+ * thread the encoder compresses on its own worker threads.
+ *
+ * @version $Id$
+ */
+public class ZstdCompressor
+    implements TarCompressor
+{
+    private final int level;
+
+    private final int threads;
+
+    /**
+     * @param level the compression level, from 1 (fastest) to 19 (smallest)
+     * @param threads number of compression threads, 0 or less for one per available processor
+     */
+    public ZstdCompressor( int level, int threads )
+    {
+        this.level = level;
+        this.threads = threads;
+    }
+
+    public OutputStream compress( OutputStream out )
+        throws IOException
+    {
+        ZstdOutputStream zstd = new ZstdOutputStream( out, level );
+
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if ( threadCount > 1 )
+        {
+            zstd.setWorkers( threadCount );
+        }
+        return zstd;
+    }
+}
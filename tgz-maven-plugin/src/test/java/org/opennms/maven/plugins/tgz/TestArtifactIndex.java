@@ -0,0 +1,145 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestArtifactIndex
+{
+    private ArtifactIndex index;
+
+    @Before
+    public void setUp()
+    {
+        List artifacts = new ArrayList();
+        artifacts.add( artifact( "org.opennms", "core", "jar", null, Artifact.SCOPE_RUNTIME ) );
+        artifacts.add( artifact( "org.opennms", "core", "jar", "tests", "test" ) );
+        artifacts.add( artifact( "org.opennms", "web", "war", null, Artifact.SCOPE_RUNTIME ) );
+        artifacts.add( artifact( "org.opennms.features", "poller", "jar", null, "compile" ) );
+        artifacts.add( artifact( "log4j", "log4j", "jar", null, "compile" ) );
+        index = new ArtifactIndex( artifacts );
+    }
+
+    @Test
+    public void testNoIncludesSelectsAll()
+    {
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests org.opennms:web:war "
+            + "org.opennms.features:poller:jar log4j:log4j:jar", select( null, null ) );
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests org.opennms:web:war "
+            + "org.opennms.features:poller:jar log4j:log4j:jar", select( "", "" ) );
+    }
+
+    @Test
+    public void testShortIdSelectsEveryClassifier()
+    {
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests", select( "org.opennms:core", null ) );
+    }
+
+    @Test
+    public void testConflictId()
+    {
+        assertSelected( "org.opennms:core:jar:tests", select( "org.opennms:core:jar:tests", null ) );
+        assertSelected( "org.opennms:core:jar", select( "org.opennms:core:jar", null ) );
+        assertSelected( "org.opennms:web:war", select( "org.opennms:web:war", null ) );
+        assertSelected( "", select( "org.opennms:web:jar", null ) );
+    }
+
+    @Test
+    public void testWildcards()
+    {
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests org.opennms:web:war",
+                        select( "org.opennms:*", null ) );
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests org.opennms:web:war "
+            + "org.opennms.features:poller:jar", select( "org.opennms*", null ) );
+        assertSelected( "org.opennms:core:jar:tests", select( "*:tests", null ) );
+        assertSelected( "org.opennms:web:war", select( "org.opennms:?eb", null ) );
+    }
+
+    @Test
+    public void testExcludes()
+    {
+        assertSelected( "org.opennms:core:jar org.opennms:web:war",
+                        select( "org.opennms:*", "org.opennms:core:jar:tests" ) );
+        assertSelected( "org.opennms.features:poller:jar log4j:log4j:jar", select( null, "org.opennms:*" ) );
+        assertSelected( "org.opennms:web:war", select( "org.opennms:core org.opennms:web", "*:core" ) );
+    }
+
+    @Test
+    public void testLiteralAndWildcardTogether()
+    {
+        assertSelected( "org.opennms:core:jar org.opennms:core:jar:tests log4j:log4j:jar",
+                        select( "log4j:log4j *:core", null ) );
+    }
+
+    @Test
+    public void testFilterAndOrder()
+    {
+        ArtifactFilter compileOnly = new ArtifactFilter()
+        {
+            public boolean include( Artifact artifact )
+            {
+                return "compile".equals( artifact.getScope() );
+            }
+        };
+
+        List selected = index.select( Arrays.asList( new String[] { "log4j:log4j", "org.opennms.features:*" } ),
+                                      Collections.EMPTY_LIST, compileOnly );
+        assertSelected( "org.opennms.features:poller:jar log4j:log4j:jar", selected );
+    }
+
+    private List select( String includes, String excludes )
+    {
+        return index.select( split( includes ), split( excludes ), null );
+    }
+
+    private static List split( String patterns )
+    {
+        if ( patterns == null )
+        {
+            return null;
+        }
+        List list = new ArrayList();
+        String[] parts = patterns.split( " " );
+        for ( int i = 0; i < parts.length; i++ )
+        {
+            if ( parts[i].length() > 0 )
+            {
+                list.add( parts[i] );
+            }
+        }
+        return list;
+    }
+
+    private static void assertSelected( String expected, List selected )
+    {
+        StringBuffer ids = new StringBuffer();
+        for ( Iterator i = selected.iterator(); i.hasNext(); )
+        {
+            if ( ids.length() > 0 )
+            {
+                ids.append( ' ' );
+            }
+            ids.append( ( (Artifact) i.next() ).getDependencyConflictId() );
+        }
+        assertEquals( expected, ids.toString() );
+    }
+
+    private static Artifact artifact( String groupId, String artifactId, String type, String classifier,
+                                      String scope )
+    {
+        return new DefaultArtifact( groupId, artifactId, VersionRange.createFromVersion( "1.0" ), scope, type,
+                                    classifier, new DefaultArtifactHandler( type ) );
+    }
+}
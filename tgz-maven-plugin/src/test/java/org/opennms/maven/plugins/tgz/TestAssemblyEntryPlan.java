@@ -0,0 +1,102 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAssemblyEntryPlan
+{
+    private File directory;
+
+    private StagingStore store;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+        store = new StagingStore( new File( directory, "staged" ), 1024, 1024 * 1024 );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        store.delete();
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testFilesAreStagedOnceForEveryFormat()
+        throws IOException, ArchiverException
+    {
+        File text = new File( directory, "notes.txt" );
+        FileUtils.fileWrite( text.getAbsolutePath(), "one\ntwo\n" );
+
+        File archive = new File( directory, "lib.zip" );
+        ZipOutputStream zOut = new ZipOutputStream( new FileOutputStream( archive ) );
+        zOut.putNextEntry( new ZipEntry( "dir/" ) );
+        zOut.putNextEntry( new ZipEntry( "dir/member.txt" ) );
+        zOut.write( "member".getBytes( "US-ASCII" ) );
+        zOut.close();
+
+        List entries = new ArrayList();
+        entries.add( new AssemblyEntryPlan.Entry( text, null, "doc/notes.txt", 0644, false, "\r\n" ) );
+        entries.add( new AssemblyEntryPlan.Entry( archive, "dir/", "lib/dir", 0755, true ) );
+        entries.add( new AssemblyEntryPlan.Entry( archive, "dir/member.txt", "lib/dir/member.txt", 0644, false ) );
+        entries.add( new AssemblyEntryPlan.Entry( text, "doc/plain.txt", 0644, false ) );
+        AssemblyEntryPlan plan = new AssemblyEntryPlan( entries );
+
+        SelectiveZipArchiver first = new SelectiveZipArchiver();
+        SelectiveZipArchiver second = new SelectiveZipArchiver();
+        plan.replay( first, store );
+        plan.replay( second, store );
+
+        Map firstFiles = first.getFiles();
+        Map secondFiles = second.getFiles();
+
+        File converted = getFile( firstFiles, "doc/notes.txt" );
+        assertEquals( converted, getFile( secondFiles, "doc/notes.txt" ) );
+        assertEquals( "one\r\ntwo\r\n", FileUtils.fileRead( converted ) );
+        assertTrue( "not staged in the store", converted.getPath().startsWith( new File( directory, "staged" ).getPath() ) );
+
+        File member = getFile( firstFiles, "lib/dir/member.txt" );
+        assertEquals( member, getFile( secondFiles, "lib/dir/member.txt" ) );
+        assertEquals( "member", FileUtils.fileRead( member ) );
+        assertNotSame( converted, member );
+
+        assertTrue( firstFiles.containsKey( "lib/dir/" ) );
+        assertEquals( text, getFile( firstFiles, "doc/plain.txt" ) );
+        // the converted file, the member, and the directory that directory entries are scanned from
+        assertEquals( 3, new File( directory, "staged" ).list().length );
+
+        store.delete();
+        assertFalse( converted.exists() );
+        assertFalse( member.exists() );
+        assertFalse( new File( directory, "staged" ).exists() );
+    }
+
+    private static File getFile( Map files, String path )
+    {
+        ArchiveEntry entry = (ArchiveEntry) files.get( path );
+        assertTrue( "no entry " + path + " in " + files.keySet(), entry != null );
+        return entry.getFile();
+    }
+}
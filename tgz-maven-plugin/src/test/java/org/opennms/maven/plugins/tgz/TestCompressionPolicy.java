@@ -0,0 +1,142 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCompressionPolicy
+{
+    private File directory;
+
+    private CompressionPolicy policy;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+        policy = new CompressionPolicy( Deflater.DEFAULT_COMPRESSION, true );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testCompressedExtensionsAreStored()
+        throws IOException
+    {
+        assertFalse( policy.shouldCompress( write( "a.JAR", text( 8192 ) ) ) );
+        assertFalse( policy.shouldCompress( write( "b.png", text( 100 ) ) ) );
+        assertFalse( policy.shouldCompress( write( "c.tar.gz", text( 100 ) ) ) );
+        assertTrue( policy.shouldCompress( write( "d.txt", text( 8192 ) ) ) );
+        assertTrue( policy.shouldCompress( write( "jar", text( 100 ) ) ) );
+    }
+
+    @Test
+    public void testSmallFilesAreCompressed()
+        throws IOException
+    {
+        assertTrue( policy.shouldCompress( write( "small.bin", random( 4095 ) ) ) );
+        assertFalse( policy.shouldCompress( write( "sample.bin", random( 4096 ) ) ) );
+        assertFalse( policy.shouldCompress( write( "large.bin", random( 65536 ) ) ) );
+    }
+
+    @Test
+    public void testEntropyCutoff()
+        throws IOException
+    {
+        // 181 equally frequent values carry 7.4995 bits per byte, 182 values 7.5074
+        assertTrue( policy.shouldCompress( write( "below.bin", cycle( 4096, 181 ) ) ) );
+        assertFalse( policy.shouldCompress( write( "above.bin", cycle( 4096, 182 ) ) ) );
+    }
+
+    @Test
+    public void testOnlyTheSampleIsJudged()
+        throws IOException
+    {
+        byte[] data = text( 8192 );
+        System.arraycopy( random( 4096 ), 0, data, 0, 4096 );
+        assertFalse( policy.shouldCompress( write( "head.bin", data ) ) );
+
+        data = random( 8192 );
+        System.arraycopy( text( 4096 ), 0, data, 0, 4096 );
+        assertTrue( policy.shouldCompress( write( "tail.bin", data ) ) );
+    }
+
+    @Test
+    public void testDeflateEverything()
+        throws IOException
+    {
+        CompressionPolicy deflating = new CompressionPolicy();
+        assertTrue( deflating.shouldCompress( write( "a.jar", random( 8192 ) ) ) );
+        assertTrue( deflating.shouldCompress( write( "b.bin", random( 8192 ) ) ) );
+    }
+
+    @Test
+    public void testNoCompressionLevelStores()
+        throws IOException
+    {
+        File file = write( "a.txt", text( 8192 ) );
+        assertFalse( new CompressionPolicy( Deflater.NO_COMPRESSION, true ).shouldCompress( file ) );
+        assertFalse( new CompressionPolicy( Deflater.NO_COMPRESSION, false ).shouldCompress( file ) );
+    }
+
+    private File write( String name, byte[] data )
+        throws IOException
+    {
+        File file = new File( directory, name );
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( data );
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] text( int length )
+    {
+        byte[] data = new byte[length];
+        String line = "The quick brown fox jumps over the lazy dog.\n";
+        for ( int i = 0; i < length; i++ )
+        {
+            data[i] = (byte) line.charAt( i % line.length() );
+        }
+        return data;
+    }
+
+    private static byte[] random( int length )
+    {
+        byte[] data = new byte[length];
+        new Random( length ).nextBytes( data );
+        return data;
+    }
+
+    private static byte[] cycle( int length, int values )
+    {
+        byte[] data = new byte[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            data[i] = (byte) ( i % values );
+        }
+        return data;
+    }
+}
@@ -0,0 +1,138 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.plugins.assembly.model.Assembly;
+import org.apache.maven.plugins.assembly.model.Component;
+import org.apache.maven.plugins.assembly.model.DependencySet;
+import org.apache.maven.plugins.assembly.model.FileItem;
+import org.apache.maven.plugins.assembly.model.FileSet;
+import org.apache.maven.plugins.assembly.model.ModuleSet;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDescriptorCache
+{
+    private static final String ASSEMBLY = "<assembly>\n"
+        + "  <id>bin</id>\n"
+        + "  <formats><format>tar.gz</format></formats>\n"
+        + "  <fileSets>\n"
+        + "    <fileSet>\n"
+        + "      <directory>etc</directory>\n"
+        + "      <includes><include>**/*.xml</include></includes>\n"
+        + "      <excludes><exclude>**/test-*.xml</exclude></excludes>\n"
+        + "    </fileSet>\n"
+        + "  </fileSets>\n"
+        + "  <files><file><source>README</source></file></files>\n"
+        + "  <dependencySets>\n"
+        + "    <dependencySet><outputDirectory>lib</outputDirectory></dependencySet>\n"
+        + "  </dependencySets>\n"
+        + "  <moduleSets>\n"
+        + "    <moduleSet>\n"
+        + "      <includes><include>org.opennms:core</include></includes>\n"
+        + "      <binaries><outputDirectory>modules</outputDirectory></binaries>\n"
+        + "    </moduleSet>\n"
+        + "  </moduleSets>\n"
+        + "</assembly>\n";
+
+    private static final String COMPONENT = "<component>\n"
+        + "  <fileSets>\n"
+        + "    <fileSet>\n"
+        + "      <directory>docs</directory>\n"
+        + "      <excludes><exclude>drafts/**</exclude></excludes>\n"
+        + "    </fileSet>\n"
+        + "  </fileSets>\n"
+        + "  <files><file><source>LICENSE</source></file></files>\n"
+        + "</component>\n";
+
+    private File directory;
+
+    private Model model;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+
+        model = new Model();
+        model.setGroupId( "org.opennms" );
+        model.setArtifactId( "cached-assembly" );
+        model.setVersion( "1.0" );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testChangedAssemblyIsNotCached()
+        throws Exception
+    {
+        Assembly first = DescriptorCache.getAssembly( ASSEMBLY, model, Collections.EMPTY_MAP );
+
+        first.setId( "changed" );
+        first.addFormat( "zip" );
+        FileSet fileSet = (FileSet) first.getFileSets().get( 0 );
+        fileSet.addExclude( "**/*.bak" );
+        fileSet.setDirectory( "changed" );
+        first.addFileSet( new FileSet() );
+        ( (FileItem) first.getFiles().get( 0 ) ).setDestName( "changed" );
+        ( (DependencySet) first.getDependencySets().get( 0 ) ).addExclude( "log4j:log4j" );
+        ModuleSet moduleSet = (ModuleSet) first.getModuleSets().get( 0 );
+        moduleSet.addInclude( "org.opennms:web" );
+        moduleSet.getBinaries().setOutputDirectory( "changed" );
+
+        Assembly second = DescriptorCache.getAssembly( ASSEMBLY, model, Collections.EMPTY_MAP );
+
+        assertNotSame( first, second );
+        assertEquals( "bin", second.getId() );
+        assertEquals( Collections.singletonList( "tar.gz" ), second.getFormats() );
+        assertEquals( 1, second.getFileSets().size() );
+        fileSet = (FileSet) second.getFileSets().get( 0 );
+        assertEquals( "etc", fileSet.getDirectory() );
+        assertEquals( Collections.singletonList( "**/test-*.xml" ), fileSet.getExcludes() );
+        assertEquals( null, ( (FileItem) second.getFiles().get( 0 ) ).getDestName() );
+        assertEquals( 0, ( (DependencySet) second.getDependencySets().get( 0 ) ).getExcludes().size() );
+        moduleSet = (ModuleSet) second.getModuleSets().get( 0 );
+        assertEquals( Collections.singletonList( "org.opennms:core" ), moduleSet.getIncludes() );
+        assertEquals( "modules", moduleSet.getBinaries().getOutputDirectory() );
+    }
+
+    @Test
+    public void testChangedComponentIsNotCached()
+        throws Exception
+    {
+        File file = new File( directory, "component.xml" );
+        FileUtils.fileWrite( file.getAbsolutePath(), COMPONENT );
+
+        Component first = DescriptorCache.getComponent( file );
+
+        FileSet fileSet = (FileSet) first.getFileSets().get( 0 );
+        fileSet.addExclude( "**/*.bak" );
+        fileSet.setOutputDirectory( "changed" );
+        first.addFile( new FileItem() );
+        first.addDependencySet( new DependencySet() );
+
+        Component second = DescriptorCache.getComponent( file );
+
+        assertNotSame( first, second );
+        assertEquals( 1, second.getFileSets().size() );
+        fileSet = (FileSet) second.getFileSets().get( 0 );
+        assertEquals( Collections.singletonList( "drafts/**" ), fileSet.getExcludes() );
+        assertEquals( null, fileSet.getOutputDirectory() );
+        assertEquals( 1, second.getFiles().size() );
+        assertEquals( 0, second.getDependencySets().size() );
+    }
+}
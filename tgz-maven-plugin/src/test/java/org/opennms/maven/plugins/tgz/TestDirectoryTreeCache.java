@@ -0,0 +1,135 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDirectoryTreeCache
+{
+    private static final String[] FILES = {
+        "README.txt",
+        "bin/start.sh",
+        "bin/stop.sh",
+        "etc/config.properties",
+        "etc/.svn/entries",
+        "etc/.svn/text-base/config.properties.svn-base",
+        "lib/core.jar",
+        "lib/target/classes/Core.class",
+        "target/classes/Main.class",
+        "target/report.txt",
+        "src/main/java/Main.java",
+        "src/main/java/CVS/Entries",
+        "src/target/generated.txt" };
+
+    private File directory;
+
+    private DirectoryTreeCache cache;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+        for ( int i = 0; i < FILES.length; i++ )
+        {
+            TestStreamingTarArchiver.writeFile( directory, FILES[i], FILES[i].getBytes( "UTF-8" ) );
+        }
+        new File( directory, "empty/nested" ).mkdirs();
+
+        cache = new DirectoryTreeCache();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testEverything()
+        throws IOException
+    {
+        assertSameAsScanner( null, null );
+    }
+
+    @Test
+    public void testIncludes()
+        throws IOException
+    {
+        assertSameAsScanner( new String[] { "bin/**", "**/*.properties" }, null );
+        assertSameAsScanner( new String[] { "etc/" }, null );
+        assertSameAsScanner( new String[] { "*.txt" }, null );
+    }
+
+    @Test
+    public void testExcludedDirectoryTrees()
+        throws IOException
+    {
+        assertSameAsScanner( null, new String[] { "target/**" } );
+        assertSameAsScanner( null, new String[] { "**/target/**" } );
+        assertSameAsScanner( null, new String[] { "lib/", "src/**" } );
+        assertSameAsScanner( new String[] { "**/*.class" }, new String[] { "**/target/**" } );
+    }
+
+    @Test
+    public void testExcludedDirectoryKeepsFilesBelowIt()
+        throws IOException
+    {
+        // only the directory itself is excluded, as with the directory scanner
+        assertSameAsScanner( null, new String[] { "target", "**/java" } );
+    }
+
+    @Test
+    public void testTreeIsShared()
+        throws IOException
+    {
+        assertSameAsScanner( new String[] { "bin/**" }, null );
+
+        TestStreamingTarArchiver.writeFile( directory, "bin/added.sh", new byte[0] );
+
+        // the tree walked before is used
+        DirectoryTreeCache.Scan scan = cache.scan( directory, new String[] { "bin/**" }, null );
+        assertEquals( Arrays.asList( new String[] { "bin" + File.separator + "start.sh",
+            "bin" + File.separator + "stop.sh" } ), sorted( scan.getIncludedFiles() ) );
+    }
+
+    private void assertSameAsScanner( String[] includes, String[] excludes )
+        throws IOException
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir( directory );
+        if ( includes != null )
+        {
+            scanner.setIncludes( includes );
+        }
+        if ( excludes != null )
+        {
+            scanner.setExcludes( excludes );
+        }
+        scanner.addDefaultExcludes();
+        scanner.scan();
+
+        DirectoryTreeCache.Scan scan = cache.scan( directory, includes, excludes );
+
+        assertEquals( sorted( scanner.getIncludedFiles() ), sorted( scan.getIncludedFiles() ) );
+        assertEquals( sorted( scanner.getIncludedDirectories() ), sorted( scan.getIncludedDirectories() ) );
+    }
+
+    private static List sorted( String[] paths )
+    {
+        List list = Arrays.asList( (String[]) paths.clone() );
+        Collections.sort( list );
+        return list;
+    }
+}
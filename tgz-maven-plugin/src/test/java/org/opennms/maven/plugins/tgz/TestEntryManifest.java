@@ -0,0 +1,184 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestEntryManifest
+{
+    private File directory;
+
+    private File source;
+
+    private ContentDigests digests;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+        source = new File( directory, "source" );
+        source.mkdirs();
+        digests = new ContentDigests();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testWriteAndRead()
+        throws IOException
+    {
+        StagingStore store = new StagingStore( new File( directory, "staged" ), 1024, 1024 );
+        List entries = new ArrayList();
+        entries.add( new AssemblyEntryPlan.Entry( source, "dir", 0755, true ) );
+        entries.add( file( "dir/plain.txt", "plain\n", 0644 ) );
+        entries.add( new AssemblyEntryPlan.Entry( write( "lines.txt", "one\ntwo\n" ), null, "dir/lines.txt", 0644,
+                                                  false, "\r\n" ) );
+        entries.add( new AssemblyEntryPlan.Entry( source, store.stage( "filtered\n".getBytes( "UTF-8" ), "f.txt" ),
+                                                  "dir/filtered.txt", 0600 ) );
+        AssemblyEntryPlan plan = new AssemblyEntryPlan( entries );
+
+        EntryManifest manifest = EntryManifest.create( plan, digests );
+        File archive = new File( directory, "test.tar.gz" );
+        manifest.write( archive );
+
+        File manifestFile = EntryManifest.getManifestFile( archive );
+        assertEquals( "- 755 dir/\n"
+            + sha1( "plain\n" ) + " 644 dir/plain.txt\n"
+            + sha1( "one\r\ntwo\r\n" ) + " 644 dir/lines.txt\n"
+            + sha1( "filtered\n" ) + " 600 dir/filtered.txt\n", FileUtils.fileRead( manifestFile ) );
+
+        assertUnchanged( plan, manifest, EntryManifest.read( archive ) );
+        assertUnchanged( plan, manifest, EntryManifest.read( manifestFile ) );
+    }
+
+    @Test
+    public void testReadTarBaseline()
+        throws Exception
+    {
+        List entries = new ArrayList();
+        entries.add( new AssemblyEntryPlan.Entry( source, "dir", 0750, true ) );
+        entries.add( file( "dir/first.txt", "same contents\n", 0644 ) );
+        entries.add( file( "dir/second.txt", "same contents\n", 0755 ) );
+        entries.add( file( "dir/other.txt", "other contents\n", 0600 ) );
+        AssemblyEntryPlan plan = new AssemblyEntryPlan( entries );
+
+        // the duplicate is written as a hard link, which has the contents of its target
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 1, 32 * 1024 ) );
+        archiver.setHardlinkDuplicates( true );
+        archiver.addEntries( plan.getEntries() );
+        File archive = new File( directory, "baseline.tar.gz" );
+        archiver.setDestFile( archive );
+        archiver.createArchive();
+
+        assertFalse( EntryManifest.getManifestFile( archive ).exists() );
+        assertUnchanged( plan, EntryManifest.create( plan, digests ), EntryManifest.read( archive ) );
+    }
+
+    @Test
+    public void testReadZipBaseline()
+        throws IOException
+    {
+        File archive = new File( directory, "baseline.zip" );
+        ZipOutputStream zOut = new ZipOutputStream( new FileOutputStream( archive ) );
+        zOut.putNextEntry( new ZipEntry( "dir/" ) );
+        zOut.putNextEntry( new ZipEntry( "dir/plain.txt" ) );
+        zOut.write( "plain\n".getBytes( "UTF-8" ) );
+        zOut.putNextEntry( new ZipEntry( "dir/gone.txt" ) );
+        zOut.close();
+
+        List entries = new ArrayList();
+        entries.add( new AssemblyEntryPlan.Entry( source, "dir", 0755, true ) );
+        entries.add( file( "dir/plain.txt", "plain\n", 0600 ) );
+        AssemblyEntryPlan plan = new AssemblyEntryPlan( entries );
+
+        EntryManifest manifest = EntryManifest.create( plan, digests );
+        EntryManifest baseline = EntryManifest.read( archive );
+
+        // zip archives have no unix modes, so only the contents are compared
+        assertUnchanged( plan, manifest, baseline );
+        assertEquals( Collections.singletonList( "dir/gone.txt" ), manifest.getRemoved( baseline ) );
+    }
+
+    @Test
+    public void testDelta()
+        throws IOException
+    {
+        List baselineEntries = new ArrayList();
+        baselineEntries.add( new AssemblyEntryPlan.Entry( source, "old", 0755, true ) );
+        baselineEntries.add( file( "same.txt", "same\n", 0644 ) );
+        baselineEntries.add( file( "contents.txt", "before\n", 0644 ) );
+        baselineEntries.add( file( "mode.sh", "#!/bin/sh\n", 0644 ) );
+        baselineEntries.add( file( "old/removed.txt", "removed\n", 0644 ) );
+        EntryManifest baseline = EntryManifest.create( new AssemblyEntryPlan( baselineEntries ), digests );
+        File baselineArchive = new File( directory, "baseline.tar" );
+        baseline.write( baselineArchive );
+        baseline = EntryManifest.read( baselineArchive );
+
+        AssemblyEntryPlan.Entry same = file( "same.txt", "same\n", 0644 );
+        AssemblyEntryPlan.Entry contents = file( "contents.txt", "after\n", 0644 );
+        AssemblyEntryPlan.Entry mode = file( "mode.sh", "#!/bin/sh\n", 0755 );
+        AssemblyEntryPlan.Entry added = file( "added.txt", "added\n", 0644 );
+        AssemblyEntryPlan plan = new AssemblyEntryPlan( Arrays.asList( new Object[] { same, contents, mode, added } ) );
+        EntryManifest manifest = EntryManifest.create( plan, digests );
+
+        assertFalse( manifest.isChanged( same, baseline ) );
+        assertTrue( manifest.isChanged( contents, baseline ) );
+        assertTrue( manifest.isChanged( mode, baseline ) );
+        assertTrue( manifest.isChanged( added, baseline ) );
+
+        File removalList = new File( directory, "test-delta-removed.txt" );
+        List removed = manifest.writeRemoved( baseline, removalList );
+        assertEquals( Arrays.asList( new String[] { "old/", "old/removed.txt" } ), removed );
+        assertEquals( "old/\nold/removed.txt\n", FileUtils.fileRead( removalList ) );
+    }
+
+    private AssemblyEntryPlan.Entry file( String path, String contents, int mode )
+        throws IOException
+    {
+        return new AssemblyEntryPlan.Entry( write( path.replace( '/', '_' ) + "-" + mode, contents ), path, mode,
+                                            false );
+    }
+
+    private File write( String name, String contents )
+        throws IOException
+    {
+        return TestStreamingTarArchiver.writeFile( source, name, contents.getBytes( "UTF-8" ) );
+    }
+
+    private static String sha1( String contents )
+        throws IOException
+    {
+        return ContentDigests.toHex( ContentDigests.newDigest( "SHA-1" ).digest( contents.getBytes( "UTF-8" ) ) );
+    }
+
+    private static void assertUnchanged( AssemblyEntryPlan plan, EntryManifest manifest, EntryManifest baseline )
+    {
+        for ( Iterator i = plan.getEntries().iterator(); i.hasNext(); )
+        {
+            AssemblyEntryPlan.Entry entry = (AssemblyEntryPlan.Entry) i.next();
+            assertFalse( entry.getPath(), manifest.isChanged( entry, baseline ) );
+        }
+    }
+}
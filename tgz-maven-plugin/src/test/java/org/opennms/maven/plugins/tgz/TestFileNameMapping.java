@@ -0,0 +1,161 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.codehaus.plexus.util.introspection.ReflectionValueExtractor;
+import org.junit.Test;
+
+public class TestFileNameMapping
+{
+    private static final String DEFAULT_MAPPING = "${artifactId}-${version}.${extension}";
+
+    private static final String[] MAPPINGS = {
+        DEFAULT_MAPPING,
+        "${groupId}/${artifactId}-${baseVersion}.${extension}",
+        "${artifactId}",
+        "${artifactId}-${type}-${scope}.jar",
+        "${artifactId}-${classifier}.${ extension }",
+        "lib/${artifactHandler.extension}/${artifactId}",
+        "${unknown}-${artifactId}.${extension}",
+        "${artifactId}-${}.jar",
+        "${a${artifactId}}.jar",
+        "${artifactId",
+        "plain.jar",
+        "}${version}}" };
+
+    @Test
+    public void testDefaultMapping()
+        throws Exception
+    {
+        assertEquals( "foo-1.0.jar", FileNameMapping.getFileName( artifact( "1.0", null ), DEFAULT_MAPPING ) );
+    }
+
+    @Test
+    public void testClassifier()
+        throws Exception
+    {
+        Artifact artifact = artifact( "1.0", "sources" );
+        assertEquals( "foo-1.0-sources.jar", FileNameMapping.getFileName( artifact, DEFAULT_MAPPING ) );
+        assertEquals( "foo-sources", FileNameMapping.getFileName( artifact, "${artifactId}" ) );
+    }
+
+    @Test
+    public void testMissingVersion()
+        throws Exception
+    {
+        Artifact artifact = artifact( null, null );
+        assertEquals( "foo-${version}.jar", FileNameMapping.getFileName( artifact, DEFAULT_MAPPING ) );
+    }
+
+    @Test
+    public void testUnknownExpressions()
+        throws Exception
+    {
+        Artifact artifact = artifact( "1.0", null );
+        assertEquals( "${unknown}-foo.jar",
+                      FileNameMapping.getFileName( artifact, "${unknown}-${artifactId}.${extension}" ) );
+        assertEquals( "lib/jar/foo",
+                      FileNameMapping.getFileName( artifact, "lib/${artifactHandler.extension}/${artifactId}" ) );
+        assertEquals( "foo-${}.jar", FileNameMapping.getFileName( artifact, "${artifactId}-${}.jar" ) );
+    }
+
+    @Test
+    public void testLiteral()
+        throws Exception
+    {
+        assertEquals( "plain.jar", FileNameMapping.getFileName( artifact( "1.0", null ), "plain.jar" ) );
+    }
+
+    @Test
+    public void testCompiledOnce()
+    {
+        assertSame( FileNameMapping.getInstance( DEFAULT_MAPPING ), FileNameMapping.getInstance( DEFAULT_MAPPING ) );
+    }
+
+    @Test
+    public void testSameAsRegularExpression()
+        throws Exception
+    {
+        Artifact[] artifacts = { artifact( "1.0", null ), artifact( "1.0", "sources" ), artifact( null, null ),
+            artifact( null, "tests" ) };
+
+        for ( int i = 0; i < MAPPINGS.length; i++ )
+        {
+            for ( int j = 0; j < artifacts.length; j++ )
+            {
+                if ( artifacts[j].getVersion() == null && MAPPINGS[i].indexOf( "baseVersion" ) != -1 )
+                {
+                    // the base version of an artifact without a version cannot be read
+                    continue;
+                }
+                assertEquals( MAPPINGS[i], evaluateWithRegularExpression( artifacts[j], MAPPINGS[i] ),
+                              FileNameMapping.getFileName( artifacts[j], MAPPINGS[i] ) );
+            }
+        }
+    }
+
+    private static Artifact artifact( String version, String classifier )
+        throws Exception
+    {
+        VersionRange range = version != null ? VersionRange.createFromVersion( version )
+                        : VersionRange.createFromVersionSpec( "[1.0,2.0)" );
+        return new DefaultArtifact( "org.opennms.test", "foo", range, Artifact.SCOPE_RUNTIME, "jar", classifier,
+                                    new DefaultArtifactHandler( "jar" ) );
+    }
+
+    /**
+     * The evaluation the plugin did before mappings were compiled.
+     */
+    private static String evaluateWithRegularExpression( Artifact artifact, String mapping )
+        throws Exception
+    {
+        String fileNameMapping = mapping;
+        if ( artifact.getClassifier() != null && artifact.getClassifier().length() > 0 )
+        {
+            int dotIdx = fileNameMapping.lastIndexOf( "." );
+            if ( dotIdx >= 0 )
+            {
+                fileNameMapping = fileNameMapping.substring( 0, dotIdx ) + "-" + artifact.getClassifier() + "."
+                    + fileNameMapping.substring( dotIdx + 1 );
+            }
+            else
+            {
+                fileNameMapping = fileNameMapping + "-" + artifact.getClassifier();
+            }
+        }
+        return evaluateWithRegularExpression( fileNameMapping, artifact );
+    }
+
+    private static String evaluateWithRegularExpression( String expression, Artifact artifact )
+        throws Exception
+    {
+        Matcher mat = Pattern.compile( "^(.*)\\$\\{([^\\}]+)\\}(.*)$" ).matcher( expression );
+        if ( !mat.matches() )
+        {
+            return expression;
+        }
+
+        String left = evaluateWithRegularExpression( mat.group( 1 ), artifact );
+        Object middle = ReflectionValueExtractor.evaluate( mat.group( 2 ), artifact, false );
+        if ( middle == null )
+        {
+            if ( "extension".equals( mat.group( 2 ).trim() ) )
+            {
+                middle = artifact.getArtifactHandler().getExtension();
+            }
+            else
+            {
+                middle = "${" + mat.group( 2 ) + "}";
+            }
+        }
+        return left + middle + mat.group( 3 );
+    }
+}
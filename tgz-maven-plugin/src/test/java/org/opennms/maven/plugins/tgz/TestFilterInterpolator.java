@@ -0,0 +1,156 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFilterInterpolator
+{
+    private File directory;
+
+    private Map properties;
+
+    private MavenProject project;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+
+        properties = new HashMap();
+        properties.put( "greeting", "hello" );
+        properties.put( "name", "${project.artifactId}" );
+        properties.put( "message", "${greeting} ${name} ${project.version}" );
+        properties.put( "artifactId", "filtered" );
+        properties.put( "first", "1${second}" );
+        properties.put( "second", "2${first}" );
+        properties.put( "self", "x${self}" );
+
+        Model model = new Model();
+        model.setGroupId( "org.opennms.test" );
+        model.setArtifactId( "test-assembly" );
+        model.setVersion( "1.0" );
+        project = new MavenProject( model );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testFilterProperties()
+    {
+        assertEquals( "say hello", interpolate( "say ${greeting}" ) );
+        assertEquals( "filtered", interpolate( "${artifactId}" ) );
+    }
+
+    @Test
+    public void testProjectModel()
+    {
+        assertEquals( "test-assembly-1.0", interpolate( "${project.artifactId}-${project.version}" ) );
+    }
+
+    @Test
+    public void testUnknownTokensAreKept()
+    {
+        assertEquals( "${unknown} and ${project.unknown}", interpolate( "${unknown} and ${project.unknown}" ) );
+        assertEquals( "unterminated ${greeting", interpolate( "unterminated ${greeting" ) );
+    }
+
+    @Test
+    public void testFilterReferringToProjectModel()
+    {
+        assertEquals( "test-assembly", interpolate( "${name}" ) );
+    }
+
+    @Test
+    public void testFilterReferringToFilters()
+    {
+        assertEquals( "hello test-assembly 1.0", interpolate( "${message}" ) );
+    }
+
+    @Test
+    public void testCyclicReferencesAreKept()
+    {
+        assertEquals( "12${first}", interpolate( "${first}" ) );
+        assertEquals( "21${second}", interpolate( "${second}" ) );
+        assertEquals( "x${self}", interpolate( "${self}" ) );
+    }
+
+    @Test
+    public void testFilterIntoStore()
+        throws IOException
+    {
+        File source = new File( directory, "test.txt" );
+        write( source, "caf\u00e9 ${greeting}\r\n${message}\rlast", "UTF-8" );
+
+        StagingStore store = new StagingStore( new File( directory, "staged" ), 1024, 1024 );
+
+        FilterInterpolator interpolator = new FilterInterpolator( properties, project, "\n", "UTF-8" );
+        assertEquals( "caf\u00e9 hello\nhello test-assembly 1.0\nlast\n",
+                      read( interpolator.filter( source, null, store ), "UTF-8" ) );
+        assertEquals( "caf\u00e9 hello\r\nhello test-assembly 1.0\r\nlast\r\n",
+                      read( interpolator.filter( source, "\r\n", store ), "UTF-8" ) );
+
+        store.delete();
+    }
+
+    @Test
+    public void testEncoding()
+        throws IOException
+    {
+        File source = new File( directory, "latin1.txt" );
+        write( source, "\u00e9t\u00e9 ${greeting}\n", "ISO-8859-1" );
+
+        StagingStore store = new StagingStore( new File( directory, "staged" ), 1024, 1024 );
+
+        FilterInterpolator interpolator = new FilterInterpolator( properties, project, "\n", "ISO-8859-1" );
+        StagingStore.Content content = interpolator.filter( source, null, store );
+        assertEquals( "\u00e9t\u00e9 hello\n", read( content, "ISO-8859-1" ) );
+        assertEquals( 10, content.getLength() );
+
+        store.delete();
+    }
+
+    private String interpolate( String text )
+    {
+        return new FilterInterpolator( properties, project, "\n", "UTF-8" ).interpolate( text, false );
+    }
+
+    private static void write( File file, String text, String encoding )
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( text.getBytes( encoding ) );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    private static String read( StagingStore.Content content, String encoding )
+        throws IOException
+    {
+        return new String( TestParallelGZIPOutputStream.readFully( content.openStream() ), encoding );
+    }
+}
@@ -0,0 +1,134 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class TestIndexedGZIPOutputStream
+{
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private static final int MEMBER_SIZE = 4 * 1024;
+
+    @Test
+    public void testEmpty()
+        throws IOException
+    {
+        byte[] compressed = compress( new byte[0], new long[0] );
+
+        assertArrayEquals( new byte[0], TestParallelGZIPOutputStream.gunzip( compressed ) );
+    }
+
+    @Test
+    public void testSmallerThanOneMember()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( 1000 ), new long[] { 0, 100, 900 } );
+    }
+
+    @Test
+    public void testExactlyOneBlock()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( BLOCK_SIZE ), new long[0] );
+    }
+
+    @Test
+    public void testManyMembers()
+        throws IOException
+    {
+        byte[] data = TestParallelGZIPOutputStream.text( 10 * BLOCK_SIZE + 77 );
+
+        long[] boundaries = new long[200];
+        for ( int i = 0; i < boundaries.length; i++ )
+        {
+            boundaries[i] = i * 1637L;
+        }
+        assertRoundTrip( data, boundaries );
+    }
+
+    @Test
+    public void testBoundariesAtBlockEnds()
+        throws IOException
+    {
+        byte[] data = TestParallelGZIPOutputStream.random( 4 * BLOCK_SIZE );
+        assertRoundTrip( data, new long[] { BLOCK_SIZE - 1, BLOCK_SIZE, 2 * BLOCK_SIZE, 3 * BLOCK_SIZE + 1,
+            4 * BLOCK_SIZE - 1 } );
+    }
+
+    /**
+     * Compresses the data with the given boundaries marked, then checks that the whole stream inflates
+     * back, and that inflating from the position of each boundary yields the data from that offset on.
+     */
+    private static void assertRoundTrip( byte[] data, long[] boundaries )
+        throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        IndexedGZIPOutputStream out = new IndexedGZIPOutputStream( compressed, 3, BLOCK_SIZE, MEMBER_SIZE,
+                                                                   Deflater.DEFAULT_COMPRESSION );
+        write( out, data, boundaries );
+        out.close();
+
+        byte[] archive = compressed.toByteArray();
+        assertArrayEquals( data, TestParallelGZIPOutputStream.gunzip( archive ) );
+
+        for ( int i = 0; i < boundaries.length; i++ )
+        {
+            long[] position = out.getPosition( boundaries[i] );
+            assertTrue( "member offset out of range", position[0] >= 0 && position[0] < archive.length );
+
+            InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream( archive, (int) position[0], archive.length - (int) position[0] ) );
+            byte[] tail = TestParallelGZIPOutputStream.readFully( in );
+
+            assertTrue( "member of " + boundaries[i] + " starts after it", position[1] >= 0 );
+            assertEquals( "bytes inflated from the member of " + boundaries[i],
+                          data.length - boundaries[i] + position[1], tail.length );
+            for ( int j = 0; j < Math.min( 512, data.length - boundaries[i] ); j++ )
+            {
+                assertEquals( "byte " + ( boundaries[i] + j ), data[(int) boundaries[i] + j],
+                              tail[(int) position[1] + j] );
+            }
+        }
+    }
+
+    private static byte[] compress( byte[] data, long[] boundaries )
+        throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        IndexedGZIPOutputStream out = new IndexedGZIPOutputStream( compressed, 2, BLOCK_SIZE, MEMBER_SIZE,
+                                                                   Deflater.DEFAULT_COMPRESSION );
+        write( out, data, boundaries );
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Writes the data in uneven pieces, marking each boundary before the data reaches it.
+     */
+    private static void write( IndexedGZIPOutputStream out, byte[] data, long[] boundaries )
+        throws IOException
+    {
+        int next = 0;
+        int offset = 0;
+        while ( offset < data.length )
+        {
+            while ( next < boundaries.length && boundaries[next] <= offset + 3000 )
+            {
+                out.markBoundary( boundaries[next++] );
+            }
+            int count = Math.min( 2999, data.length - offset );
+            out.write( data, offset, count );
+            offset += count;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+public class TestLineEndingInputStream
+{
+    private static final String[] LINE_ENDINGS = { "\n", "\r\n" };
+
+    @Test
+    public void testLineFeeds()
+        throws IOException
+    {
+        assertConverted( "one\ntwo\nthree\n" );
+    }
+
+    @Test
+    public void testCarriageReturns()
+        throws IOException
+    {
+        assertConverted( "one\rtwo\rthree\r" );
+    }
+
+    @Test
+    public void testCarriageReturnLineFeeds()
+        throws IOException
+    {
+        assertConverted( "one\r\ntwo\r\nthree\r\n" );
+    }
+
+    @Test
+    public void testMixedLineEndings()
+        throws IOException
+    {
+        assertConverted( "one\r\ntwo\nthree\rfour\n\r\n\r\rfive\n\n" );
+    }
+
+    @Test
+    public void testNoFinalLineEnding()
+        throws IOException
+    {
+        assertConverted( "one\ntwo" );
+        assertConverted( "one\r\ntwo\rthree" );
+        assertConverted( "single line" );
+    }
+
+    @Test
+    public void testEmpty()
+        throws IOException
+    {
+        assertConverted( "" );
+    }
+
+    @Test
+    public void testOnlyLineEndings()
+        throws IOException
+    {
+        assertConverted( "\n" );
+        assertConverted( "\r" );
+        assertConverted( "\r\n" );
+        assertConverted( "\n\n\r\r\n" );
+    }
+
+    @Test
+    public void testCarriageReturnLineFeedAcrossBufferBoundary()
+        throws IOException
+    {
+        // the buffer of the stream holds 8192 bytes, so the "\r" ends the first read and the "\n" starts the next
+        StringBuffer text = new StringBuffer();
+        for ( int i = 0; i < 8191; i++ )
+        {
+            text.append( (char) ( 'a' + i % 26 ) );
+        }
+        text.append( "\r\nnext line\r\n" );
+
+        assertConverted( text.toString() );
+    }
+
+    @Test
+    public void testLargeText()
+        throws IOException
+    {
+        assertConverted( new String( TestParallelGZIPOutputStream.text( 100000 ), "ISO-8859-1" ) );
+    }
+
+    @Test
+    public void testConvertedLength()
+        throws IOException
+    {
+        File file = File.createTempFile( "lineendings", ".txt" );
+        try
+        {
+            String text = "one\r\ntwo\rthree\nfour";
+            OutputStream out = new FileOutputStream( file );
+            try
+            {
+                out.write( text.getBytes( "ISO-8859-1" ) );
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+
+            for ( int i = 0; i < LINE_ENDINGS.length; i++ )
+            {
+                assertEquals( copyReplacingLineEndings( text, LINE_ENDINGS[i] ).length(),
+                              LineEndingInputStream.getConvertedLength( file, LINE_ENDINGS[i] ) );
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks the stream against the line by line copy it replaces, reading it in large blocks, one byte at a
+     * time, and from an underlying stream that returns a byte per read.
+     */
+    private static void assertConverted( String text )
+        throws IOException
+    {
+        byte[] bytes = text.getBytes( "ISO-8859-1" );
+
+        for ( int i = 0; i < LINE_ENDINGS.length; i++ )
+        {
+            String expected = copyReplacingLineEndings( text, LINE_ENDINGS[i] );
+
+            InputStream in = new LineEndingInputStream( new ByteArrayInputStream( bytes ), LINE_ENDINGS[i] );
+            assertEquals( expected, new String( TestParallelGZIPOutputStream.readFully( in ), "ISO-8859-1" ) );
+
+            in = new LineEndingInputStream( new ByteArrayInputStream( bytes ), LINE_ENDINGS[i] );
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int b;
+            while ( ( b = in.read() ) != -1 )
+            {
+                out.write( b );
+            }
+            assertEquals( expected, new String( out.toByteArray(), "ISO-8859-1" ) );
+
+            in = new LineEndingInputStream( new TricklingInputStream( new ByteArrayInputStream( bytes ) ),
+                                            LINE_ENDINGS[i] );
+            assertEquals( expected, new String( TestParallelGZIPOutputStream.readFully( in ), "ISO-8859-1" ) );
+        }
+    }
+
+    /**
+     * The conversion the plugin did before the stream existed.
+     */
+    private static String copyReplacingLineEndings( String text, String lineEndings )
+        throws IOException
+    {
+        BufferedReader in = new BufferedReader( new StringReader( text ) );
+        StringBuffer out = new StringBuffer();
+
+        String line;
+        while ( ( line = in.readLine() ) != null )
+        {
+            out.append( line );
+            out.append( lineEndings );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Returns a single byte per read, like a slow network stream.
+     */
+    private static class TricklingInputStream
+        extends FilterInputStream
+    {
+        TricklingInputStream( InputStream in )
+        {
+            super( in );
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            return super.read( b, off, Math.min( len, 1 ) );
+        }
+
+        public int available()
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class TestParallelGZIPOutputStream
+{
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    @Test
+    public void testEmpty()
+        throws IOException
+    {
+        assertRoundTrip( new byte[0] );
+    }
+
+    @Test
+    public void testSmallerThanOneBlock()
+        throws IOException
+    {
+        assertRoundTrip( text( 1000 ) );
+    }
+
+    @Test
+    public void testExactlyOneBlock()
+        throws IOException
+    {
+        assertRoundTrip( text( BLOCK_SIZE ) );
+    }
+
+    @Test
+    public void testExactlyTwoBlocks()
+        throws IOException
+    {
+        assertRoundTrip( random( 2 * BLOCK_SIZE ) );
+    }
+
+    @Test
+    public void testManyBlocks()
+        throws IOException
+    {
+        assertRoundTrip( text( 20 * BLOCK_SIZE + 123 ) );
+        assertRoundTrip( random( 20 * BLOCK_SIZE + 123 ) );
+    }
+
+    @Test
+    public void testSingleByteWrites()
+        throws IOException
+    {
+        byte[] data = text( 3 * BLOCK_SIZE + 7 );
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out =
+            new ParallelGZIPOutputStream( compressed, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION );
+        for ( int i = 0; i < data.length; i += 1000 )
+        {
+            int count = Math.min( 1000, data.length - i );
+            if ( i % 2000 == 0 )
+            {
+                out.write( data, i, count );
+            }
+            else
+            {
+                for ( int j = i; j < i + count; j++ )
+                {
+                    out.write( data[j] );
+                }
+            }
+        }
+        out.close();
+
+        assertArrayEquals( data, gunzip( compressed.toByteArray() ) );
+    }
+
+    /**
+     * Each block is primed with the last 32k of the one before, so a chunk repeated across block boundaries
+     * compresses to about one copy; without the dictionary every block would hold a copy of its own.
+     */
+    @Test
+    public void testDictionaryHandover()
+        throws IOException
+    {
+        byte[] chunk = random( 8 * 1024 );
+        byte[] data = new byte[64 * chunk.length];
+        for ( int i = 0; i < 64; i++ )
+        {
+            System.arraycopy( chunk, 0, data, i * chunk.length, chunk.length );
+        }
+
+        byte[] compressed = gzip( data, 4, BLOCK_SIZE );
+
+        assertArrayEquals( data, gunzip( compressed ) );
+        assertTrue( "blocks were not primed with the previous block: " + compressed.length + " bytes",
+                    compressed.length < 3 * chunk.length );
+    }
+
+    /**
+     * A block shorter than 32k is primed with the end of the blocks before it as well, so back references
+     * of the block after it still point at the right bytes.
+     */
+    @Test
+    public void testShortBlocks()
+        throws IOException
+    {
+        byte[] chunk = random( 8 * 1024 );
+        byte[] data = new byte[16 * chunk.length];
+        for ( int i = 0; i < 16; i++ )
+        {
+            System.arraycopy( chunk, 0, data, i * chunk.length, chunk.length );
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out =
+            new ParallelGZIPOutputStream( compressed, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION );
+        out.write( data, 0, BLOCK_SIZE );
+        int[] ends = { BLOCK_SIZE + 1000, BLOCK_SIZE + 1500, BLOCK_SIZE + 20000, 3 * BLOCK_SIZE };
+        int offset = BLOCK_SIZE;
+        for ( int i = 0; i < ends.length; i++ )
+        {
+            out.write( data, offset, ends[i] - offset );
+            out.endBlock();
+            offset = ends[i];
+        }
+        out.write( data, offset, data.length - offset );
+        out.close();
+
+        assertArrayEquals( data, gunzip( compressed.toByteArray() ) );
+    }
+
+    @Test
+    public void testDictionaryAcrossBlocks()
+    {
+        byte[] first = random( BLOCK_SIZE + 10 );
+        byte[] dictionary = ParallelGZIPOutputStream.getDictionary( null, first, first.length );
+        assertEquals( BLOCK_SIZE, dictionary.length );
+        assertEquals( first[10], dictionary[0] );
+
+        byte[] second = { 1, 2, 3 };
+        dictionary = ParallelGZIPOutputStream.getDictionary( dictionary, second, 2 );
+        assertEquals( BLOCK_SIZE, dictionary.length );
+        assertEquals( first[12], dictionary[0] );
+        assertEquals( first[first.length - 1], dictionary[BLOCK_SIZE - 3] );
+        assertEquals( 1, dictionary[BLOCK_SIZE - 2] );
+        assertEquals( 2, dictionary[BLOCK_SIZE - 1] );
+
+        dictionary = ParallelGZIPOutputStream.getDictionary( null, second, 3 );
+        assertArrayEquals( second, dictionary );
+    }
+
+    @Test
+    public void testSharedExecutor()
+        throws IOException
+    {
+        ExecutorService executor = ParallelBlockOutputStream.newExecutor( 2, "test" );
+        try
+        {
+            byte[] first = text( 5 * BLOCK_SIZE + 1 );
+            byte[] second = random( 3 * BLOCK_SIZE );
+
+            ByteArrayOutputStream firstCompressed = new ByteArrayOutputStream();
+            ByteArrayOutputStream secondCompressed = new ByteArrayOutputStream();
+            ParallelGZIPOutputStream firstOut =
+                new ParallelGZIPOutputStream( firstCompressed, executor, 2, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION );
+            ParallelGZIPOutputStream secondOut =
+                new ParallelGZIPOutputStream( secondCompressed, executor, 2, BLOCK_SIZE, Deflater.BEST_SPEED );
+
+            for ( int i = 0; i < 3 * BLOCK_SIZE; i += BLOCK_SIZE / 2 )
+            {
+                firstOut.write( first, i, BLOCK_SIZE / 2 );
+                secondOut.write( second, i, BLOCK_SIZE / 2 );
+            }
+            firstOut.write( first, 3 * BLOCK_SIZE, first.length - 3 * BLOCK_SIZE );
+            firstOut.close();
+            secondOut.close();
+
+            assertFalse( "closing a stream shut the shared executor down", executor.isShutdown() );
+            assertArrayEquals( first, gunzip( firstCompressed.toByteArray() ) );
+            assertArrayEquals( second, gunzip( secondCompressed.toByteArray() ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseTwice()
+        throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out = new ParallelGZIPOutputStream( compressed, 1 );
+        out.write( text( 100 ) );
+        out.close();
+        int length = compressed.size();
+        out.close();
+
+        assertEquals( length, compressed.size() );
+    }
+
+    private static void assertRoundTrip( byte[] data )
+        throws IOException
+    {
+        assertArrayEquals( data, gunzip( gzip( data, 1, BLOCK_SIZE ) ) );
+        assertArrayEquals( data, gunzip( gzip( data, 4, BLOCK_SIZE ) ) );
+    }
+
+    static byte[] gzip( byte[] data, int threads, int blockSize )
+        throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream out =
+            new ParallelGZIPOutputStream( compressed, threads, blockSize, Deflater.DEFAULT_COMPRESSION );
+        out.write( data );
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    static byte[] gunzip( byte[] compressed )
+        throws IOException
+    {
+        return readFully( new GZIPInputStream( new ByteArrayInputStream( compressed ) ) );
+    }
+
+    static byte[] readFully( InputStream in )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ( ( count = in.read( buffer ) ) != -1 )
+            {
+                out.write( buffer, 0, count );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return compressible bytes
+     */
+    static byte[] text( int length )
+    {
+        Random random = new Random( length );
+        byte[] data = new byte[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            data[i] = (byte) ( i % 80 == 79 ? '\n' : 'a' + random.nextInt( 8 ) );
+        }
+        return data;
+    }
+
+    /**
+     * @return incompressible bytes
+     */
+    static byte[] random( int length )
+    {
+        byte[] data = new byte[length];
+        new Random( length ).nextBytes( data );
+        return data;
+    }
+}
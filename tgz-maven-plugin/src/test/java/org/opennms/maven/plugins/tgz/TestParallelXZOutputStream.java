@@ -0,0 +1,132 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+import org.tukaani.xz.XZInputStream;
+
+public class TestParallelXZOutputStream
+{
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int PRESET = 1;
+
+    @Test
+    public void testEmpty()
+        throws IOException
+    {
+        assertRoundTrip( new byte[0] );
+    }
+
+    @Test
+    public void testSmallerThanOneBlock()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( 1000 ) );
+    }
+
+    @Test
+    public void testExactlyOneBlock()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( BLOCK_SIZE ) );
+    }
+
+    @Test
+    public void testManyBlocks()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( 9 * BLOCK_SIZE + 5 ) );
+        assertRoundTrip( TestParallelGZIPOutputStream.random( 3 * BLOCK_SIZE ) );
+    }
+
+    @Test
+    public void testSingleThreadCompressor()
+        throws IOException
+    {
+        byte[] data = TestParallelGZIPOutputStream.text( 3 * BLOCK_SIZE );
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new XzCompressor( PRESET, 1, BLOCK_SIZE ).compress( compressed );
+        out.write( data );
+        out.close();
+
+        assertArrayEquals( data, unxz( compressed.toByteArray() ) );
+    }
+
+    @Test
+    public void testSharedExecutor()
+        throws IOException
+    {
+        ExecutorService executor = ParallelBlockOutputStream.newExecutor( 2, "test" );
+        try
+        {
+            byte[] data = TestParallelGZIPOutputStream.text( 5 * BLOCK_SIZE );
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            OutputStream out = new XzCompressor( PRESET, 4, BLOCK_SIZE, executor ).compress( compressed );
+            out.write( data );
+            out.close();
+
+            assertFalse( executor.isShutdown() );
+            assertArrayEquals( data, unxz( compressed.toByteArray() ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTarRoundTrip()
+        throws Exception
+    {
+        File directory = TestStreamingTarArchiver.createTempDirectory();
+        try
+        {
+            StreamingTarArchiver archiver = new StreamingTarArchiver( new XzCompressor( PRESET, 2, BLOCK_SIZE ) );
+            Map expected = TestStreamingTarArchiver.addEntries( archiver, directory );
+            File destFile = new File( directory, "test.tar.xz" );
+            archiver.setDestFile( destFile );
+            archiver.createArchive();
+
+            TestStreamingTarArchiver.assertEntries( expected, TestStreamingTarArchiver.readTar(
+                new XZInputStream( new FileInputStream( destFile ) ) ) );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( directory );
+        }
+    }
+
+    private static void assertRoundTrip( byte[] data )
+        throws IOException
+    {
+        for ( int threads = 1; threads <= 4; threads += 3 )
+        {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            ParallelXZOutputStream out = new ParallelXZOutputStream( compressed, threads, BLOCK_SIZE, PRESET );
+            out.write( data );
+            out.close();
+
+            assertArrayEquals( data, unxz( compressed.toByteArray() ) );
+        }
+    }
+
+    private static byte[] unxz( byte[] compressed )
+        throws IOException
+    {
+        return TestParallelGZIPOutputStream.readFully( new XZInputStream( new ByteArrayInputStream( compressed ) ) );
+    }
+}
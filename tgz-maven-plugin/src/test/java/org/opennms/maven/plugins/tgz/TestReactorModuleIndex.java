@@ -0,0 +1,132 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReactorModuleIndex
+{
+    private MavenProject root;
+
+    private MavenProject core;
+
+    private MavenProject features;
+
+    private MavenProject poller;
+
+    private MavenProject standalone;
+
+    private ReactorModuleIndex index;
+
+    @Before
+    public void setUp()
+    {
+        root = project( "root", null );
+        core = project( "core", root );
+        features = project( "features", root );
+        poller = project( "poller", features );
+        MavenProject collector = project( "collector", features );
+        MavenProject pollerApi = project( "poller-api", poller );
+        standalone = project( "standalone", null );
+
+        List reactorProjects = new ArrayList();
+        reactorProjects.add( root );
+        reactorProjects.add( core );
+        reactorProjects.add( standalone );
+        reactorProjects.add( poller );
+        reactorProjects.add( features );
+        reactorProjects.add( pollerApi );
+        reactorProjects.add( collector );
+        index = new ReactorModuleIndex( reactorProjects );
+    }
+
+    @Test
+    public void testDirectModules()
+    {
+        assertModules( "core features", index.getModules( root, false ) );
+        assertModules( "poller collector", index.getModules( features, false ) );
+        assertModules( "poller-api", index.getModules( poller, false ) );
+    }
+
+    @Test
+    public void testNestedModules()
+    {
+        assertModules( "core poller features poller-api collector", index.getModules( root, true ) );
+        assertModules( "poller poller-api collector", index.getModules( features, true ) );
+    }
+
+    @Test
+    public void testProjectsWithoutModules()
+    {
+        assertModules( "", index.getModules( core, false ) );
+        assertModules( "", index.getModules( core, true ) );
+        assertModules( "", index.getModules( standalone, true ) );
+    }
+
+    @Test
+    public void testProjectsWithoutParent()
+    {
+        // a parent that is not in the reactor still finds its modules
+        MavenProject external = project( "external", null );
+        MavenProject module = project( "module", external );
+
+        List reactorProjects = new ArrayList();
+        reactorProjects.add( standalone );
+        reactorProjects.add( module );
+        ReactorModuleIndex partial = new ReactorModuleIndex( reactorProjects );
+
+        assertModules( "module", partial.getModules( external, false ) );
+        assertModules( "", partial.getModules( standalone, true ) );
+    }
+
+    @Test
+    public void testParentCycle()
+    {
+        MavenProject first = project( "first", null );
+        MavenProject second = project( "second", first );
+        first.setParent( second );
+
+        List reactorProjects = new ArrayList();
+        reactorProjects.add( first );
+        reactorProjects.add( second );
+        ReactorModuleIndex cyclic = new ReactorModuleIndex( reactorProjects );
+
+        // the walk up the parents stops where it began, and the modules keep the reactor order
+        assertModules( "first second", cyclic.getModules( first, true ) );
+    }
+
+    private static void assertModules( String expected, Collection modules )
+    {
+        StringBuffer ids = new StringBuffer();
+        for ( Iterator i = modules.iterator(); i.hasNext(); )
+        {
+            if ( ids.length() > 0 )
+            {
+                ids.append( ' ' );
+            }
+            ids.append( ( (MavenProject) i.next() ).getArtifactId() );
+        }
+        assertEquals( expected, ids.toString() );
+    }
+
+    private static MavenProject project( String artifactId, MavenProject parent )
+    {
+        Model model = new Model();
+        model.setGroupId( "org.opennms" );
+        model.setArtifactId( artifactId );
+        model.setVersion( "1.0" );
+        model.setPackaging( "pom" );
+
+        MavenProject project = new MavenProject( model );
+        project.setParent( parent );
+        return project;
+    }
+}
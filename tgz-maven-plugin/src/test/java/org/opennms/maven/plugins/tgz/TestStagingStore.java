@@ -0,0 +1,149 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStagingStore
+{
+    private File directory;
+
+    private File storeDirectory;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+        storeDirectory = new File( directory, "staged" );
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testEntrySizeLimit()
+        throws IOException
+    {
+        StagingStore store = new StagingStore( storeDirectory, 10, 1000 );
+
+        StagingStore.Content small = store.stage( bytes( 10 ), "small.txt" );
+        StagingStore.Content large = store.stage( bytes( 11 ), "large.txt" );
+
+        assertTrue( small.isInMemory() );
+        assertFalse( large.isInMemory() );
+        assertEquals( 10, store.getMemoryUsed() );
+        assertEquals( 11, large.getLength() );
+        assertEquals( 11, IOUtil.toByteArray( large.openStream() ).length );
+    }
+
+    @Test
+    public void testMemoryLimit()
+        throws IOException
+    {
+        StagingStore store = new StagingStore( storeDirectory, 100, 150 );
+
+        assertTrue( store.stage( bytes( 100 ), "first.txt" ).isInMemory() );
+        assertFalse( store.stage( bytes( 100 ), "second.txt" ).isInMemory() );
+        assertTrue( store.stage( bytes( 50 ), "third.txt" ).isInMemory() );
+        assertFalse( store.stage( bytes( 1 ), "fourth.txt" ).isInMemory() );
+        assertEquals( 150, store.getMemoryUsed() );
+    }
+
+    @Test
+    public void testStageFile()
+        throws IOException
+    {
+        StagingStore store = new StagingStore( storeDirectory, 100, 100 );
+
+        StagingStore.Content content = store.stageFile( new ByteArrayInputStream( bytes( 5 ) ), "member.txt" );
+
+        assertFalse( content.isInMemory() );
+        assertEquals( 0, store.getMemoryUsed() );
+        assertTrue( content.getFile().isFile() );
+        assertEquals( 5, content.getFile().length() );
+    }
+
+    @Test
+    public void testDelete()
+        throws IOException
+    {
+        StagingStore store = new StagingStore( storeDirectory, 10, 1000 );
+
+        StagingStore.Content spilled = store.stage( bytes( 20 ), "spilled.txt" );
+        StagingStore.Content written = store.stage( bytes( 5 ), "written.txt" );
+        File writtenFile = written.getFile();
+        File emptyDirectory = store.getEmptyDirectory();
+
+        assertTrue( spilled.getFile().isFile() );
+        assertTrue( writtenFile.isFile() );
+        assertTrue( emptyDirectory.isDirectory() );
+
+        store.delete();
+
+        assertFalse( spilled.getFile().exists() );
+        assertFalse( writtenFile.exists() );
+        assertFalse( emptyDirectory.exists() );
+        assertFalse( storeDirectory.exists() );
+    }
+
+    @Test
+    public void testFilteredFilesWithTheSameName()
+        throws IOException
+    {
+        File first = new File( directory, "a/config.properties" );
+        File second = new File( directory, "b/config.properties" );
+        first.getParentFile().mkdirs();
+        second.getParentFile().mkdirs();
+        FileUtils.fileWrite( first.getAbsolutePath(), "value=${first}\n" );
+        FileUtils.fileWrite( second.getAbsolutePath(), "value=${second}\n" );
+
+        HashMap properties = new HashMap();
+        properties.put( "first", "one" );
+        properties.put( "second", "two" );
+        Model model = new Model();
+        model.setArtifactId( "test" );
+        FilterInterpolator interpolator = new FilterInterpolator( properties, new MavenProject( model ), "\n", "UTF-8" );
+
+        // nothing fits in memory, so both are spilled
+        StagingStore store = new StagingStore( storeDirectory, 0, 0 );
+        StagingStore.Content firstContent = interpolator.filter( first, "\r\n", store );
+        StagingStore.Content secondContent = interpolator.filter( second, null, store );
+
+        assertFalse( firstContent.getFile().equals( secondContent.getFile() ) );
+        assertEquals( "value=one\r\n", FileUtils.fileRead( firstContent.getFile() ) );
+        assertEquals( "value=two\n", FileUtils.fileRead( secondContent.getFile() ) );
+        assertEquals( 0, store.getMemoryUsed() );
+
+        store.delete();
+        assertFalse( firstContent.getFile().exists() );
+        assertFalse( secondContent.getFile().exists() );
+    }
+
+    private static byte[] bytes( int length )
+    {
+        byte[] bytes = new byte[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            bytes[i] = (byte) ( 'a' + i % 26 );
+        }
+        return bytes;
+    }
+}
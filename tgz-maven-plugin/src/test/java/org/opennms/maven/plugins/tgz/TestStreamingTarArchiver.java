@@ -0,0 +1,418 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.tar.TarEntry;
+import org.codehaus.plexus.archiver.tar.TarInputStream;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStreamingTarArchiver
+{
+    private static final String LONG_NAME =
+        "dir/a-name-that-is-longer-than-the-one-hundred-characters-of-a-tar-header-so-that-a-gnu-long-name-is-written.txt";
+
+    private File directory;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = createTempDirectory();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testPlainTar()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( null );
+        Map expected = addEntries( archiver, directory );
+        File destFile = new File( directory, "out/test.tar" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        assertEquals( 0, destFile.length() % 512 );
+        assertEntries( expected, readTar( new FileInputStream( destFile ) ) );
+    }
+
+    @Test
+    public void testModes()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( null );
+        addEntries( archiver, directory );
+        File destFile = new File( directory, "out/test.tar" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        TarInputStream in = new TarInputStream( new FileInputStream( destFile ) );
+        try
+        {
+            TarEntry entry;
+            while ( ( entry = in.getNextEntry() ) != null )
+            {
+                assertEquals( entry.getName(), entry.isDirectory() ? 0755 : 0640, entry.getMode() & 07777 );
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testGzipTar()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 3, 32 * 1024 ) );
+        Map expected = addEntries( archiver, directory );
+        File destFile = new File( directory, "out/test.tgz" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        assertEntries( expected, readTar( new GZIPInputStream( new FileInputStream( destFile ) ) ) );
+    }
+
+    @Test
+    public void testHardlinkDuplicates()
+        throws Exception
+    {
+        File first = writeFile( directory, "first.txt", TestParallelGZIPOutputStream.text( 3000 ) );
+        File second = writeFile( directory, "second.txt", TestParallelGZIPOutputStream.text( 3000 ) );
+
+        StreamingTarArchiver archiver = new StreamingTarArchiver( null );
+        archiver.setHardlinkDuplicates( true );
+        archiver.addFile( first, "a/first.txt", 0644 );
+        archiver.addFile( second, "b/second.txt", 0644 );
+        File destFile = new File( directory, "test.tar" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        TarInputStream in = new TarInputStream( new FileInputStream( destFile ) );
+        try
+        {
+            TarEntry entry = in.getNextEntry();
+            assertEquals( "a/first.txt", entry.getName() );
+            assertEquals( 3000, entry.getSize() );
+
+            entry = in.getNextEntry();
+            assertEquals( "b/second.txt", entry.getName() );
+            assertEquals( 0, entry.getSize() );
+            assertEquals( "a/first.txt", entry.getLinkName() );
+
+            assertNull( in.getNextEntry() );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testIndexedLongNames()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new IndexedGzipCompressor( 2, 32 * 1024, 4 * 1024 ) );
+        archiver.setHardlinkDuplicates( true );
+        Map expected = addEntries( archiver, directory );
+
+        File source = new File( directory, "source" );
+        byte[] text = TestParallelGZIPOutputStream.text( 5000 );
+        String nonAscii = "dir/caf\u00e9-\u00fcber-\u4e2d\u6587-" + LONG_NAME.substring( 4 );
+        archiver.addFile( writeFile( source, "non-ascii.txt", text ), nonAscii, 0640 );
+        expected.put( nonAscii, text );
+
+        archiver.addFile( writeFile( source, "duplicate.txt", text ), "dir/duplicate.txt", 0640 );
+        expected.put( "dir/duplicate.txt", text );
+
+        byte[] data = (byte[]) expected.get( "dir/file-511.bin" );
+        String longDuplicate = "dir/duplicate-" + LONG_NAME.substring( 4 );
+        archiver.addFile( writeFile( source, "duplicate.bin", data ), longDuplicate, 0640 );
+        expected.put( longDuplicate, data );
+
+        File destFile = new File( directory, "out/test.tgz" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        IndexedTarGzReader reader = new IndexedTarGzReader( destFile );
+        assertEquals( new ArrayList( expected.keySet() ), reader.getPaths() );
+
+        for ( Iterator i = expected.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) i.next();
+            String path = (String) entry.getKey();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals( path, entry.getValue() != null, reader.extract( path, out ) );
+            if ( entry.getValue() != null )
+            {
+                assertArrayEquals( path, (byte[]) entry.getValue(), out.toByteArray() );
+            }
+        }
+    }
+
+    @Test
+    public void testVolumes()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 2, 32 * 1024 ) );
+        Map expected = addEntries( archiver, directory );
+        archiver.setVolumes( 64 * 1024, 2, "tar.gz" );
+        File destFile = new File( directory, "out/test.tar.gz" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        assertFalse( destFile.exists() );
+        List volumes = archiver.getVolumes();
+        assertTrue( "expected several volumes, got " + volumes, volumes.size() > 1 );
+
+        File index = TarVolumeIndex.getIndexFile( destFile );
+        assertTrue( TarVolumeIndex.isComplete( index ) );
+        assertEquals( volumes, TarVolumeIndex.readVolumes( index ) );
+
+        Map actual = new LinkedHashMap();
+        for ( Iterator i = volumes.iterator(); i.hasNext(); )
+        {
+            File volume = (File) i.next();
+            assertTrue( volume.getName(), volume.getName().startsWith( "test-vol00" ) );
+            actual.putAll( readTar( new GZIPInputStream( new FileInputStream( volume ) ) ) );
+        }
+        assertEntries( expected, actual );
+    }
+
+    @Test
+    public void testFailedVolumesAreDeleted()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 2, 32 * 1024 ) );
+        addEntries( archiver, directory );
+        File missing = new File( directory, "missing.bin" );
+        archiver.addEntries( Collections.singletonList( new AssemblyEntryPlan.Entry( missing, "dir/missing.bin",
+                                                                                     0640, false ) ) );
+        archiver.setVolumes( 64 * 1024, 2, "tar.gz" );
+        archiver.setChecksums( true );
+        File destFile = new File( directory, "out/test.tar.gz" );
+        archiver.setDestFile( destFile );
+
+        try
+        {
+            archiver.createArchive();
+            fail( "the missing file was archived" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+
+        assertEquals( Collections.EMPTY_LIST, Arrays.asList( destFile.getParentFile().list() ) );
+    }
+
+    @Test
+    public void testChecksums()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 2, 32 * 1024 ) );
+        addEntries( archiver, directory );
+        archiver.setChecksums( true );
+        File destFile = new File( directory, "out/test.tgz" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        assertChecksums( destFile );
+    }
+
+    @Test
+    public void testVolumeChecksums()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( new ParallelGzipCompressor( 2, 32 * 1024 ) );
+        addEntries( archiver, directory );
+        archiver.setVolumes( 64 * 1024, 2, "tar.gz" );
+        archiver.setChecksums( true );
+        File destFile = new File( directory, "out/test.tar.gz" );
+        archiver.setDestFile( destFile );
+        archiver.createArchive();
+
+        List volumes = archiver.getVolumes();
+        assertTrue( "expected several volumes, got " + volumes, volumes.size() > 1 );
+        for ( Iterator i = volumes.iterator(); i.hasNext(); )
+        {
+            assertChecksums( (File) i.next() );
+        }
+        assertChecksums( TarVolumeIndex.getIndexFile( destFile ) );
+    }
+
+    /**
+     * Asserts that the checksum files next to a file hold the digests of the file as it is on disk.
+     */
+    private static void assertChecksums( File file )
+        throws IOException
+    {
+        String[] algorithms = { "MD5", "SHA-1", "SHA-256" };
+        String[] extensions = { ".md5", ".sha1", ".sha256" };
+
+        byte[] data = TestParallelGZIPOutputStream.readFully( new FileInputStream( file ) );
+        for ( int i = 0; i < algorithms.length; i++ )
+        {
+            String expected = ContentDigests.toHex( ContentDigests.newDigest( algorithms[i] ).digest( data ) );
+            assertEquals( file.getName() + extensions[i], expected,
+                          FileUtils.fileRead( new File( file.getPath() + extensions[i] ) ) );
+        }
+    }
+
+    @Test( expected = ArchiverException.class )
+    public void testNoEntries()
+        throws Exception
+    {
+        StreamingTarArchiver archiver = new StreamingTarArchiver( null );
+        archiver.setDestFile( new File( directory, "test.tar" ) );
+        archiver.createArchive();
+    }
+
+    static File createTempDirectory()
+        throws IOException
+    {
+        File directory = File.createTempFile( "tgz-test", "" );
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    static File writeFile( File directory, String name, byte[] data )
+        throws IOException
+    {
+        File file = new File( directory, name );
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( data );
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Adds a directory and files whose sizes are around the tar record size, one of them with a long name.
+     *
+     * @return the contents of each path in archive order, null for directories, whose paths end with '/'
+     */
+    static Map addEntries( RecordingArchiver archiver, File directory )
+        throws IOException, ArchiverException
+    {
+        File source = new File( directory, "source" );
+        source.mkdirs();
+
+        Map expected = new LinkedHashMap();
+        archiver.addEntries( Collections.singletonList( new AssemblyEntryPlan.Entry( source, "dir", 0755, true ) ) );
+        expected.put( "dir/", null );
+
+        int[] sizes = { 0, 1, 511, 512, 513, 100 * 1024 };
+        for ( int i = 0; i < sizes.length; i++ )
+        {
+            byte[] data = TestParallelGZIPOutputStream.random( sizes[i] );
+            String path = "dir/file-" + sizes[i] + ".bin";
+            archiver.addFile( writeFile( source, "file-" + sizes[i] + ".bin", data ), path, 0640 );
+            expected.put( path, data );
+        }
+
+        byte[] text = TestParallelGZIPOutputStream.text( 70 * 1024 );
+        archiver.addFile( writeFile( source, "long.txt", text ), LONG_NAME, 0640 );
+        expected.put( LONG_NAME, text );
+
+        return expected;
+    }
+
+    /**
+     * Reads a tar stream, which is closed afterwards.
+     *
+     * @return the contents of each path in archive order, null for directories
+     */
+    static Map readTar( InputStream in )
+        throws IOException
+    {
+        Map entries = new LinkedHashMap();
+
+        TarInputStream tIn = new TarInputStream( new BufferedInputStream( in ) );
+        try
+        {
+            TarEntry entry;
+            while ( ( entry = tIn.getNextEntry() ) != null )
+            {
+                if ( entry.isDirectory() )
+                {
+                    entries.put( entry.getName(), null );
+                    continue;
+                }
+
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ( ( count = tIn.read( buffer, 0, buffer.length ) ) != -1 )
+                {
+                    data.write( buffer, 0, count );
+                }
+                assertEquals( entry.getName(), entry.getSize(), data.size() );
+                entries.put( entry.getName(), data.toByteArray() );
+            }
+        }
+        finally
+        {
+            tIn.close();
+        }
+        return entries;
+    }
+
+    static void assertEntries( Map expected, Map actual )
+    {
+        assertEquals( new ArrayList( expected.keySet() ), new ArrayList( actual.keySet() ) );
+        for ( Iterator i = expected.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) i.next();
+            byte[] data = (byte[]) entry.getValue();
+            if ( data == null )
+            {
+                assertNull( entry.getKey().toString(), actual.get( entry.getKey() ) );
+            }
+            else
+            {
+                assertArrayEquals( entry.getKey().toString(), data, (byte[]) actual.get( entry.getKey() ) );
+            }
+        }
+    }
+}
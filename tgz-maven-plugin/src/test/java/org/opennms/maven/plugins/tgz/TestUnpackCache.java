@@ -0,0 +1,117 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUnpackCache
+{
+    private File directory;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        directory = TestStreamingTarArchiver.createTempDirectory();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Test
+    public void testPutAndGet()
+        throws IOException
+    {
+        UnpackCache cache = new UnpackCache( directory, 1024 * 1024 );
+        assertNull( cache.get( "key" ) );
+
+        File contents = put( cache, "key", 100 );
+        assertTrue( new File( contents, "file.bin" ).isFile() );
+        assertEquals( contents, cache.get( "key" ) );
+
+        cache.release();
+        assertEquals( contents, new UnpackCache( directory, 1024 * 1024 ).get( "key" ) );
+    }
+
+    @Test
+    public void testEntriesInUseAreKept()
+        throws IOException
+    {
+        UnpackCache first = new UnpackCache( directory, 150 );
+        UnpackCache second = new UnpackCache( directory, 150 );
+
+        File firstContents = put( first, "first", 100 );
+        File secondContents = put( second, "second", 100 );
+
+        assertTrue( "an entry in use was removed", firstContents.isDirectory() );
+        assertTrue( secondContents.isDirectory() );
+
+        first.release();
+        second.evict();
+
+        assertFalse( "a released entry was kept over the maximum size", firstContents.exists() );
+        assertNull( second.get( "first" ) );
+        assertEquals( secondContents, second.get( "second" ) );
+        second.release();
+    }
+
+    @Test
+    public void testReleasedEntriesAreEvicted()
+        throws IOException
+    {
+        UnpackCache cache = new UnpackCache( directory, 150 );
+        for ( int i = 0; i < 5; i++ )
+        {
+            put( cache, "key" + i, 100 );
+            cache.release();
+        }
+
+        int entries = 0;
+        for ( int i = 0; i < 5; i++ )
+        {
+            if ( new File( directory, "key" + i ).exists() )
+            {
+                entries++;
+            }
+        }
+        assertEquals( 1, entries );
+        assertTrue( new File( directory, "key4" ).exists() );
+    }
+
+    @Test
+    public void testStaleStagingDirectoriesAreRemoved()
+        throws IOException
+    {
+        UnpackCache cache = new UnpackCache( directory, 1024 * 1024 );
+
+        File stale = cache.createStagingDirectory().getParentFile();
+        stale.setLastModified( System.currentTimeMillis() - UnpackCache.STALE_STAGING_AGE - 60000 );
+        File fresh = cache.createStagingDirectory().getParentFile();
+
+        cache.evict();
+
+        assertFalse( "a staging directory left behind was kept", stale.exists() );
+        assertTrue( "a staging directory still being unpacked into was removed", fresh.exists() );
+    }
+
+    private static File put( UnpackCache cache, String key, int size )
+        throws IOException
+    {
+        File staging = cache.createStagingDirectory();
+        TestStreamingTarArchiver.writeFile( staging, "file.bin", new byte[size] );
+        return cache.put( key, staging );
+    }
+}
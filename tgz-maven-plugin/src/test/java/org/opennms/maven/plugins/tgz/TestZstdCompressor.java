@@ -0,0 +1,74 @@
+package org.opennms.maven.plugins.tgz;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+public class TestZstdCompressor
+{
+    @Test
+    public void testEmpty()
+        throws IOException
+    {
+        assertRoundTrip( new byte[0], 1 );
+    }
+
+    @Test
+    public void testSingleThread()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( 300 * 1024 ), 1 );
+    }
+
+    @Test
+    public void testWorkers()
+        throws IOException
+    {
+        assertRoundTrip( TestParallelGZIPOutputStream.text( 3 * 1024 * 1024 ), 3 );
+    }
+
+    @Test
+    public void testTarRoundTrip()
+        throws Exception
+    {
+        File directory = TestStreamingTarArchiver.createTempDirectory();
+        try
+        {
+            StreamingTarArchiver archiver = new StreamingTarArchiver( new ZstdCompressor( 3, 2 ) );
+            Map expected = TestStreamingTarArchiver.addEntries( archiver, directory );
+            File destFile = new File( directory, "test.tar.zst" );
+            archiver.setDestFile( destFile );
+            archiver.createArchive();
+
+            TestStreamingTarArchiver.assertEntries( expected, TestStreamingTarArchiver.readTar(
+                new ZstdInputStream( new FileInputStream( destFile ) ) ) );
+        }
+        finally
+        {
+            FileUtils.deleteDirectory( directory );
+        }
+    }
+
+    private static void assertRoundTrip( byte[] data, int threads )
+        throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new ZstdCompressor( 3, threads ).compress( compressed );
+        out.write( data );
+        out.close();
+
+        assertArrayEquals( data, TestParallelGZIPOutputStream.readFully(
+            new ZstdInputStream( new ByteArrayInputStream( compressed.toByteArray() ) ) ) );
+    }
+}